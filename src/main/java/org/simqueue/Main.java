@@ -20,21 +20,52 @@ package org.simqueue;
  * SOFTWARE.
  */
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
+import java.util.List;
 import java.util.Properties;
+import java.util.zip.Deflater;
 
-import org.apache.commons.lang3.ArrayUtils;
+import javax.management.JMException;
 
 import org.simqueue.exception.ExponentialException;
+import org.simqueue.exception.ParameterException;
 import org.simqueue.exception.SimQueueException;
 import org.simqueue.exception.TriangularException;
+import org.simqueue.io.ParallelGzipOutputStream;
+import org.simqueue.random.UniformSource;
+import org.simqueue.service.BatchDaemon;
+import org.simqueue.service.ReplicationCoordinator;
+import org.simqueue.service.ReplicationWorker;
+import org.simqueue.service.SimulationServer;
+import org.simqueue.sim.MultiQueueDispatcher;
+import org.simqueue.sim.RareEventEstimator;
+import org.simqueue.sim.RenegingQueue;
+import org.simqueue.sim.ResultCache;
+import org.simqueue.sim.RqmcExperiment;
+import org.simqueue.sim.Scenario;
 import org.simqueue.sim.SimQueue;
+import org.simqueue.sim.TransientAnalysis;
+import org.simqueue.sim.Validation;
+import org.simqueue.statistics.Histogram;
+import org.simqueue.statistics.TimeWindowRollup;
+import org.simqueue.statistics.ReplicationSummary;
 import org.simqueue.utils.ElapsedTime;
+import org.simqueue.utils.FlightRecorderEvents;
+import org.simqueue.utils.Instrumentation;
+import org.simqueue.utils.Instrumentation.Phase;
 import org.simqueue.utils.PropertiesManager;
 
 /**
@@ -42,6 +73,15 @@ import org.simqueue.utils.PropertiesManager;
  */
 public class Main {
 
+  /** The compression level of an output file written as plain text. */
+  private static final int NO_COMPRESSION = Integer.MIN_VALUE;
+
+  /** The default gzip compression level, the one of Deflater.DEFAULT_COMPRESSION. */
+  private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+
+  /** The number of small runs compiling the simulation loops before the first job of the daemon. */
+  private static final int DAEMON_WARMUP_RUNS = 20;
+
   /**
    * The programs requests the queue size and the parameters for the two used
    * stochastic variables: 1) triangular variable; 2) exponential variable.
@@ -51,6 +91,26 @@ public class Main {
    *        the report file name
    */
   public static void main(String[] args) {
+    if (args.length > 0 && args[0].equals("--server")) {
+      server(args);
+      return;
+    }
+    if (args.length > 0 && args[0].equals("--daemon")) {
+      daemon(args);
+      return;
+    }
+    if (args.length > 0 && args[0].equals("--coordinator")) {
+      coordinator(args);
+      return;
+    }
+    if (args.length > 0 && args[0].equals("--worker")) {
+      worker(args);
+      return;
+    }
+    if (args.length > 0 && args[0].equals("--validate")) {
+      validate(args);
+      return;
+    }
     String fileout = "simqueue.csv";
     String filein = "parameters.txt";
     Properties prop = null;
@@ -62,59 +122,185 @@ public class Main {
         filein = args[1];
       }
     }
+    // Used for timing the phases of the simulation.
+    Instrumentation instrumentation = new Instrumentation();
+    try {
+      instrumentation.registerMBean();
+    } catch (JMException e) {
+      System.err.println("Warning: instrumentation MBean not registered: " + e.getMessage());
+    }
+    instrumentation.start(Phase.PARAMETER_LOAD);
     try {
       prop = PropertiesManager.load(filein);
     } catch (IOException e1) {
       System.err.println("Error: Input file not found.");
-      System.err.println("simqueue syntax:\n" + "java -jar simqueue.jar [simqueue.csv] [parameters.txt]\n\n"
+      System.err.println("simqueue syntax:\n" + "java -jar simqueue.jar [simqueue.csv] [parameters.txt]\n"
+        + "java -jar simqueue.jar --server [port] [threads] [cache_dir] [max_clients] [max_history_clients]\n"
+        + "java -jar simqueue.jar --daemon [jobs]\n"
+        + "java -jar simqueue.jar --coordinator [port] [replications] [chunk_size] [parameters.txt] [local_workers]\n"
+        + "java -jar simqueue.jar --worker [host:port]\n"
+        + "java -jar simqueue.jar --validate [samples] [seed]\n\n"
         + "simqueue.csv: output file\n"
-        + "parameters.txt: configuration file (if this is found, it is parsed automatically)\n\n"
+        + "parameters.txt: configuration file (if this is found, it is parsed automatically)\n"
+        + "--server: run a local simulation service (POST scenarios to http://localhost:port/simulate)\n"
+        + "--daemon: run the scenarios read one per line from jobs (e.g. a named pipe) or from the standard input\n"
+        + "--coordinator: split independent replications of parameters.txt among worker processes\n"
+        + "--worker: simulate the replications handed out by a coordinator\n"
+        + "--validate: test that the random variables follow their distributions\n\n"
         + "(e.g. parameters.txt)\n" + "clients_num=50\n" + "clients_per_hour=25\n" + "most_common_service_time=3.5\n"
         + "maximum_service_time=10\n");
       System.exit(1);
     }
-    // Used for computing the start and end times.
-    Calendar start = null;
-    Calendar end = null;
     SimQueue Q = null;
-    Integer num = null;
-    double expVar_lambda = 0.0d, triVar_a = 0.0d, triVar_m = 1.0d, triVar_b = 2.0d;
-
-    if (prop.getProperty("clients_num") != null) {
-      num = Integer.parseInt(prop.getProperty("clients_num"));
-    } else {
-      System.err.println("Error: `clients_num` not found in configuration file. Exit.");
+    Scenario scenario = null;
+    double progressSeconds = 0d;
+    String distributionOutput = prop.getProperty("distribution_output");
+    int ecdfPoints = 0;
+    int histogramPrecision = 0;
+    boolean compress = Boolean.parseBoolean(prop.getProperty("compress", "false"));
+    int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+    double tailThreshold = -1d;
+    long tailReplications = 0L;
+    int rqmcReplications = 0;
+    int rqmcRandomizations = 0;
+    int transientReplications = 0;
+    long transientBucket = 0L;
+    double transientTimeBucket = 0d;
+    double[] transientQuantiles = TransientAnalysis.DEFAULT_QUANTILES;
+    int dispatchQueues = 0;
+    int dispatchChoices = 2;
+    MultiQueueDispatcher.Policy dispatchPolicy = null;
+    double rollupWindow = 0d;
+    TimeWindowRollup.By rollupBy = TimeWindowRollup.By.ARRIVAL;
+    try {
+      scenario = Scenario.fromProperties(prop);
+    } catch (ParameterException e) {
+      System.err.println("Error: " + e.getMessage() + " Exit.");
+      System.exit(1);
+    }
+    try {
+      // seconds between two progress reports (0 = disabled)
+      progressSeconds = Double.parseDouble(prop.getProperty("progress_interval", "0").trim());
+      ecdfPoints = Integer.parseInt(prop.getProperty("ecdf_points", "1000"));
+      histogramPrecision = Integer.parseInt(prop.getProperty("histogram_precision", "64"));
+      compressionLevel = Integer.parseInt(prop.getProperty("compression_level", String.valueOf(compressionLevel)));
+      if (prop.getProperty("tail_threshold") != null) {
+        // minutes of waiting time whose tail probability is estimated by importance sampling
+        tailThreshold = Double.parseDouble(prop.getProperty("tail_threshold"));
+        tailReplications = Long.parseLong(prop.getProperty("tail_replications", "10000"));
+      }
+      // replications per estimate of the quasi-Monte Carlo comparison (0 = disabled)
+      rqmcReplications = Integer.parseInt(prop.getProperty("rqmc_replications", "0"));
+      rqmcRandomizations = Integer.parseInt(prop.getProperty("rqmc_randomizations", "10"));
+      // replications of the transient analysis (0 = disabled), grouped by client index or by arrival time
+      transientReplications = Integer.parseInt(prop.getProperty("transient_replications", "0"));
+      transientBucket = Long.parseLong(prop.getProperty("transient_bucket", "0"));
+      transientTimeBucket = Double.parseDouble(prop.getProperty("transient_time_bucket", "0"));
+      if (prop.getProperty("transient_quantiles") != null) {
+        String[] fields = prop.getProperty("transient_quantiles").trim().split("\\s*,\\s*");
+        transientQuantiles = new double[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+          transientQuantiles[i] = Double.parseDouble(fields[i]);
+        }
+      }
+      // queues behind the dispatcher (0 = disabled)
+      dispatchQueues = Integer.parseInt(prop.getProperty("dispatch_queues", "0"));
+      dispatchChoices = Integer.parseInt(prop.getProperty("dispatch_choices", "2"));
+      // minutes per window of the time series (0 = disabled)
+      rollupWindow = Double.parseDouble(prop.getProperty("rollup_window", "0"));
+    } catch (NumberFormatException e) {
+      System.err.println("Error: progress_interval, ecdf_points, histogram_precision, compression_level, tail_threshold, tail_replications, "
+        + "rqmc_replications, rqmc_randomizations, the transient_ and dispatch_ parameters, and rollup_window must be numbers. Exit.");
+      System.exit(1);
+    }
+    if (!(progressSeconds >= 0) || Double.isInfinite(progressSeconds)) {
+      System.err.println("Error: progress_interval must not be negative. Exit.");
+      System.exit(1);
+    }
+    long progressInterval = (long) (progressSeconds * 1000);
+    // the sorted samples are built on the heap, so an off-heap history streams them into histograms
+    boolean offHeap = scenario.getHistoryMode() == SimQueue.HistoryMode.OFF_HEAP;
+    if (distributionOutput == null) {
+      distributionOutput = offHeap ? "histogram" : "samples";
+    }
+    if (!distributionOutput.equals("samples") && !distributionOutput.equals("histogram")) {
+      System.err.println("Error: distribution_output must be samples or histogram. Exit.");
+      System.exit(1);
+    }
+    if (offHeap && distributionOutput.equals("samples")) {
+      System.err.println("Error: distribution_output must be histogram when history_mode is off_heap. Exit.");
+      System.exit(1);
+    }
+    if (ecdfPoints < 2 || histogramPrecision < 1) {
+      System.err.println("Error: ecdf_points must be at least 2 and histogram_precision at least 1. Exit.");
+      System.exit(1);
+    }
+    if (compressionLevel < 0 || compressionLevel > Deflater.BEST_COMPRESSION) {
+      System.err.println("Error: compression_level must be between 0 and 9. Exit.");
       System.exit(1);
     }
-    if (prop.getProperty("clients_per_hour") != null) {
-      expVar_lambda = Double.parseDouble(prop.getProperty("clients_per_hour")) / 60.0d;
-    } else {
-      System.err.println("Error: `clients_per_hour` not found in configuration file. Exit.");
+    if (prop.getProperty("tail_threshold") != null
+      && (!(tailThreshold > 0) || Double.isInfinite(tailThreshold) || tailReplications < 2)) {
+      System.err.println("Error: tail_threshold must be positive and tail_replications at least 2. Exit.");
       System.exit(1);
     }
-    if (prop.getProperty("most_common_service_time") != null) {
-      triVar_m = Double.parseDouble(prop.getProperty("most_common_service_time"));
-    } else {
-      System.err.println("Error: `most_common_service_time` not found in configuration file. Exit.");
+    if (rqmcReplications < 0 || Integer.bitCount(rqmcReplications) > 1 || rqmcRandomizations < 2) {
+      System.err.println("Error: rqmc_replications must be a power of 2 and rqmc_randomizations at least 2. Exit.");
       System.exit(1);
     }
-    if (prop.getProperty("maximum_service_time") != null) {
-      triVar_b = Double.parseDouble(prop.getProperty("maximum_service_time"));
-    } else {
-      System.err.println("Error: `maximum_service_time` not found in configuration file. Exit.");
+    if (transientReplications < 0 || transientBucket < 0 || transientTimeBucket < 0) {
+      System.err.println("Error: transient_replications, transient_bucket, and transient_time_bucket must not be negative. Exit.");
       System.exit(1);
     }
+    for (double q : transientQuantiles) {
+      if (q < 0 || q > 1) {
+        System.err.println("Error: transient_quantiles must be between 0 and 1. Exit.");
+        System.exit(1);
+      }
+    }
+    if (dispatchQueues < 0 || dispatchChoices < 1) {
+      System.err.println("Error: dispatch_queues must not be negative and dispatch_choices must be at least 1. Exit.");
+      System.exit(1);
+    }
+    try {
+      dispatchPolicy = MultiQueueDispatcher.Policy.fromName(prop.getProperty("dispatch_policy", "jsq"));
+    } catch (IllegalArgumentException e) {
+      System.err.println("Error: dispatch_policy must be jsq, power_of_d, round_robin, or least_workload. Exit.");
+      System.exit(1);
+    }
+    if (!(rollupWindow >= 0) || Double.isInfinite(rollupWindow)) {
+      System.err.println("Error: rollup_window must not be negative. Exit.");
+      System.exit(1);
+    }
+    try {
+      rollupBy = TimeWindowRollup.By.valueOf(prop.getProperty("rollup_by", "arrival").trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      System.err.println("Error: rollup_by must be arrival or departure. Exit.");
+      System.exit(1);
+    }
+    if (compress && !screenprint && !fileout.endsWith(".gz")) {
+      fileout = fileout + ".gz";
+    }
+    instrumentation.stop(Phase.PARAMETER_LOAD);
     
     if(screenprint) {
     	System.out.print("\nsimqueue: a FIFO queue simulator based on stochastic time events.\n\n");
     }
     try {
-      Q = new SimQueue(num, expVar_lambda, triVar_a, triVar_m, triVar_b);
-      start = Calendar.getInstance();
+      Q = scenario.createSimQueue();
+      Q.setInstrumentation(instrumentation);
+      if (progressInterval > 0) {
+        instrumentation.startReporter(progressInterval, System.err);
+      }
       Q.run();
-      end = Calendar.getInstance();
+      instrumentation.stopReporter();
+      instrumentation.start(Phase.OUTPUT);
       if(screenprint) {
-	      System.out.println(Q.getHistoryString());
+	      if (offHeap) {
+	        printHistory(Q);
+	      } else {
+	        System.out.println(Q.getHistoryString());
+	      }
 	      System.out.println();
 	      System.out.println(Q.getTheoreticalStatisticsString());
 	      System.out.println();
@@ -122,28 +308,56 @@ public class Main {
 	      System.out.println();
 	      System.out.println(Q.getErrorStatisticsString());
 	      System.out.println();
-	      System.out.println(ElapsedTime.compute(start, end));
-      }
-      // get the queue of events (arrival, service, and leave times)
-      double[][] history = Q.getHistory();
-      // retrieve the arrival time samples and calculate the CDF
-      Double[] arrivalTimeSamples = ArrayUtils.toObject(Q.getArrivalTimesDistrib());
-      Arrays.sort(arrivalTimeSamples);
-      // retrieve the service time samples
-      Double[] serviceTimeSamples = ArrayUtils.toObject(Q.getServiceTimesDistrib());
-      Arrays.sort(serviceTimeSamples);
+	      System.out.println(Q.getOccupancyStatisticsString());
+	      System.out.println();
+	      System.out.println(Q.getSensitivityStatisticsString());
+	      System.out.println();
+	      System.out.println(ElapsedTime.compute(instrumentation.getArrivalGenerationNanos()
+	        + instrumentation.getServiceRecursionNanos() + instrumentation.getStatisticsNanos()));
+      }
       if(!screenprint) {
-	      // write the queue to file
-	      try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(fileout, false)))) {
-	        out.println("Time\tArrivalTime\tServiceTime\tLeavingTime\tArrivalTimeSamples\tServiceTimeSamples");
-	        for (int j = 0; j < history[0].length; j++) {
-	          out.println(j + "\t" + history[0][j] + "\t" + history[1][j] + "\t" + history[2][j] + "\t"
-	            + arrivalTimeSamples[j] + "\t" + serviceTimeSamples[j]);
-	        }
-	      } catch (IOException e) {
-	        System.err.println(e);
+	      int outputCompression = compress ? compressionLevel : NO_COMPRESSION;
+	      if (distributionOutput.equals("histogram")) {
+	        writeHistoryWithEcdf(Q, fileout, outputCompression, ecdfPoints, histogramPrecision);
+	      } else {
+	        writeHistoryWithSamples(Q, fileout, outputCompression);
 	      }
       }
+      if (rollupWindow > 0) {
+        writeRollup(Q, screenprint ? null : fileout, rollupWindow, rollupBy);
+      }
+      instrumentation.stop(Phase.OUTPUT);
+      if (tailThreshold > 0) {
+        estimateTail(scenario, tailThreshold, tailReplications, screenprint);
+      }
+      if (rqmcReplications > 0) {
+        RqmcExperiment experiment = new RqmcExperiment(scenario, rqmcReplications, rqmcRandomizations,
+          getUniformSource(prop, "arrival_source"), getUniformSource(prop, "service_source"));
+        experiment.run();
+        if (screenprint) {
+          System.out.println();
+        }
+        System.out.println(experiment);
+      }
+      if (transientReplications > 0) {
+        runTransientAnalysis(scenario, transientReplications, transientBucket, transientTimeBucket,
+          transientQuantiles, screenprint ? null : fileout);
+      }
+      if (dispatchQueues > 0) {
+        runDispatcher(scenario, dispatchQueues, dispatchPolicy, dispatchChoices, screenprint ? null : fileout);
+      }
+      if (scenario.getPatienceDistribution() != null) {
+        RenegingQueue reneging = scenario.createRenegingQueue();
+        reneging.run(scenario.getClientsNum());
+        if (screenprint) {
+          System.out.println();
+        }
+        System.out.println(reneging);
+      }
+      if(screenprint) {
+	      System.out.println();
+	      System.out.println(instrumentation.getReport());
+      }
     } catch (NumberFormatException e) {
       System.err.println("Error: input must be an integer");
     } catch (SimQueueException e) {
@@ -157,4 +371,520 @@ public class Main {
       e.printStackTrace();
     }
   }
+
+  /**
+   * Return the uniform source of a variable of the quasi-Monte Carlo comparison.
+   * 
+   * @param prop
+   *        the parameters
+   * @param key
+   *        the property name
+   * @return the uniform source, SOBOL if missing
+   */
+  private static UniformSource getUniformSource(Properties prop, String key) {
+    try {
+      return UniformSource.valueOf(prop.getProperty(key, "sobol").trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      System.err.println("Error: " + key + " must be pseudo_random or sobol. Exit.");
+      System.exit(1);
+      return null;
+    }
+  }
+
+  /**
+   * Print the importance sampling estimate of the probability that a client waits longer than a threshold.
+   * 
+   * @param scenario
+   *        the simulated scenario
+   * @param threshold
+   *        the waiting time threshold (min)
+   * @param replications
+   *        the number of replications
+   * @param screenprint
+   *        true if the estimate follows the simulation printed on screen
+   */
+  private static void estimateTail(Scenario scenario, double threshold, long replications, boolean screenprint)
+    throws ExponentialException, TriangularException {
+    try {
+      RareEventEstimator estimator = scenario.createRareEventEstimator();
+      if (screenprint) {
+        System.out.println();
+      }
+      System.out.println(estimator.estimate(threshold, replications));
+    } catch (IllegalArgumentException e) {
+      System.err.println("Error: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Run the transient analysis of a scenario. The percentile bands are printed on screen, or written to a file 
+   * named as fileout with the suffix _transient.
+   * 
+   * @param scenario
+   *        the simulated scenario
+   * @param replications
+   *        the number of replications
+   * @param bucket
+   *        the clients per bucket (0 for the default)
+   * @param timeBucket
+   *        the minutes per bucket, grouping the clients by arrival time (0 to group them by index)
+   * @param quantiles
+   *        the quantiles of the bands
+   * @param fileout
+   *        the output file, or null to print on screen
+   */
+  private static void runTransientAnalysis(Scenario scenario, int replications, long bucket, double timeBucket,
+    double[] quantiles, String fileout) throws ExponentialException, TriangularException {
+    TransientAnalysis analysis = new TransientAnalysis(scenario, replications);
+    if (timeBucket > 0) {
+      analysis.setTimeBucket(timeBucket);
+    } else if (bucket > 0) {
+      analysis.setBucketWidth(bucket);
+    }
+    try {
+      analysis.run();
+    } catch (IllegalArgumentException e) {
+      System.err.println("Error: " + e.getMessage());
+      return;
+    }
+    if (fileout == null) {
+      System.out.println();
+      System.out.println(analysis);
+      return;
+    }
+    try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(suffixFileName(fileout, "_transient"), false)))) {
+      analysis.write(out, quantiles);
+    } catch (IOException e) {
+      System.err.println(e);
+    }
+  }
+
+  /**
+   * Dispatch the clients of a scenario to multiple queues. The aggregate statistics are printed, and 
+   * the statistics of each queue are written to a file named as fileout with the suffix _dispatch.
+   * 
+   * @param scenario
+   *        the simulated scenario
+   * @param queues
+   *        the number of queues
+   * @param policy
+   *        the dispatching policy
+   * @param choices
+   *        the queues sampled by the power-of-d policy
+   * @param fileout
+   *        the output file, or null to print on screen
+   */
+  private static void runDispatcher(Scenario scenario, int queues, MultiQueueDispatcher.Policy policy, int choices,
+    String fileout) throws ExponentialException, TriangularException {
+    MultiQueueDispatcher dispatcher = scenario.createDispatcher(queues, policy);
+    dispatcher.setChoices(choices);
+    dispatcher.run(scenario.getClientsNum());
+    if (fileout == null) {
+      System.out.println();
+    }
+    System.out.println(dispatcher);
+    if (fileout == null) {
+      return;
+    }
+    try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(suffixFileName(fileout, "_dispatch"), false)))) {
+      dispatcher.write(out);
+    } catch (IOException e) {
+      System.err.println(e);
+    }
+  }
+
+  /**
+   * Print the queue of events on screen, reading an off-heap history client by client.
+   * 
+   * @param Q
+   *        the simulated queue
+   */
+  private static void printHistory(SimQueue Q) {
+    PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+    out.println("Client\tArrival Time (min)\tServing Time (min)\tLeaving Time (min)");
+    out.println("------\t------------------\t------------------\t------------------");
+    for (long j = 0; j < Q.getClientsNum(); j++) {
+      out.println("[" + (j + 1) + "]\t" + Q.getArrivalTime(j) + "\t" + Q.getServingTime(j) + "\t" + Q.getLeavingTime(j));
+    }
+    out.flush();
+  }
+
+  /**
+   * Write the queue of events and the sorted arrival and service time samples.
+   * 
+   * @param Q
+   *        the simulated queue
+   * @param fileout
+   *        the output file
+   * @param compressionLevel
+   *        the gzip compression level, or NO_COMPRESSION
+   */
+  private static void writeHistoryWithSamples(SimQueue Q, String fileout, int compressionLevel) {
+    // retrieve the arrival time samples and calculate the CDF
+    double[] arrivalTimeSamples = Q.getArrivalTimesDistrib();
+    Arrays.sort(arrivalTimeSamples);
+    // retrieve the service time samples
+    double[] serviceTimeSamples = Q.getServiceTimesDistrib();
+    Arrays.sort(serviceTimeSamples);
+    // write the queue of events (arrival, service, and leave times) to file
+    try (PrintWriter out = openOutput(fileout, compressionLevel)) {
+      out.println("Time\tArrivalTime\tServiceTime\tLeavingTime\tArrivalTimeSamples\tServiceTimeSamples");
+      for (int j = 0; j < arrivalTimeSamples.length; j++) {
+        out.println(j + "\t" + Q.getArrivalTime(j) + "\t" + Q.getServingTime(j) + "\t" + Q.getLeavingTime(j) + "\t"
+          + arrivalTimeSamples[j] + "\t" + serviceTimeSamples[j]);
+      }
+    } catch (IOException e) {
+      System.err.println(e);
+    }
+    if (compressionLevel == NO_COMPRESSION) {
+      recordOutput(fileout);
+    }
+  }
+
+  /**
+   * Write the queue of events, streaming the arrival and service time samples 
+   * into log-bucketed histograms. The downsampled ECDF of the samples is 
+   * written to a second file, named as fileout with the suffix _ecdf.
+   * 
+   * @param Q
+   *        the simulated queue
+   * @param fileout
+   *        the output file
+   * @param compressionLevel
+   *        the gzip compression level, or NO_COMPRESSION
+   * @param ecdfPoints
+   *        the number of points of the ECDF
+   * @param histogramPrecision
+   *        the number of histogram bins per power of 2
+   */
+  private static void writeHistoryWithEcdf(SimQueue Q, String fileout, int compressionLevel, int ecdfPoints,
+    int histogramPrecision) {
+    Histogram arrivalTimeSamples = Histogram.logarithmic(histogramPrecision);
+    Histogram serviceTimeSamples = Histogram.logarithmic(histogramPrecision);
+    try (PrintWriter out = openOutput(fileout, compressionLevel)) {
+      out.println("Time\tArrivalTime\tServiceTime\tLeavingTime");
+      double previousArrival = 0d;
+      for (long j = 0; j < Q.getClientsNum(); j++) {
+        double arrival = Q.getArrivalTime(j);
+        double serving = Q.getServingTime(j);
+        double leaving = Q.getLeavingTime(j);
+        arrivalTimeSamples.add(arrival - previousArrival);
+        serviceTimeSamples.add(leaving - serving);
+        previousArrival = arrival;
+        out.println(j + "\t" + arrival + "\t" + serving + "\t" + leaving);
+      }
+    } catch (IOException e) {
+      System.err.println(e);
+    }
+    if (compressionLevel == NO_COMPRESSION) {
+      recordOutput(fileout);
+    }
+    double[][] arrivalEcdf = arrivalTimeSamples.ecdf(ecdfPoints);
+    double[][] serviceEcdf = serviceTimeSamples.ecdf(ecdfPoints);
+    try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(ecdfFileName(fileout), false)))) {
+      out.println("Probability\tArrivalTimeSamples\tServiceTimeSamples");
+      for (int j = 0; j < ecdfPoints; j++) {
+        out.println(arrivalEcdf[1][j] + "\t" + arrivalEcdf[0][j] + "\t" + serviceEcdf[0][j]);
+      }
+    } catch (IOException e) {
+      System.err.println(e);
+    }
+    recordOutput(ecdfFileName(fileout));
+  }
+
+  /**
+   * Write the time series of the clients rolled up in time windows. The series is printed on screen, or written 
+   * to a file named as fileout with the suffix _rollup.
+   * 
+   * @param Q
+   *        the simulated queue
+   * @param fileout
+   *        the output file, or null to print on screen
+   * @param window
+   *        the minutes per window
+   * @param by
+   *        the time assigning a client to a window
+   */
+  private static void writeRollup(SimQueue Q, String fileout, double window, TimeWindowRollup.By by) {
+    PrintWriter out = null;
+    try {
+      if (fileout == null) {
+        System.out.println();
+        out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+      } else {
+        out = new PrintWriter(new BufferedWriter(new FileWriter(suffixFileName(fileout, "_rollup"), false)));
+      }
+      // a single pass over the history, keeping only the current window
+      TimeWindowRollup rollup = new TimeWindowRollup(window, by, out);
+      for (long j = 0; j < Q.getClientsNum(); j++) {
+        rollup.add(Q.getArrivalTime(j), Q.getServingTime(j), Q.getLeavingTime(j));
+      }
+      rollup.finish();
+    } catch (IOException e) {
+      System.err.println(e);
+    } finally {
+      if (fileout != null && out != null) {
+        out.close();
+        recordOutput(suffixFileName(fileout, "_rollup"));
+      }
+    }
+  }
+
+  /**
+   * Emit the JFR event of an uncompressed output file written (the compressed ones emit an event per block).
+   * 
+   * @param file
+   *        the output file
+   */
+  private static void recordOutput(String file) {
+    if (FlightRecorderEvents.AVAILABLE) {
+      long length = new File(file).length();
+      FlightRecorderEvents.outputFlush(file, length, length);
+    }
+  }
+
+  /**
+   * Open an output file, compressing it in parallel as a multi-member gzip if required.
+   * 
+   * @param fileout
+   *        the output file
+   * @param compressionLevel
+   *        the gzip compression level, or NO_COMPRESSION
+   * @return the writer
+   * @throws IOException
+   *         if the file cannot be opened
+   */
+  private static PrintWriter openOutput(String fileout, int compressionLevel) throws IOException {
+    if (compressionLevel != NO_COMPRESSION) {
+      // blocks are compressed in parallel, one thread per processor
+      OutputStream gzip = new ParallelGzipOutputStream(new FileOutputStream(fileout, false),
+        ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE, compressionLevel, Runtime.getRuntime().availableProcessors());
+      return new PrintWriter(new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8), 1 << 16));
+    }
+    return new PrintWriter(new BufferedWriter(new FileWriter(fileout, false)));
+  }
+
+  /**
+   * Return the name of the ECDF file, e.g. simqueue_ecdf.csv for simqueue.csv or simqueue.csv.gz.
+   * 
+   * @param fileout
+   *        the output file
+   * @return the ECDF file name
+   */
+  private static String ecdfFileName(String fileout) {
+    return suffixFileName(fileout, "_ecdf");
+  }
+
+  /**
+   * Return the name of a secondary output file, e.g. simqueue_ecdf.csv for simqueue.csv or simqueue.csv.gz.
+   * 
+   * @param fileout
+   *        the output file
+   * @param suffix
+   *        the suffix of the secondary file
+   * @return the secondary file name
+   */
+  private static String suffixFileName(String fileout, String suffix) {
+    if (fileout.endsWith(".gz")) {
+      // the secondary files are small and are not compressed
+      fileout = fileout.substring(0, fileout.length() - 3);
+    }
+    int dot = fileout.lastIndexOf('.');
+    if (dot <= fileout.lastIndexOf(File.separatorChar)) {
+      return fileout + suffix;
+    }
+    return fileout.substring(0, dot) + suffix + fileout.substring(dot);
+  }
+
+  /**
+   * Run the scenarios read one per line until the end of the input, printing one result line per scenario.
+   * 
+   * @param args
+   *        --daemon [jobs]
+   */
+  private static void daemon(String[] args) {
+    try (BufferedReader in = new BufferedReader(args.length > 1 
+        ? new InputStreamReader(new FileInputStream(args[1]), StandardCharsets.UTF_8)
+        : new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+      PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+      BatchDaemon daemon = new BatchDaemon(in, out);
+      daemon.warmUp(DAEMON_WARMUP_RUNS);
+      daemon.run();
+      out.flush();
+    } catch (IOException e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Run the local simulation service until the JVM is terminated.
+   * 
+   * @param args
+   *        --server [port] [threads] [cache_dir] [max_clients] [max_history_clients]
+   */
+  private static void server(String[] args) {
+    int port = SimulationServer.DEFAULT_PORT;
+    int threads = Runtime.getRuntime().availableProcessors();
+    try {
+      if (args.length > 1) {
+        port = Integer.parseInt(args[1]);
+      }
+      if (args.length > 2) {
+        threads = Integer.parseInt(args[2]);
+      }
+      // a quarter of the heap is used for caching the results of seeded scenarios
+      ResultCache cache = new ResultCache(Runtime.getRuntime().maxMemory() / 4,
+        args.length > 3 ? new File(args[3]) : null);
+      SimulationServer server = new SimulationServer(port, threads, cache);
+      server.setMaxClients(args.length > 4 ? Long.parseLong(args[4]) : SimulationServer.DEFAULT_MAX_CLIENTS,
+        args.length > 5 ? Long.parseLong(args[5]) : SimulationServer.DEFAULT_MAX_HISTORY_CLIENTS);
+      server.start();
+      System.out.println("simqueue: simulation service listening on port " + server.getPort() + " with " + threads
+        + " simulation threads.");
+    } catch (NumberFormatException e) {
+      System.err.println("Error: port, threads, max_clients, and max_history_clients must be integers");
+      System.exit(1);
+    } catch (IllegalArgumentException e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(1);
+    } catch (IOException e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Run independent replications of a scenario on worker processes and print the merged summary.
+   * 
+   * @param args
+   *        --coordinator [port] [replications] [chunk_size] [parameters.txt] [local_workers]
+   */
+  private static void coordinator(String[] args) {
+    int port = ReplicationCoordinator.DEFAULT_PORT;
+    long replications = 100;
+    int chunkSize = 10;
+    String filein = "parameters.txt";
+    int localWorkers = 0;
+    try {
+      if (args.length > 1) {
+        port = Integer.parseInt(args[1]);
+      }
+      if (args.length > 2) {
+        replications = Long.parseLong(args[2]);
+      }
+      if (args.length > 3) {
+        chunkSize = Integer.parseInt(args[3]);
+      }
+      if (args.length > 4) {
+        filein = args[4];
+      }
+      if (args.length > 5) {
+        localWorkers = Integer.parseInt(args[5]);
+      }
+    } catch (NumberFormatException e) {
+      System.err.println("Error: port, replications, chunk_size, and local_workers must be integers");
+      System.exit(1);
+    }
+    List<Process> workers = new ArrayList<Process>();
+    try {
+      ReplicationCoordinator coordinator = new ReplicationCoordinator(port, PropertiesManager.load(filein),
+        replications, chunkSize);
+      System.out.println("simqueue: coordinator listening on port " + coordinator.getPort() + ", "
+        + coordinator.getChunks() + " chunks of " + chunkSize + " replications.");
+      // local workers run the same classes in separate JVMs
+      String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+      for (int i = 0; i < localWorkers; i++) {
+        workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Main.class.getName(),
+          "--worker", "localhost:" + coordinator.getPort()).inheritIO().start());
+      }
+      long start = System.nanoTime();
+      ReplicationSummary summary = coordinator.run();
+      System.out.println(summary);
+      System.out.println(ElapsedTime.compute(System.nanoTime() - start)
+        + (coordinator.getRedispatched() > 0 ? " (" + coordinator.getRedispatched() + " chunks handed out again)" : ""));
+    } catch (IOException e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(1);
+    } catch (ParameterException e) {
+      System.err.println("Error: " + e.getMessage() + " Exit.");
+      System.exit(1);
+    } catch (IllegalArgumentException e) {
+      System.err.println("Error: " + e.getMessage() + " Exit.");
+      System.exit(1);
+    } catch (IllegalStateException e) {
+      System.err.println("Error: " + e.getMessage() + " Exit.");
+      System.exit(1);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      for (Process worker : workers) {
+        worker.destroy();
+      }
+    }
+  }
+
+  /**
+   * Test that the samples of every random variable follow its distribution, and exit with 
+   * status 1 if a test is rejected.
+   * 
+   * @param args
+   *        --validate [samples] [seed]
+   */
+  private static void validate(String[] args) {
+    int samples = Validation.DEFAULT_SAMPLES;
+    long seed = Validation.DEFAULT_SEED;
+    try {
+      if (args.length > 1) {
+        samples = Integer.parseInt(args[1]);
+      }
+      if (args.length > 2) {
+        seed = Long.parseLong(args[2]);
+      }
+    } catch (NumberFormatException e) {
+      System.err.println("Error: samples and seed must be integers");
+      System.exit(1);
+    }
+    boolean passed = false;
+    try {
+      long start = System.nanoTime();
+      passed = new Validation(samples, seed, Validation.DEFAULT_ALPHA).run(System.out);
+      System.out.println("Running time of the validation: " + ElapsedTime.format(System.nanoTime() - start));
+    } catch (IllegalArgumentException e) {
+      System.err.println("Error: " + e.getMessage() + " Exit.");
+      System.exit(1);
+    }
+    if (!passed) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Simulate the replications handed out by a coordinator until it is done.
+   * 
+   * @param args
+   *        --worker [host:port]
+   */
+  private static void worker(String[] args) {
+    String host = "localhost";
+    int port = ReplicationCoordinator.DEFAULT_PORT;
+    try {
+      if (args.length > 1) {
+        int colon = args[1].lastIndexOf(':');
+        if (colon >= 0) {
+          host = args[1].substring(0, colon);
+          port = Integer.parseInt(args[1].substring(colon + 1));
+        } else {
+          host = args[1];
+        }
+      }
+      new ReplicationWorker(host, port).run();
+    } catch (NumberFormatException e) {
+      System.err.println("Error: port must be an integer");
+      System.exit(1);
+    } catch (IOException e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(1);
+    }
+  }
 }
@@ -0,0 +1,112 @@
+package org.simqueue.io;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * A reader of the history files written by Main, plain or gzip compressed.
+ * Compressed files are decompressed in parallel by ParallelGzipInputStream.
+ */
+public class HistoryReader {
+
+	/** Default constructor */
+	private HistoryReader() {
+		
+	}
+	
+	/**
+	 * Open a history file, decompressing it if it is gzip compressed.
+	 * 
+	 * @param file the file
+	 * @return the stream of the uncompressed data
+	 * @throws IOException if the file cannot be read
+	 */
+	public static InputStream open(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+		in.mark(2);
+		int b0 = in.read(), b1 = in.read();
+		in.reset();
+		if(b0 == 0x1f && b1 == 0x8b) {
+			return new ParallelGzipInputStream(in);
+		}
+		return in;
+	}
+	
+	/**
+	 * Read the arrival, serving, and leaving times of a history file.
+	 * 
+	 * @param file the file
+	 * @return the history, as returned by SimQueue.getHistory()
+	 * @throws IOException if the file cannot be read or parsed
+	 */
+	public static double[][] read(File file) throws IOException {
+		double[][] queue = new double[3][1024];
+		int n = 0;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(open(file), StandardCharsets.UTF_8), 1 << 16)) {
+			String line = reader.readLine();
+			if(line == null || !line.startsWith("Time\tArrivalTime\tServiceTime\tLeavingTime")) {
+				throw new IOException("Not a history file: " + file);
+			}
+			while((line = reader.readLine()) != null) {
+				if(line.isEmpty()) {
+					continue;
+				}
+				if(n == queue[0].length) {
+					for(int k = 0; k < 3; k++) {
+						queue[k] = Arrays.copyOf(queue[k], 2 * n);
+					}
+				}
+				int start = line.indexOf('\t') + 1;
+				for(int k = 0; k < 3; k++) {
+					int end = line.indexOf('\t', start);
+					if(start == 0 || (end < 0 && k < 2)) {
+						throw new IOException("Malformed line " + (n + 2) + " of " + file);
+					}
+					try {
+						queue[k][n] = Double.parseDouble(end < 0 ? line.substring(start) : line.substring(start, end));
+					} catch(NumberFormatException e) {
+						throw new IOException("Malformed line " + (n + 2) + " of " + file);
+					}
+					start = end + 1;
+				}
+				n++;
+			}
+		}
+		for(int k = 0; k < 3; k++) {
+			queue[k] = Arrays.copyOf(queue[k], n);
+		}
+		return queue;
+	}
+
+}
@@ -0,0 +1,265 @@
+package org.simqueue.io;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.simqueue.utils.NamedThreadFactory;
+
+
+/**
+ * An input stream decompressing a gzip file in parallel. 
+ * The members written by ParallelGzipOutputStream record their size, so they 
+ * are read ahead and inflated by worker threads, and returned in order. 
+ * From the first member without the size (e.g. a file written by gzip), 
+ * the rest of the file is decompressed sequentially by GZIPInputStream.
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+	private final InputStream in;
+	private final int maxPending;
+	private final ExecutorService pool;
+	
+	/** The inflated blocks not yet read, in order. */
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+	
+	/** The block being read. */
+	private byte[] block = new byte[0];
+	private int position = 0;
+	
+	/** The sequential stream reading the members without size, or null. */
+	private InputStream fallback = null;
+	
+	private boolean endOfInput = false;
+	private boolean closed = false;
+	
+	/**
+	 * Constructor. Use a thread per available processor.
+	 * 
+	 * @param in the underlying stream
+	 */
+	public ParallelGzipInputStream(InputStream in) {
+		this(in, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param in the underlying stream
+	 * @param threads the number of decompressing threads
+	 */
+	public ParallelGzipInputStream(InputStream in, int threads) {
+		if(threads < 1) {
+			throw new IllegalArgumentException("Require threads > 0.");
+		}
+		this.in = in;
+		this.maxPending = 2 * threads;
+		this.pool = Executors.newFixedThreadPool(threads, new NamedThreadFactory("simqueue-inflate"));
+	}
+	
+	/** {@inheritDoc} */
+	public int read() throws IOException {
+		if(!fill()) {
+			return fallback != null ? fallback.read() : -1;
+		}
+		return block[position++] & 0xff;
+	}
+	
+	/** {@inheritDoc} */
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0) {
+			return 0;
+		}
+		if(!fill()) {
+			return fallback != null ? fallback.read(b, off, len) : -1;
+		}
+		int n = Math.min(len, block.length - position);
+		System.arraycopy(block, position, b, off, n);
+		position += n;
+		return n;
+	}
+	
+	/** {@inheritDoc} */
+	public void close() throws IOException {
+		if(closed) {
+			return;
+		}
+		closed = true;
+		pool.shutdownNow();
+		if(fallback != null) {
+			fallback.close();
+		} else {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Make the next inflated block current, if the current one is consumed.
+	 * 
+	 * @return false if no inflated block is left
+	 */
+	private boolean fill() throws IOException {
+		if(closed) {
+			throw new IOException("Stream closed.");
+		}
+		while(position == block.length) {
+			while(!endOfInput && pending.size() < maxPending) {
+				readMember();
+			}
+			if(pending.isEmpty()) {
+				return false;
+			}
+			try {
+				block = pending.poll().get();
+			} catch(ExecutionException e) {
+				throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+			position = 0;
+		}
+		return true;
+	}
+	
+	/** Read the next member and submit it for decompression. */
+	private void readMember() throws IOException {
+		byte[] header = new byte[12];
+		int first = in.read();
+		if(first < 0) {
+			endOfInput = true;
+			return;
+		}
+		header[0] = (byte) first;
+		int n = 1 + readFully(in, header, 1, 11);
+		int memberSize = -1;
+		int headerSize = 0;
+		if(n == 12 && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b && header[2] == 8 
+				&& header[3] == 4) {
+			// only FEXTRA is set: look for the subfield recording the member size
+			int xlen = (header[10] & 0xff) | (header[11] & 0xff) << 8;
+			header = Arrays.copyOf(header, 12 + xlen);
+			n += readFully(in, header, 12, xlen);
+			for(int i = 12; n == header.length && i + 4 <= header.length; ) {
+				int length = (header[i + 2] & 0xff) | (header[i + 3] & 0xff) << 8;
+				if(header[i] == ParallelGzipOutputStream.SI1 && header[i + 1] == ParallelGzipOutputStream.SI2 
+						&& length == 4 && i + 8 <= header.length) {
+					memberSize = readInt(header, i + 4);
+					headerSize = header.length;
+					break;
+				}
+				i += 4 + length;
+			}
+		}
+		if(memberSize < headerSize + ParallelGzipOutputStream.TRAILER_SIZE) {
+			// not written by ParallelGzipOutputStream: decompress the rest sequentially
+			endOfInput = true;
+			fallback = new GZIPInputStream(new SequenceInputStream(
+					new ByteArrayInputStream(header, 0, n), in), 1 << 16);
+			return;
+		}
+		final byte[] member = Arrays.copyOf(header, memberSize);
+		if(readFully(in, member, headerSize, memberSize - headerSize) < memberSize - headerSize) {
+			throw new EOFException("Unexpected end of the gzip file.");
+		}
+		final int offset = headerSize;
+		pending.add(pool.submit(new Callable<byte[]>() {
+			public byte[] call() throws IOException {
+				return inflate(member, offset);
+			}
+		}));
+	}
+	
+	/**
+	 * Inflate a complete gzip member and check its CRC.
+	 * 
+	 * @param member the gzip member
+	 * @param offset the size of its header
+	 * @return the inflated data
+	 */
+	static byte[] inflate(byte[] member, int offset) throws IOException {
+		int trailer = member.length - ParallelGzipOutputStream.TRAILER_SIZE;
+		byte[] data = new byte[readInt(member, trailer + 4)];
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(member, offset, trailer - offset);
+			int size = 0;
+			while(size < data.length && !inflater.finished()) {
+				int k = inflater.inflate(data, size, data.length - size);
+				if(k == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				size += k;
+			}
+			if(size != data.length) {
+				throw new ZipException("Corrupt gzip member: wrong size.");
+			}
+		} catch(DataFormatException e) {
+			throw new ZipException("Corrupt gzip member: " + e.getMessage());
+		} finally {
+			inflater.end();
+		}
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		if((int) crc.getValue() != readInt(member, trailer)) {
+			throw new ZipException("Corrupt gzip member: wrong CRC.");
+		}
+		return data;
+	}
+	
+	/** Read up to len bytes, returning the number of bytes read. */
+	private static int readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+		int n = 0;
+		while(n < len) {
+			int k = in.read(b, off + n, len - n);
+			if(k < 0) {
+				break;
+			}
+			n += k;
+		}
+		return n;
+	}
+	
+	/** Read an int in little endian order. */
+	private static int readInt(byte[] b, int off) {
+		return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+	}
+
+}
@@ -0,0 +1,259 @@
+package org.simqueue.io;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.simqueue.utils.FlightRecorderEvents;
+import org.simqueue.utils.NamedThreadFactory;
+
+
+/**
+ * An output stream compressing its data in parallel as a multi-member gzip.
+ * The data is split in independent blocks, each compressed by a worker 
+ * thread with its own Deflater and written as a complete gzip member, 
+ * in the original order. Standard tools (gzip, zcat) read the result as 
+ * a single file. Each member records its compressed size in a gzip extra 
+ * field (subfield "SQ"), so that ParallelGzipInputStream can locate 
+ * the blocks and decompress them in parallel too.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+	/** The default number of uncompressed bytes per block. */
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+	
+	/** The size of a member header, including the extra field. */
+	static final int HEADER_SIZE = 20;
+	
+	/** The size of a member trailer (CRC32 and uncompressed size). */
+	static final int TRAILER_SIZE = 8;
+	
+	/** The extra subfield identifier. */
+	static final byte SI1 = 'S', SI2 = 'Q';
+	
+	private final OutputStream out;
+	private final int blockSize;
+	private final int level;
+	private final int maxPending;
+	private final ExecutorService pool;
+	
+	/** The compressed members not yet written, in order. */
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+	
+	/** The block being filled. */
+	private byte[] block;
+	private int count = 0;
+	private boolean closed = false;
+	
+	/**
+	 * Constructor. Use the default block size and compression level, 
+	 * and a thread per available processor.
+	 * 
+	 * @param out the underlying stream
+	 */
+	public ParallelGzipOutputStream(OutputStream out) {
+		this(out, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param out the underlying stream
+	 * @param blockSize the number of uncompressed bytes per block
+	 * @param level the compression level (0-9, or -1 for the default)
+	 * @param threads the number of compressing threads
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int blockSize, int level, int threads) {
+		if(blockSize < 1 || threads < 1) {
+			throw new IllegalArgumentException("Require blockSize > 0 and threads > 0.");
+		}
+		this.out = out;
+		this.blockSize = blockSize;
+		this.level = level;
+		// bound the memory used by the blocks in flight
+		this.maxPending = 2 * threads;
+		this.pool = Executors.newFixedThreadPool(threads, new NamedThreadFactory("simqueue-deflate"));
+		this.block = new byte[blockSize];
+	}
+	
+	/** {@inheritDoc} */
+	public void write(int b) throws IOException {
+		if(count == blockSize) {
+			submit();
+		}
+		block[count++] = (byte) b;
+	}
+	
+	/** {@inheritDoc} */
+	public void write(byte[] b, int off, int len) throws IOException {
+		while(len > 0) {
+			if(count == blockSize) {
+				submit();
+			}
+			int n = Math.min(len, blockSize - count);
+			System.arraycopy(b, off, block, count, n);
+			count += n;
+			off += n;
+			len -= n;
+		}
+	}
+	
+	/**
+	 * Compress the buffered data as a block and write all the completed 
+	 * blocks. Note that each flush ends a gzip member, so frequent flushes 
+	 * reduce the compression ratio.
+	 */
+	public void flush() throws IOException {
+		submit();
+		while(!pending.isEmpty()) {
+			writeNext();
+		}
+		out.flush();
+	}
+	
+	/** {@inheritDoc} */
+	public void close() throws IOException {
+		if(closed) {
+			return;
+		}
+		closed = true;
+		try {
+			flush();
+		} finally {
+			pool.shutdownNow();
+			out.close();
+		}
+	}
+	
+	/** Submit the current block for compression. */
+	private void submit() throws IOException {
+		if(count == 0) {
+			return;
+		}
+		while(pending.size() >= maxPending) {
+			writeNext();
+		}
+		final byte[] data = block;
+		final int length = count;
+		pending.add(pool.submit(new Callable<byte[]>() {
+			public byte[] call() {
+				return compress(data, length, level);
+			}
+		}));
+		block = new byte[blockSize];
+		count = 0;
+	}
+	
+	/** Wait for the oldest block and write it. */
+	private void writeNext() throws IOException {
+		try {
+			byte[] member = pending.poll().get();
+			out.write(member);
+			if(FlightRecorderEvents.AVAILABLE) {
+				// the gzip trailer ends with the uncompressed size of the block
+				int n = member.length;
+				long size = (member[n - 4] & 0xFFL) | (member[n - 3] & 0xFFL) << 8 
+						| (member[n - 2] & 0xFFL) << 16 | (member[n - 1] & 0xFFL) << 24;
+				FlightRecorderEvents.outputFlush("gzip", size, n);
+			}
+		} catch(ExecutionException e) {
+			throw new IOException(e.getCause());
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+	
+	/**
+	 * Compress data as a complete gzip member.
+	 * 
+	 * @param data the data
+	 * @param length the number of bytes of data to compress
+	 * @param level the compression level
+	 * @return the gzip member
+	 */
+	static byte[] compress(byte[] data, int length, int level) {
+		Deflater deflater = new Deflater(level, true);
+		try {
+			deflater.setInput(data, 0, length);
+			deflater.finish();
+			byte[] member = new byte[HEADER_SIZE + length + (length >> 3) + 64 + TRAILER_SIZE];
+			int size = HEADER_SIZE;
+			while(!deflater.finished()) {
+				if(size == member.length - TRAILER_SIZE) {
+					member = Arrays.copyOf(member, member.length * 2);
+				}
+				size += deflater.deflate(member, size, member.length - TRAILER_SIZE - size);
+			}
+			CRC32 crc = new CRC32();
+			crc.update(data, 0, length);
+			size += TRAILER_SIZE;
+			writeHeader(member, size);
+			writeInt(member, size - TRAILER_SIZE, (int) crc.getValue());
+			writeInt(member, size - 4, length);
+			return member.length == size ? member : Arrays.copyOf(member, size);
+		} finally {
+			deflater.end();
+		}
+	}
+	
+	/** Write a member header with FEXTRA, recording the member size. */
+	private static void writeHeader(byte[] b, int memberSize) {
+		b[0] = 0x1f;
+		b[1] = (byte) 0x8b;
+		// deflate, FEXTRA, no mtime, no extra flags, unknown OS
+		b[2] = 8;
+		b[3] = 4;
+		b[4] = b[5] = b[6] = b[7] = 0;
+		b[8] = 0;
+		b[9] = (byte) 0xff;
+		// XLEN, then the subfield SI1 SI2 LEN DATA
+		b[10] = 8;
+		b[11] = 0;
+		b[12] = SI1;
+		b[13] = SI2;
+		b[14] = 4;
+		b[15] = 0;
+		writeInt(b, 16, memberSize);
+	}
+	
+	/** Write an int in little endian order. */
+	static void writeInt(byte[] b, int off, int v) {
+		b[off] = (byte) v;
+		b[off + 1] = (byte) (v >>> 8);
+		b[off + 2] = (byte) (v >>> 16);
+		b[off + 3] = (byte) (v >>> 24);
+	}
+
+}
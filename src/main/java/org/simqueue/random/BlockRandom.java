@@ -0,0 +1,139 @@
+package org.simqueue.random;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Random;
+
+
+/**
+ * A java.util.Random returning the same sequence for the same seed, without 
+ * the atomic update of the seed of each call: it must not be shared between 
+ * threads, as the random variables are not. 
+ * 
+ * nextDoubles() fills a block of uniforms as four interleaved lanes: each 
+ * lane leaps 8 steps of the linear congruential generator at a time, so the 
+ * multiplications of the lanes are independent and can overlap in the CPU, 
+ * and the block still holds the values of successive nextDouble() calls.
+ */
+public class BlockRandom extends Random {
+
+	private static final long serialVersionUID = 1L;
+	
+	/** The parameters of the linear congruential generator of java.util.Random. */
+	private static final long MULTIPLIER = 0x5DEECE66DL, ADDEND = 0xBL, MASK = (1L << 48) - 1;
+	
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+	
+	/** The number of doubles generated side by side by nextDoubles(). */
+	private static final int LANES = 4;
+	
+	/** The multiplier and the addend of 2 * LANES steps of the generator. */
+	private static final long LEAP_MULTIPLIER, LEAP_ADDEND;
+	
+	static {
+		long m = 1L, a = 0L;
+		for(int i = 0; i < 2 * LANES; i++) {
+			m = (m * MULTIPLIER) & MASK;
+			a = (a * MULTIPLIER + ADDEND) & MASK;
+		}
+		LEAP_MULTIPLIER = m;
+		LEAP_ADDEND = a;
+	}
+	
+	/** The state of the generator (set by the constructor of Random through setSeed()). */
+	private long state;
+	
+	/** Default constructor, with a random seed. */
+	public BlockRandom() {
+		super();
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param seed the seed
+	 */
+	public BlockRandom(long seed) {
+		super(seed);
+	}
+	
+	/** {@inheritDoc} */
+	public void setSeed(long seed) {
+		state = (seed ^ MULTIPLIER) & MASK;
+		// clear the cached gaussian
+		super.setSeed(seed);
+	}
+	
+	/** {@inheritDoc} */
+	protected int next(int bits) {
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int) (state >>> (48 - bits));
+	}
+	
+	/** {@inheritDoc} */
+	public double nextDouble() {
+		long s1 = (state * MULTIPLIER + ADDEND) & MASK;
+		long s2 = (s1 * MULTIPLIER + ADDEND) & MASK;
+		state = s2;
+		return (((s1 >>> 22) << 27) + (s2 >>> 21)) * DOUBLE_UNIT;
+	}
+	
+	/**
+	 * Fill a range of an array with the values of successive nextDouble() calls.
+	 * 
+	 * @param values the array
+	 * @param from the first index to fill (inclusive)
+	 * @param to the last index to fill (exclusive)
+	 */
+	public void nextDoubles(double[] values, int from, int to) {
+		int i = from;
+		if(to - from >= LANES) {
+			// the 8 successive states of the next 4 doubles
+			long s1 = (state * MULTIPLIER + ADDEND) & MASK, s2 = (s1 * MULTIPLIER + ADDEND) & MASK;
+			long s3 = (s2 * MULTIPLIER + ADDEND) & MASK, s4 = (s3 * MULTIPLIER + ADDEND) & MASK;
+			long s5 = (s4 * MULTIPLIER + ADDEND) & MASK, s6 = (s5 * MULTIPLIER + ADDEND) & MASK;
+			long s7 = (s6 * MULTIPLIER + ADDEND) & MASK, s8 = (s7 * MULTIPLIER + ADDEND) & MASK;
+			int end = to - (to - from) % LANES;
+			for(; i < end; i += LANES) {
+				values[i] = (((s1 >>> 22) << 27) + (s2 >>> 21)) * DOUBLE_UNIT;
+				values[i + 1] = (((s3 >>> 22) << 27) + (s4 >>> 21)) * DOUBLE_UNIT;
+				values[i + 2] = (((s5 >>> 22) << 27) + (s6 >>> 21)) * DOUBLE_UNIT;
+				values[i + 3] = (((s7 >>> 22) << 27) + (s8 >>> 21)) * DOUBLE_UNIT;
+				state = s8;
+				s1 = (s1 * LEAP_MULTIPLIER + LEAP_ADDEND) & MASK;
+				s2 = (s2 * LEAP_MULTIPLIER + LEAP_ADDEND) & MASK;
+				s3 = (s3 * LEAP_MULTIPLIER + LEAP_ADDEND) & MASK;
+				s4 = (s4 * LEAP_MULTIPLIER + LEAP_ADDEND) & MASK;
+				s5 = (s5 * LEAP_MULTIPLIER + LEAP_ADDEND) & MASK;
+				s6 = (s6 * LEAP_MULTIPLIER + LEAP_ADDEND) & MASK;
+				s7 = (s7 * LEAP_MULTIPLIER + LEAP_ADDEND) & MASK;
+				s8 = (s8 * LEAP_MULTIPLIER + LEAP_ADDEND) & MASK;
+			}
+		}
+		for(; i < to; i++) {
+			values[i] = nextDouble();
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+package org.simqueue.random;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.simqueue.exception.DistributionException;
+
+
+/** 
+ * An Erlang random variable, i.e. the sum of k exponential phases with the 
+ * same rate. Small values of k are sampled as the logarithm of a product of 
+ * k uniform values, larger values with the gamma sampler.
+ */
+public class ErlangVariable extends GammaVariable {
+
+	/** The largest number of phases sampled as a product of uniform values. */
+	public static final int PRODUCT_LIMIT = 12;
+
+	/** parameter k (phases) */
+	private int phases = 0;
+	/** parameter lambda (rate of each phase) */
+	private double rate = 0.0d;
+	
+	/** 
+	 * Construct an Erlang stochastic variable with k phases of rate lambda.
+	 * 
+	 * @param phases the k parameter (number of phases), >= 1
+	 * @param rate the lambda parameter (rate of each phase), > 0
+	 * @throws DistributionException if phases < 1 or rate <= 0. 
+	 */
+	public ErlangVariable(int phases, double rate) throws DistributionException {
+		super(phases, scale(phases, rate));
+		this.phases = phases;
+		this.rate = rate;
+	}
+	
+	/** Return the scale of the gamma variable with the same distribution. */
+	private static double scale(int phases, double rate) throws DistributionException {
+		if( phases < 1 || !(rate > 0) || Double.isInfinite(rate) )
+			throw new DistributionException("Erlang parameters must be phases >= 1 and rate > 0 .");
+		return 1 / rate;
+	}
+	
+	/** {@inheritDoc} */
+	public double getNext() {
+		if( phases > PRODUCT_LIMIT )
+			return sample();
+		double product = 1d;
+		for(int j = 0; j < phases; j++) {
+			product *= 1d - rand.nextDouble();
+		}
+		return - ( Math.log(product) / rate );
+	}
+	
+	/** {@inheritDoc} */
+	public void fill(double[] values, int from, int to) {
+		if( phases > PRODUCT_LIMIT ) {
+			super.fill(values, from, to);
+			return;
+		}
+		for(int i = from; i < to; i++) {
+			double product = 1d;
+			for(int j = 0; j < phases; j++) {
+				product *= 1d - rand.nextDouble();
+			}
+			values[i] = - ( Math.log(product) / rate );
+		}
+	}
+
+	/**
+	 * Return the number of phases for the Erlang variable.
+	 * @return k
+	 */
+	public int getPhases() {
+		return phases;
+	}
+
+	/**
+	 * Return the rate of each phase for the Erlang variable.
+	 * @return lambda
+	 */
+	public double getRate() {
+		return rate;
+	}
+
+}
@@ -42,6 +42,17 @@ public class ExponentialVariable extends RandomVariable {
      * @throws ExponentialException if expLambda < 0. 
      */    
 	public ExponentialVariable(double expLambda)  throws ExponentialException  {
+        setLambda(expLambda);
+	}
+	
+    /** 
+     * Set the parameter of this variable, keeping its uniform generator, 
+     * so that a variable can be reused for another scenario.
+     * 
+     * @param expLambda the lambda parameter
+     * @throws ExponentialException if expLambda < 0. 
+     */    
+	public void setLambda(double expLambda)  throws ExponentialException  {
         if( expLambda > 0 ) {
             lambda = expLambda;
             setTheoreticalMean(1 / lambda);
@@ -67,5 +78,26 @@ public class ExponentialVariable extends RandomVariable {
     return - ( Math.log(u) / lambda );
 	}
 
+	/** {@inheritDoc} */
+	public void fill(double[] values, int from, int to) {
+		// sample the uniforms in bulk, then transform them
+		rand.nextDoubles(values, from, to);
+		for(int i = from; i < to; i++) {
+			values[i] = - ( Math.log(values[i]) / lambda );
+		}
+	}
+
+	/** {@inheritDoc} */
+	public double cdf(double x) {
+		if( x <= 0 )
+			return 0d;
+		return - Math.expm1( - lambda * x );
+	}
+
+	/** {@inheritDoc} */
+	public double quantile(double u) {
+		return - ( Math.log1p(-u) / lambda );
+	}
+
 
 }
@@ -0,0 +1,128 @@
+package org.simqueue.random;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.simqueue.exception.DistributionException;
+import org.simqueue.utils.SpecialFunctions;
+
+
+/** 
+ * A gamma random variable, sampled with the method of Marsaglia and Tsang: 
+ * a ziggurat normal value is accepted after a squeeze test in about 98% of 
+ * the draws, so the logarithms are rarely evaluated.
+ */
+public class GammaVariable extends RandomVariable {
+
+	/** parameter k (shape) */
+	private double shape = 0.0d;
+	/** parameter theta (scale) */
+	private double scale = 0.0d;
+	
+	// the constants of the Marsaglia-Tsang method, for shape max(k, k+1)
+	private final double d;
+	private final double c;
+	
+	/** 
+	 * Construct a gamma stochastic variable with parameters shape and scale, both > 0.
+	 * 
+	 * @param shape the k parameter (shape)
+	 * @param scale the theta parameter (scale)
+	 * @throws DistributionException if shape <= 0 or scale <= 0. 
+	 */
+	public GammaVariable(double shape, double scale) throws DistributionException {
+		if( shape > 0 && scale > 0 && !Double.isInfinite(shape) && !Double.isInfinite(scale) ) {
+			this.shape = shape;
+			this.scale = scale;
+			d = (shape < 1 ? shape + 1 : shape) - 1d / 3;
+			c = 1 / Math.sqrt(9 * d);
+			setTheoreticalMean( shape * scale );
+			setTheoreticalVar( shape * scale * scale );
+			setTheoreticalSD( Math.sqrt( shape * scale * scale ) );
+		} else {
+			throw new DistributionException("Gamma parameters must be shape > 0 and scale > 0 .");
+		}
+	}
+	
+	/** {@inheritDoc} */
+	public double getNext() {
+		return sample();
+	}
+	
+	/** {@inheritDoc} */
+	public void fill(double[] values, int from, int to) {
+		for(int i = from; i < to; i++) {
+			values[i] = sample();
+		}
+	}
+	
+	/** 
+	 * Sample the gamma variable with the Marsaglia-Tsang method. 
+	 * A shape k < 1 is sampled as Gamma(k+1) U^(1/k).
+	 * 
+	 * @return the sampled value
+	 */
+	protected final double sample() {
+		double x, v, u;
+		for(;;) {
+			do {
+				x = ZigguratNormal.next(rand);
+				v = 1 + c * x;
+			} while( v <= 0 );
+			v = v * v * v;
+			u = 1d - rand.nextDouble();
+			double x2 = x * x;
+			if( u < 1 - 0.0331 * x2 * x2 || Math.log(u) < 0.5 * x2 + d * (1 - v + Math.log(v)) ) {
+				break;
+			}
+		}
+		if( shape < 1 ) {
+			return scale * d * v * Math.pow(1d - rand.nextDouble(), 1 / shape);
+		}
+		return scale * d * v;
+	}
+
+	/** {@inheritDoc} */
+	public double cdf(double x) {
+		if( x <= 0 )
+			return 0d;
+		return SpecialFunctions.regularizedGammaP(shape, x / scale);
+	}
+
+	/**
+	 * Return the shape parameter for the gamma variable.
+	 * @return shape
+	 */
+	public double getShape() {
+		return shape;
+	}
+
+	/**
+	 * Return the scale parameter for the gamma variable.
+	 * @return scale
+	 */
+	public double getScale() {
+		return scale;
+	}
+
+}
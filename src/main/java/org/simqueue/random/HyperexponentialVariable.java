@@ -0,0 +1,122 @@
+package org.simqueue.random;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.simqueue.exception.DistributionException;
+
+
+/** 
+ * A hyperexponential random variable: with probability p[i] the value 
+ * is sampled from an exponential variable with rate lambda[i]. 
+ */
+public class HyperexponentialVariable extends RandomVariable {
+
+	/** The cumulative probabilities of the phases. */
+	private final double[] cumulative;
+	/** The rates of the phases. */
+	private final double[] rates;
+	/** The probabilities of the phases. */
+	private final double[] probabilities;
+	
+	/** 
+	 * Construct a hyperexponential stochastic variable. The probabilities 
+	 * must be >= 0 and sum to 1, the rates must be > 0.
+	 * 
+	 * @param probabilities the probability of each phase
+	 * @param rates the rate of each phase
+	 * @throws DistributionException if the parameters are not valid. 
+	 */
+	public HyperexponentialVariable(double[] probabilities, double[] rates) throws DistributionException {
+		if( probabilities.length == 0 || probabilities.length != rates.length )
+			throw new DistributionException("Hyperexponential parameters must have one probability per rate .");
+		this.probabilities = probabilities.clone();
+		this.rates = rates.clone();
+		cumulative = new double[probabilities.length];
+		double sum = 0d, mean = 0d, moment2 = 0d;
+		for(int i = 0; i < probabilities.length; i++) {
+			if( !(probabilities[i] >= 0) || !(rates[i] > 0) || Double.isInfinite(rates[i]) )
+				throw new DistributionException("Hyperexponential parameters must be probabilities >= 0 and rates > 0 .");
+			sum += probabilities[i];
+			cumulative[i] = sum;
+			mean += probabilities[i] / rates[i];
+			moment2 += 2 * probabilities[i] / (rates[i] * rates[i]);
+		}
+		if( Math.abs(sum - 1) > 1e-9 )
+			throw new DistributionException("Hyperexponential probabilities must sum to 1 .");
+		// the last phase absorbs the rounding errors
+		cumulative[cumulative.length - 1] = 1d;
+		setTheoreticalMean( mean );
+		setTheoreticalVar( moment2 - mean * mean );
+		setTheoreticalSD( Math.sqrt( moment2 - mean * mean ) );
+	}
+	
+	/** {@inheritDoc} */
+	public double getNext() {
+		return - ( Math.log(1d - rand.nextDouble()) / rates[phase(rand.nextDouble())] );
+	}
+	
+	/** {@inheritDoc} */
+	public void fill(double[] values, int from, int to) {
+		for(int i = from; i < to; i++) {
+			values[i] = - ( Math.log(1d - rand.nextDouble()) / rates[phase(rand.nextDouble())] );
+		}
+	}
+	
+	/** Return the phase selected by a uniform value. */
+	private int phase(double u) {
+		int i = 0;
+		while( u >= cumulative[i] && i < cumulative.length - 1 ) {
+			i++;
+		}
+		return i;
+	}
+
+	/** {@inheritDoc} */
+	public double cdf(double x) {
+		if( x <= 0 )
+			return 0d;
+		double survival = 0d;
+		for(int i = 0; i < rates.length; i++) {
+			survival += probabilities[i] * Math.exp( - rates[i] * x );
+		}
+		return 1d - survival;
+	}
+
+	/**
+	 * Return the probabilities of the phases.
+	 * @return the probabilities
+	 */
+	public double[] getProbabilities() {
+		return probabilities.clone();
+	}
+
+	/**
+	 * Return the rates of the phases.
+	 * @return the rates
+	 */
+	public double[] getRates() {
+		return rates.clone();
+	}
+
+}
@@ -0,0 +1,99 @@
+package org.simqueue.random;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.simqueue.exception.DistributionException;
+import org.simqueue.utils.SpecialFunctions;
+
+
+/** A lognormal random variable, i.e. exp(mu + sigma Z) with Z standard normal */
+public class LognormalVariable extends RandomVariable {
+
+	/** parameter mu (mean of the logarithm) */
+	private double mu = 0.0d;
+	/** parameter sigma (standard deviation of the logarithm) */
+	private double sigma = 0.0d;
+	
+	/** 
+	 * Construct a lognormal stochastic variable whose logarithm 
+	 * has mean mu and standard deviation sigma > 0. 
+	 * 
+	 * @param mu the mean of the logarithm
+	 * @param sigma the standard deviation of the logarithm
+	 * @throws DistributionException if sigma <= 0 or mu is not finite. 
+	 */
+	public LognormalVariable(double mu, double sigma) throws DistributionException {
+		if( sigma > 0 && !Double.isInfinite(sigma) && !Double.isInfinite(mu) && !Double.isNaN(mu) ) {
+			this.mu = mu;
+			this.sigma = sigma;
+			double s2 = sigma * sigma;
+			setTheoreticalMean( Math.exp(mu + s2 / 2) );
+			setTheoreticalVar( Math.expm1(s2) * Math.exp(2 * mu + s2) );
+			setTheoreticalSD( Math.sqrt( Math.expm1(s2) * Math.exp(2 * mu + s2) ) );
+		} else {
+			throw new DistributionException("Lognormal parameters must be sigma > 0 and mu finite .");
+		}
+	}
+	
+	/** {@inheritDoc} */
+	public double getNext() {
+		return Math.exp( mu + sigma * ZigguratNormal.next(rand) );
+	}
+	
+	/** {@inheritDoc} */
+	public void fill(double[] values, int from, int to) {
+		for(int i = from; i < to; i++) {
+			values[i] = Math.exp( mu + sigma * ZigguratNormal.next(rand) );
+		}
+	}
+
+	/** {@inheritDoc} */
+	public double cdf(double x) {
+		if( x <= 0 )
+			return 0d;
+		return SpecialFunctions.normalCdf( (Math.log(x) - mu) / sigma );
+	}
+
+	/** {@inheritDoc} */
+	public double quantile(double u) {
+		return Math.exp( mu + sigma * SpecialFunctions.normalQuantile(u) );
+	}
+
+	/**
+	 * Return the parameter mu for the lognormal variable.
+	 * @return mu
+	 */
+	public double getMu() {
+		return mu;
+	}
+
+	/**
+	 * Return the parameter sigma for the lognormal variable.
+	 * @return sigma
+	 */
+	public double getSigma() {
+		return sigma;
+	}
+
+}
@@ -23,19 +23,18 @@ package org.simqueue.random;
  * SOFTWARE.
 */
 
-import java.util.Random;
-
 
 /** A generic random variable */
 public abstract class RandomVariable {
 
-	/** The uniform variable. */
-    protected Random rand = new Random();
+	/** The uniform variable (the sequence of java.util.Random, without its atomic updates). */
+    protected BlockRandom rand = new BlockRandom();
 	
     // the theoretical statistics 
     private double theoMean = 0.0d;
     private double theoVar = 0.0d;
     private double theoSD = 0.0d;
+    private double theoMax = Double.POSITIVE_INFINITY;
 	
 	/** 
 	 * Return the next value for this random variable. 
@@ -44,6 +43,81 @@ public abstract class RandomVariable {
 	 */
 	public abstract double getNext();
 	
+	/** 
+	 * Fill a range of an array with the next values of this random variable, 
+	 * in the same order of successive getNext() calls. Variables with a fast 
+	 * sampler override it to keep the sampling loop free of virtual calls.
+	 * 
+	 * @param values the array
+	 * @param from the first index to fill (inclusive)
+	 * @param to the last index to fill (exclusive)
+	 */
+	public void fill(double[] values, int from, int to) {
+		for(int i = from; i < to; i++) {
+			values[i] = getNext();
+		}
+	}
+	
+	/** 
+	 * Fill an array with the next values of this random variable.
+	 * 
+	 * @param values the array
+	 */
+	public void fill(double[] values) {
+		fill(values, 0, values.length);
+	}
+	
+	/** 
+	 * Return the cumulative distribution function of this random variable. 
+	 * 
+	 * @param x the value
+	 * @return the probability that a sampled value is lower than or equal to x
+	 */
+	public abstract double cdf(double x);
+	
+	/** 
+	 * Return the inverse of the cumulative distribution function, which maps 
+	 * a uniform value on (0,1) to a value of this random variable (inverse 
+	 * transform sampling). This implementation inverts cdf() by bisection: 
+	 * variables with a closed form inverse override it.
+	 * 
+	 * @param u the probability, in (0,1)
+	 * @return the smallest x such that cdf(x) >= u
+	 */
+	public double quantile(double u) {
+		double lo = -1d, hi = 1d;
+		for(int i = 0; i < 2000 && cdf(hi) < u; i++) {
+			lo = hi;
+			hi *= 2;
+		}
+		for(int i = 0; i < 2000 && cdf(lo) >= u; i++) {
+			hi = lo;
+			lo *= 2;
+		}
+		for(int i = 0; i < 200 && lo < hi; i++) {
+			double mid = lo + (hi - lo) / 2;
+			if(mid <= lo || mid >= hi) {
+				break;
+			}
+			if(cdf(mid) < u) {
+				lo = mid;
+			} else {
+				hi = mid;
+			}
+		}
+		return hi;
+	}
+	
+	/**
+	 * Set the seed of the uniform variable. Two variables with the 
+	 * same parameters and seed return the same sequence of values.
+	 * 
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed) {
+		rand.setSeed(seed);
+	}
+	
 	/**
 	 * Get the theoretical mean
 	 * @return the theoMean
@@ -92,5 +166,21 @@ public abstract class RandomVariable {
 		this.theoSD = theoSD;
 	}
 
+	/**
+	 * Get the theoretical maximum
+	 * @return the theoMax, infinite if the variable is not bounded
+	 */
+	public double getTheoreticalMax() {
+		return theoMax;
+	}
+
+	/**
+	 * Set the theoretical maximum
+	 * @param theoMax the theoMax to set
+	 */
+	public void setTheoreticalMax(double theoMax) {
+		this.theoMax = theoMax;
+	}
+
 
 }
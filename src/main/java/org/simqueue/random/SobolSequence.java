@@ -0,0 +1,181 @@
+package org.simqueue.random;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+/**
+ * A scrambled Sobol sequence, the source of low-discrepancy uniform points 
+ * for randomized quasi-Monte Carlo (RQMC). The first 2^k points of the 
+ * sequence stratify the unit cube: e.g. each coordinate of the points takes 
+ * exactly one value in each interval [j/2^k, (j+1)/2^k).
+ * 
+ * The points have 32 bits and are scrambled by a hash-based nested uniform 
+ * (Owen) scrambling (Burley, 2020): under a random seed every point is 
+ * uniform on the unit cube, so the estimators are unbiased, while the 
+ * stratification is preserved. Independent seeds give independent 
+ * randomizations, whose spread estimates the error.
+ * 
+ * Note that consecutive points are strongly dependent (e.g. they lie in 
+ * opposite halves of the first coordinate): the sequence must not replace 
+ * a pseudo-random generator consumed in order by a single simulation.
+ */
+public class SobolSequence {
+
+	/** The number of bits of the points. */
+	private static final int BITS = 32;
+	
+	/** 
+	 * The primitive polynomials (degree s, coefficients a) and the initial 
+	 * direction numbers m of the dimensions after the first (Joe and Kuo, 2008). 
+	 */
+	private static final int[][] DIRECTIONS = {
+		{ 1, 0, 1 },
+		{ 2, 1, 1, 3 },
+		{ 3, 1, 1, 3, 1 },
+		{ 3, 2, 1, 1, 1 },
+		{ 4, 1, 1, 1, 3, 3 },
+		{ 4, 4, 1, 3, 5, 13 },
+		{ 5, 2, 1, 1, 5, 5, 17 },
+		{ 5, 4, 1, 1, 5, 5, 5 },
+		{ 5, 7, 1, 1, 7, 11, 19 }
+	};
+	
+	/** The number of available dimensions. */
+	public static final int MAX_DIMENSION = DIRECTIONS.length + 1;
+	
+	/** The direction numbers of each dimension, as 32-bit fractions. */
+	private final int[][] v;
+	
+	/** The seeds of the scrambling of each dimension. */
+	private final int[] scramble;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param dimensions the number of dimensions, in [1, MAX_DIMENSION]
+	 * @param seed the seed of the scrambling
+	 */
+	public SobolSequence(int dimensions, long seed) {
+		if(dimensions < 1 || dimensions > MAX_DIMENSION) {
+			throw new IllegalArgumentException("The dimensions must be in [1," + MAX_DIMENSION + "].");
+		}
+		v = new int[dimensions][];
+		for(int d = 0; d < dimensions; d++) {
+			v[d] = directions(d);
+		}
+		scramble = new int[dimensions];
+		setSeed(seed);
+	}
+	
+	/** Compute the direction numbers of a dimension. */
+	private static int[] directions(int dimension) {
+		int[] v = new int[BITS];
+		if(dimension == 0) {
+			// the van der Corput sequence
+			for(int k = 0; k < BITS; k++) {
+				v[k] = 1 << (BITS - 1 - k);
+			}
+			return v;
+		}
+		int[] d = DIRECTIONS[dimension - 1];
+		int s = d[0], a = d[1];
+		for(int k = 0; k < s; k++) {
+			v[k] = d[2 + k] << (BITS - 1 - k);
+		}
+		for(int k = s; k < BITS; k++) {
+			v[k] = v[k - s] ^ (v[k - s] >>> s);
+			for(int j = 1; j < s; j++) {
+				if(((a >>> (s - 1 - j)) & 1) != 0) {
+					v[k] ^= v[k - j];
+				}
+			}
+		}
+		return v;
+	}
+	
+	/**
+	 * Set the seed of the scrambling, i.e. draw a new randomization.
+	 * 
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed) {
+		for(int d = 0; d < scramble.length; d++) {
+			// SplitMix64, so that close seeds give unrelated scramblings
+			long z = seed + (d + 1) * 0x9E3779B97F4A7C15L;
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			scramble[d] = (int) (z ^ (z >>> 31));
+		}
+	}
+	
+	/**
+	 * Return the number of dimensions.
+	 * @return the dimensions
+	 */
+	public int getDimensions() {
+		return v.length;
+	}
+	
+	/**
+	 * Return a coordinate of a scrambled point as 32 random bits.
+	 * 
+	 * @param index the index of the point, in [0, 2^32)
+	 * @param dimension the coordinate
+	 * @return the coordinate, as a 32-bit fraction
+	 */
+	public int getBits(long index, int dimension) {
+		int[] w = v[dimension];
+		int x = 0;
+		for(int k = 0; index != 0; k++, index >>>= 1) {
+			if((index & 1) != 0) {
+				x ^= w[k];
+			}
+		}
+		return nestedUniformScramble(x, scramble[dimension]);
+	}
+	
+	/**
+	 * Return a coordinate of a scrambled point as a double in (0,1), 
+	 * the centre of its 2^-32 cell.
+	 * 
+	 * @param index the index of the point, in [0, 2^32)
+	 * @param dimension the coordinate
+	 * @return the coordinate
+	 */
+	public double get(long index, int dimension) {
+		return ((getBits(index, dimension) & 0xFFFFFFFFL) + 0.5d) * 0x1p-32;
+	}
+	
+	/** Owen scrambling of the bits of x, from the most significant one. */
+	private static int nestedUniformScramble(int x, int seed) {
+		x = Integer.reverse(x);
+		x += seed;
+		x ^= x * 0x6c50b47c;
+		x ^= x * 0xb82f1e52;
+		x ^= x * 0xc7afe638;
+		x ^= x * 0x8d22f6e6;
+		return Integer.reverse(x);
+	}
+
+}
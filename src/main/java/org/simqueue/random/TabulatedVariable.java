@@ -0,0 +1,325 @@
+package org.simqueue.random;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.function.DoubleUnaryOperator;
+
+
+/** 
+ * A random variable sampled by a table of its inverse CDF. The table is built 
+ * once from the quantiles of any distribution and interpolates them with a monotone 
+ * cubic spline (Fritsch-Carlson), adding knots until the interpolation error is 
+ * below the requested bound. A guide table indexed by the uniform value finds the 
+ * spline segment, so each draw costs a table lookup and a cubic polynomial, with 
+ * no branch depending on the distribution and no root finding.
+ * The error bound is on the probability scale (u-resolution): every sampled value x 
+ * is an exact quantile of a probability within maxError of the uniform value drawn, 
+ * i.e. |F(x) - u| <= maxError.
+ */
+public class TabulatedVariable extends RandomVariable {
+
+	/** The default bound of the interpolation error. */
+	public static final double DEFAULT_MAX_ERROR = 1e-10;
+	
+	/** The maximum number of knots of the table. */
+	public static final int MAX_KNOTS = 1 << 22;
+	
+	/** The number of knots of the initial table. */
+	private static final int INITIAL_KNOTS = 33;
+	
+	/** The tabulated distribution. */
+	private final RandomVariable distribution;
+	
+	/** The bound of the interpolation error. */
+	private final double maxError;
+	
+	/** The number of values stored for each segment. */
+	private static final int STRIDE = 6;
+	
+	/** 
+	 * The segments of the spline, STRIDE values each, stored together so that a draw 
+	 * reads a single cache line: the probability of the first knot, the inverse of the 
+	 * width, and the 4 coefficients of the cubic polynomial in t in [0,1]. 
+	 */
+	private final double[] table;
+	
+	/** The number of segments of the spline. */
+	private final int segments;
+	
+	/** The first segment containing the probabilities of each guide cell. */
+	private final int[] guide;
+	
+	/** The probabilities below which (or above 1 minus which) the exact quantiles are used. */
+	private final double tail;
+	
+	/** 
+	 * Construct a tabulated variable with the default error bound.
+	 * 
+	 * @param distribution the distribution to tabulate
+	 * @throws IllegalArgumentException if the error bound cannot be reached within MAX_KNOTS knots
+	 */
+	public TabulatedVariable(RandomVariable distribution) {
+		this(distribution, DEFAULT_MAX_ERROR);
+	}
+	
+	/** 
+	 * Construct a tabulated variable. The quantiles of the distribution are 
+	 * only computed while building the table, so a slow quantile() (e.g. the 
+	 * default inversion of the CDF by bisection) does not slow down the sampling.
+	 * 
+	 * @param distribution the distribution to tabulate
+	 * @param maxError the bound of the error on the probability scale, in (0,0.01]
+	 * @throws IllegalArgumentException if maxError is out of range or cannot be reached within MAX_KNOTS knots
+	 */
+	public TabulatedVariable(RandomVariable distribution, double maxError) {
+		if( !(maxError > 0 && maxError <= 0.01) ) {
+			throw new IllegalArgumentException("The error bound must be in (0,0.01].");
+		}
+		this.distribution = distribution;
+		this.maxError = maxError;
+		this.tail = maxError;
+		
+		// start from evenly spaced knots, then split the segments whose midpoint is not accurate
+		double[] u = new double[INITIAL_KNOTS];
+		double[] x = new double[INITIAL_KNOTS];
+		for(int i = 0; i < INITIAL_KNOTS; i++) {
+			u[i] = tail + (1 - 2 * tail) * i / (INITIAL_KNOTS - 1);
+			x[i] = distribution.quantile(u[i]);
+		}
+		int size = INITIAL_KNOTS;
+		double[] c = spline(u, x, size);
+		for(boolean refined = true; refined; ) {
+			refined = false;
+			double[] nu = new double[2 * size - 1];
+			double[] nx = new double[2 * size - 1];
+			int k = 0;
+			for(int i = 0; i < size - 1; i++) {
+				nu[k] = u[i];
+				nx[k++] = x[i];
+				double mid = u[i] + (u[i + 1] - u[i]) / 2;
+				// the error is checked at the quarters of the segment, with a margin for the points in between
+				double h = u[i + 1] - u[i];
+				if( mid > u[i] && mid < u[i + 1] && h > maxError 
+						&& (Math.abs(distribution.cdf(evaluate(c, i, 0.25)) - (u[i] + h / 4)) > maxError / 2 
+						|| Math.abs(distribution.cdf(evaluate(c, i, 0.75)) - (u[i] + 3 * h / 4)) > maxError / 2) ) {
+					nu[k] = mid;
+					nx[k++] = distribution.quantile(mid);
+					refined = true;
+				}
+			}
+			nu[k] = u[size - 1];
+			nx[k++] = x[size - 1];
+			if( k > MAX_KNOTS ) {
+				throw new IllegalArgumentException("The error bound " + maxError + " needs more than " + MAX_KNOTS + " knots.");
+			}
+			if( refined ) {
+				u = nu;
+				x = nx;
+				size = k;
+				c = spline(u, x, size);
+			}
+		}
+		segments = size - 1;
+		// the probability of the last knot closes the table
+		table = new double[STRIDE * segments + 1];
+		for(int i = 0; i < segments; i++) {
+			table[STRIDE * i] = u[i];
+			table[STRIDE * i + 1] = 1 / (u[i + 1] - u[i]);
+			System.arraycopy(c, 4 * i, table, STRIDE * i + 2, 4);
+		}
+		table[STRIDE * segments] = u[segments];
+		// guide[g] is the segment of the probability g/segments
+		guide = new int[segments + 1];
+		for(int g = 0, i = 0; g <= segments; g++) {
+			double p = (double) g / segments;
+			while( i < segments - 1 && u[i + 1] <= p ) {
+				i++;
+			}
+			guide[g] = i;
+		}
+		setTheoreticalMean(distribution.getTheoreticalMean());
+		setTheoreticalVar(distribution.getTheoreticalVar());
+		setTheoreticalSD(distribution.getTheoreticalSD());
+		setTheoreticalMax(distribution.getTheoreticalMax());
+	}
+	
+	/** 
+	 * Construct a tabulated variable from a cumulative distribution function.
+	 * 
+	 * @param cdf the cumulative distribution function, continuous and non decreasing
+	 * @param maxError the bound of the error on the probability scale, in (0,0.01]
+	 * @return the variable
+	 * @throws IllegalArgumentException if maxError is out of range or cannot be reached within MAX_KNOTS knots
+	 */
+	public static TabulatedVariable fromCdf(final DoubleUnaryOperator cdf, double maxError) {
+		return new TabulatedVariable(new RandomVariable() {
+			public double getNext() {
+				return quantile(rand.nextDouble());
+			}
+			
+			public double cdf(double x) {
+				return cdf.applyAsDouble(x);
+			}
+		}, maxError);
+	}
+	
+	/** 
+	 * Return the coefficients of the monotone cubic spline interpolating the knots (u[i], x[i]).
+	 * The tangents are the Fritsch-Carlson ones, so the spline is non decreasing.
+	 */
+	private static double[] spline(double[] u, double[] x, int size) {
+		int segments = size - 1;
+		double[] secants = new double[segments];
+		for(int i = 0; i < segments; i++) {
+			secants[i] = (x[i + 1] - x[i]) / (u[i + 1] - u[i]);
+		}
+		// three point (parabolic) estimates of the tangents
+		double[] tangents = new double[size];
+		if( segments == 1 ) {
+			tangents[0] = secants[0];
+			tangents[1] = secants[0];
+		} else {
+			double h0 = u[1] - u[0], h1 = u[2] - u[1];
+			tangents[0] = endTangent(h0, h1, secants[0], secants[1]);
+			h0 = u[segments] - u[segments - 1];
+			h1 = u[segments - 1] - u[segments - 2];
+			tangents[segments] = endTangent(h0, h1, secants[segments - 1], secants[segments - 2]);
+		}
+		for(int i = 1; i < segments; i++) {
+			double h0 = u[i] - u[i - 1], h1 = u[i + 1] - u[i];
+			tangents[i] = secants[i - 1] * secants[i] <= 0 ? 0d 
+					: (h1 * secants[i - 1] + h0 * secants[i]) / (h0 + h1);
+		}
+		// limit the tangents so that each segment is monotone (Fritsch-Carlson)
+		for(int i = 0; i < segments; i++) {
+			if( secants[i] == 0 ) {
+				tangents[i] = 0d;
+				tangents[i + 1] = 0d;
+				continue;
+			}
+			double alpha = tangents[i] / secants[i], beta = tangents[i + 1] / secants[i];
+			double norm = alpha * alpha + beta * beta;
+			if( norm > 9 ) {
+				double tau = 3 / Math.sqrt(norm);
+				tangents[i] = tau * alpha * secants[i];
+				tangents[i + 1] = tau * beta * secants[i];
+			}
+		}
+		// Hermite form, in the variable t = (u - u[i]) / (u[i+1] - u[i])
+		double[] c = new double[4 * segments];
+		for(int i = 0; i < segments; i++) {
+			double h = u[i + 1] - u[i];
+			double dx = x[i + 1] - x[i];
+			double m0 = tangents[i] * h, m1 = tangents[i + 1] * h;
+			c[4 * i] = x[i];
+			c[4 * i + 1] = m0;
+			c[4 * i + 2] = 3 * dx - 2 * m0 - m1;
+			c[4 * i + 3] = m0 + m1 - 2 * dx;
+		}
+		return c;
+	}
+	
+	/** 
+	 * Return the three point estimate of the tangent at the first knot of a segment of width h0 and 
+	 * secant s0, followed by a segment of width h1 and secant s1, with the same sign of s0.
+	 */
+	private static double endTangent(double h0, double h1, double s0, double s1) {
+		double t = ((2 * h0 + h1) * s0 - h0 * s1) / (h0 + h1);
+		if( t * s0 <= 0 ) {
+			return 0d;
+		}
+		if( s0 * s1 <= 0 && Math.abs(t) > 3 * Math.abs(s0) ) {
+			return 3 * s0;
+		}
+		return t;
+	}
+	
+	/** Evaluate the spline segment i at t in [0,1]. */
+	private static double evaluate(double[] c, int i, double t) {
+		int j = 4 * i;
+		return c[j] + t * (c[j + 1] + t * (c[j + 2] + t * c[j + 3]));
+	}
+	
+	/** {@inheritDoc} */
+	public double getNext() {
+		return quantile(rand.nextDouble());
+	}
+	
+	/** {@inheritDoc} */
+	public void fill(double[] values, int from, int to) {
+		rand.nextDoubles(values, from, to);
+		for(int i = from; i < to; i++) {
+			values[i] = quantile(values[i]);
+		}
+	}
+	
+	/** 
+	 * Return the interpolated quantile: the tails below and above the table 
+	 * (of probability maxError each) use the exact quantile of the distribution.
+	 * 
+	 * @param u the probability, in (0,1)
+	 * @return the quantile
+	 */
+	public double quantile(double u) {
+		if( u < tail || u > 1 - tail ) {
+			return distribution.quantile(u);
+		}
+		int j = STRIDE * guide[(int) (u * segments)];
+		while( u >= table[j + STRIDE] && j < STRIDE * (segments - 1) ) {
+			j += STRIDE;
+		}
+		double t = (u - table[j]) * table[j + 1];
+		return table[j + 2] + t * (table[j + 3] + t * (table[j + 4] + t * table[j + 5]));
+	}
+	
+	/** {@inheritDoc} */
+	public double cdf(double x) {
+		return distribution.cdf(x);
+	}
+	
+	/**
+	 * Return the tabulated distribution.
+	 * @return the distribution
+	 */
+	public RandomVariable getDistribution() {
+		return distribution;
+	}
+	
+	/**
+	 * Return the bound of the interpolation error.
+	 * @return maxError
+	 */
+	public double getMaxError() {
+		return maxError;
+	}
+	
+	/**
+	 * Return the number of knots of the table.
+	 * @return the number of knots
+	 */
+	public int getKnots() {
+		return segments + 1;
+	}
+
+}
@@ -47,6 +47,19 @@ public class TriangularVariable extends RandomVariable {
      * @throws TriangularException if not a <= m <= b or not a < b. 
      */
 	public TriangularVariable( double triA, double triM, double triB ) throws TriangularException {
+        setParameters(triA, triM, triB);
+	}
+	
+    /** 
+     * Set the parameters of this variable, keeping its uniform generator, 
+     * so that a variable can be reused for another scenario.
+     * 
+     * @param triA the a parameter (min)
+     * @param triM the m parameter (mode)
+     * @param triB the b parameter (max)
+     * @throws TriangularException if not a <= m <= b or not a < b. 
+     */
+	public void setParameters( double triA, double triM, double triB ) throws TriangularException {
         if( triA <= triM && triM <= triB && triA < triB ) {
             a = triA;
             m = triM;
@@ -54,6 +67,7 @@ public class TriangularVariable extends RandomVariable {
             setTheoreticalMean( (0 + m + b) / 3 );
             setTheoreticalVar( ((b-a)*(b-a) - (m-a)*(b-m)) / 18 );
             setTheoreticalSD(Math.sqrt( ((b-a)*(b-a) - (m-a)*(b-m)) / 18 ));            
+            setTheoreticalMax(b);
         } else {
             throw new TriangularException();
         }
@@ -68,6 +82,38 @@ public class TriangularVariable extends RandomVariable {
         return b - Math.sqrt( (b-a)*(b-m)*(1-u) );      
 	}
 
+	/** {@inheritDoc} */
+	public void fill(double[] values, int from, int to) {
+		// sample the uniforms in bulk, then transform them without branches:
+		// the same operations of getNext(), so the values are the same
+		rand.nextDoubles(values, from, to);
+		double p = (m - a) / (b - a), left = (b - a) * (m - a), right = (b - a) * (b - m);
+		for(int i = from; i < to; i++) {
+			double u = values[i];
+			boolean below = u <= p;
+			double root = Math.sqrt( below ? left * u : right * (1 - u) );
+			values[i] = below ? a + root : b - root;
+		}
+	}
+
+	/** {@inheritDoc} */
+	public double cdf(double x) {
+		if( x <= a )
+			return 0d;
+		if( x >= b )
+			return 1d;
+		if( x <= m )
+			return (x-a)*(x-a) / ((b-a)*(m-a));
+		return 1 - (b-x)*(b-x) / ((b-a)*(b-m));
+	}
+
+	/** {@inheritDoc} */
+	public double quantile(double u) {
+        if( u <= ((m - a) / (b - a)) )
+            return a + Math.sqrt( (b-a)*(m-a)*u );
+        return b - Math.sqrt( (b-a)*(b-m)*(1-u) );      
+	}
+
 	/**
 	 * Return the parameter a for the triangular variable.
 	 * @return a
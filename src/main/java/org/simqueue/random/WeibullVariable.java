@@ -0,0 +1,103 @@
+package org.simqueue.random;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.simqueue.exception.DistributionException;
+import org.simqueue.utils.SpecialFunctions;
+
+
+/** A Weibull random variable, sampled by inversion of the cumulative distribution function */
+public class WeibullVariable extends RandomVariable {
+
+	/** parameter k (shape) */
+	private double shape = 0.0d;
+	/** parameter lambda (scale) */
+	private double scale = 0.0d;
+	
+	/** 
+	 * Construct a Weibull stochastic variable with parameters shape and scale, 
+	 * both > 0. A shape lower than 1 gives a heavy tail, a shape of 1 an 
+	 * exponential variable.
+	 * 
+	 * @param shape the k parameter (shape)
+	 * @param scale the lambda parameter (scale)
+	 * @throws DistributionException if shape <= 0 or scale <= 0. 
+	 */
+	public WeibullVariable(double shape, double scale) throws DistributionException {
+		if( shape > 0 && scale > 0 && !Double.isInfinite(shape) && !Double.isInfinite(scale) ) {
+			this.shape = shape;
+			this.scale = scale;
+			double g1 = Math.exp( SpecialFunctions.lnGamma(1 + 1 / shape) );
+			double g2 = Math.exp( SpecialFunctions.lnGamma(1 + 2 / shape) );
+			setTheoreticalMean( scale * g1 );
+			setTheoreticalVar( scale * scale * (g2 - g1 * g1) );
+			setTheoreticalSD( Math.sqrt( scale * scale * (g2 - g1 * g1) ) );
+		} else {
+			throw new DistributionException("Weibull parameters must be shape > 0 and scale > 0 .");
+		}
+	}
+	
+	/** {@inheritDoc} */
+	public double getNext() {
+		return scale * Math.pow( -Math.log(1d - rand.nextDouble()), 1 / shape );
+	}
+	
+	/** {@inheritDoc} */
+	public void fill(double[] values, int from, int to) {
+		double inverseShape = 1 / shape;
+		rand.nextDoubles(values, from, to);
+		for(int i = from; i < to; i++) {
+			values[i] = scale * Math.pow( -Math.log(1d - values[i]), inverseShape );
+		}
+	}
+
+	/** {@inheritDoc} */
+	public double cdf(double x) {
+		if( x <= 0 )
+			return 0d;
+		return - Math.expm1( - Math.pow(x / scale, shape) );
+	}
+
+	/** {@inheritDoc} */
+	public double quantile(double u) {
+		return scale * Math.pow( - Math.log1p(-u), 1 / shape );
+	}
+
+	/**
+	 * Return the shape parameter for the Weibull variable.
+	 * @return shape
+	 */
+	public double getShape() {
+		return shape;
+	}
+
+	/**
+	 * Return the scale parameter for the Weibull variable.
+	 * @return scale
+	 */
+	public double getScale() {
+		return scale;
+	}
+
+}
@@ -0,0 +1,202 @@
+package org.simqueue.service;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.util.Properties;
+
+import org.simqueue.exception.ExponentialException;
+import org.simqueue.exception.ParameterException;
+import org.simqueue.exception.SimQueueException;
+import org.simqueue.exception.TriangularException;
+import org.simqueue.sim.Scenario;
+import org.simqueue.sim.SimQueue;
+import org.simqueue.utils.Json;
+
+
+/**
+ * A long-lived batch process. Scenarios are read one per line, either as 
+ * flat JSON objects or as key=value pairs separated by spaces or semicolons 
+ * (the keys of parameters.txt), and each of them is answered by one JSON line 
+ * with the simulated statistics, in the order of the input. Empty lines and 
+ * lines starting with # are skipped. The optional key id is copied to the 
+ * result, so that the jobs can be matched by the caller.
+ * 
+ * The simulations run one after the other in a single JVM, warmed up before 
+ * the first job, and reuse the history buffers of the previous job when the 
+ * size allows it: the startup, class loading, and JIT compilation are paid once 
+ * for the whole batch instead of once per scenario.
+ */
+public class BatchDaemon {
+
+	/** The number of clients of each warm-up run. */
+	public static final int WARMUP_CLIENTS = 1 << 16;
+	
+	private final BufferedReader in;
+	private final PrintWriter out;
+	
+	/** The queue of the previous job, whose buffers are reused. */
+	private SimQueue queue = null;
+	
+	/** The number of jobs read so far. */
+	private long jobs = 0;
+	
+	/** 
+	 * Constructor.
+	 * 
+	 * @param in the source of the jobs, e.g. the standard input or a named pipe
+	 * @param out the destination of the results, flushed after each job
+	 */
+	public BatchDaemon(BufferedReader in, PrintWriter out) {
+		this.in = in;
+		this.out = out;
+	}
+	
+	/**
+	 * Compile the simulation loops before the first job, by running a few 
+	 * small scenarios whose results are discarded.
+	 * 
+	 * @param runs the number of warm-up runs
+	 */
+	public void warmUp(int runs) {
+		Scenario scenario = new Scenario(WARMUP_CLIENTS, 25, 1.0, 2.0, 0L);
+		try {
+			for(int i = 0; i < runs; i++) {
+				scenario.createSimQueue().run();
+			}
+		} catch(SimQueueException e) {
+			// we won't ever reach this
+		} catch(ExponentialException e) {
+			// we won't ever reach this
+		} catch(TriangularException e) {
+			// we won't ever reach this
+		}
+	}
+	
+	/**
+	 * Run the jobs until the end of the input.
+	 * 
+	 * @return the number of jobs run
+	 * @throws IOException if the input cannot be read
+	 */
+	public long run() throws IOException {
+		String line;
+		while((line = in.readLine()) != null) {
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			out.println(runJob(line));
+			out.flush();
+		}
+		return jobs;
+	}
+	
+	/**
+	 * Run one job.
+	 * 
+	 * @param line the scenario
+	 * @return the result line
+	 */
+	String runJob(String line) {
+		long job = ++jobs;
+		String id = null;
+		StringBuilder result = new StringBuilder("{\"job\":").append(job);
+		try {
+			Properties prop = parse(line);
+			id = prop.getProperty("id");
+			if(id != null) {
+				result.append(",\"id\":").append(Json.quote(id));
+			}
+			Scenario scenario = Scenario.fromProperties(prop);
+			long start = System.nanoTime();
+			queue = scenario.createSimQueue(queue);
+			queue.run();
+			long elapsed = System.nanoTime() - start;
+			result.append(",\"clients_num\":").append(scenario.getClientsNum())
+				.append(",\"running_time_ms\":").append(Json.number(elapsed / 1e6))
+				.append(",\"statistics\":").append(queue.getStatistics().toJson())
+				.append(",\"occupancy\":").append(queue.getOccupancyStatistics().toJson())
+				.append(",\"sensitivity\":{\"mean_waiting_time\":").append(Json.number(queue.getMeanWaitingTime()))
+				.append(",\"service_rate_derivative\":").append(Json.number(queue.getServiceRateDerivative()))
+				.append(",\"arrival_rate_derivative\":").append(Json.number(queue.getArrivalRateDerivative())).append('}');
+		} catch(ParameterException e) {
+			return error(result, e.getMessage());
+		} catch(SimQueueException e) {
+			return error(result, e.getMessage());
+		} catch(ExponentialException e) {
+			return error(result, e.getMessage());
+		} catch(TriangularException e) {
+			return error(result, e.getMessage());
+		} catch(IllegalArgumentException e) {
+			return error(result, e.getMessage());
+		} catch(OutOfMemoryError e) {
+			// the next job starts from a new queue
+			queue = null;
+			return error(result, "Not enough memory for " + line);
+		}
+		return result.append('}').toString();
+	}
+	
+	/** Append an error to a result line. */
+	private static String error(StringBuilder result, String message) {
+		return result.append(",\"error\":").append(Json.quote(String.valueOf(message))).append('}').toString();
+	}
+	
+	/**
+	 * Parse a job line.
+	 * 
+	 * @param line a JSON object or key=value pairs separated by spaces or semicolons
+	 * @return the properties of the job
+	 * @throws ParameterException if the line is malformed
+	 */
+	static Properties parse(String line) throws ParameterException {
+		if(line.startsWith("{")) {
+			try {
+				return Json.parse(line);
+			} catch(IllegalArgumentException e) {
+				throw new ParameterException("Malformed JSON: " + e.getMessage());
+			}
+		}
+		Properties prop = new Properties();
+		try {
+			prop.load(new StringReader(line.replaceAll("[;\\s]+", "\n")));
+		} catch(IOException e) {
+			throw new ParameterException("Malformed job: " + e.getMessage());
+		}
+		return prop;
+	}
+	
+	/**
+	 * Return the number of jobs read so far.
+	 * @return the number of jobs
+	 */
+	public long getJobs() {
+		return jobs;
+	}
+
+}
@@ -0,0 +1,312 @@
+package org.simqueue.service;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.simqueue.exception.ParameterException;
+import org.simqueue.sim.Scenario;
+import org.simqueue.statistics.ReplicationSummary;
+import org.simqueue.utils.FlightRecorderEvents;
+import org.simqueue.utils.NamedThreadFactory;
+
+
+/**
+ * The coordinator of independent replications of a scenario simulated by 
+ * several worker processes, e.g. JVMs with separate heaps on the same host. 
+ * The replications are split in chunks, handed out to the ReplicationWorkers 
+ * connected to a local socket, one chunk at a time per worker, and the 
+ * summaries returned by the workers are merged in the order of the chunks.
+ * 
+ * A chunk whose worker fails (closed connection or no answer within the 
+ * timeout) is handed out again to another worker. The seed of each 
+ * replication derives from the seed of the scenario and from its index, 
+ * so the merged summary does not depend on the number of workers nor on 
+ * which worker simulated a chunk.
+ */
+public class ReplicationCoordinator {
+
+	/** The default port. */
+	public static final int DEFAULT_PORT = 8090;
+	
+	/** The default time a worker is given to simulate a chunk, in milliseconds. */
+	public static final int DEFAULT_TIMEOUT = 10 * 60 * 1000;
+	
+	private final ServerSocket server;
+	private final String scenarioLine;
+	private final long replications;
+	private final int chunkSize;
+	private final int chunks;
+	private int timeout = DEFAULT_TIMEOUT;
+	
+	// the state of a run
+	private final BlockingDeque<Integer> pending = new LinkedBlockingDeque<Integer>();
+	private ReplicationSummary[] results;
+	private CountDownLatch remaining;
+	private volatile String failure = null;
+	private final AtomicInteger redispatched = new AtomicInteger();
+	
+	/**
+	 * Constructor. The coordinator listens on the loopback address.
+	 * 
+	 * @param port the port, or 0 for any free port
+	 * @param prop the scenario, with the keys of parameters.txt
+	 * @param replications the number of replications
+	 * @param chunkSize the number of replications per chunk
+	 * @throws ParameterException if the scenario is not valid
+	 * @throws IOException if the port cannot be bound
+	 */
+	public ReplicationCoordinator(int port, Properties prop, long replications, int chunkSize) 
+			throws ParameterException, IOException {
+		if(replications < 1 || chunkSize < 1 || (replications + chunkSize - 1) / chunkSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The replications and the chunk size must be at least 1.");
+		}
+		Scenario.fromProperties(prop);
+		// every worker uses the same base seed: a random one if the scenario is not seeded
+		Properties p = new Properties();
+		for(String key : prop.stringPropertyNames()) {
+			p.setProperty(key, prop.getProperty(key));
+		}
+		if(p.getProperty("seed") == null) {
+			p.setProperty("seed", String.valueOf(new Random().nextLong()));
+		}
+		StringBuilder line = new StringBuilder();
+		for(String key : p.stringPropertyNames()) {
+			String value = p.getProperty(key).trim();
+			if(value.isEmpty() || value.matches(".*[;\\s].*")) {
+				throw new ParameterException("The value of " + key + " must not be empty or contain spaces.");
+			}
+			line.append(' ').append(key).append('=').append(value);
+		}
+		this.scenarioLine = line.toString();
+		this.replications = replications;
+		this.chunkSize = chunkSize;
+		this.chunks = (int) ((replications + chunkSize - 1) / chunkSize);
+		this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+	}
+	
+	/**
+	 * Return the seed of a replication, mixing the base seed and the replication index 
+	 * (the SplitMix64 finalizer), so that nearby indices give unrelated streams.
+	 * 
+	 * @param seed the base seed
+	 * @param replication the index of the replication
+	 * @return the seed of the replication
+	 */
+	public static long replicationSeed(long seed, long replication) {
+		long z = seed + (replication + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * Set the time a worker is given to simulate a chunk before it is considered failed.
+	 * 
+	 * @param millis the timeout in milliseconds
+	 */
+	public void setTimeout(int millis) {
+		if(millis < 1) {
+			throw new IllegalArgumentException("The timeout must be positive.");
+		}
+		this.timeout = millis;
+	}
+	
+	/**
+	 * Return the port the coordinator listens on.
+	 * @return the port
+	 */
+	public int getPort() {
+		return server.getLocalPort();
+	}
+	
+	/**
+	 * Return the number of chunks handed out again after a worker failure, during the last run.
+	 * @return the number of re-dispatched chunks
+	 */
+	public int getRedispatched() {
+		return redispatched.get();
+	}
+	
+	/**
+	 * Hand out all the chunks to the workers connecting to the port, and wait 
+	 * for their summaries. The server socket is closed at the end.
+	 * 
+	 * @return the merged summary of all the replications
+	 * @throws InterruptedException if the wait is interrupted
+	 * @throws IllegalStateException if a worker cannot simulate the scenario
+	 */
+	public ReplicationSummary run() throws InterruptedException {
+		results = new ReplicationSummary[chunks];
+		remaining = new CountDownLatch(chunks);
+		failure = null;
+		redispatched.set(0);
+		pending.clear();
+		for(int c = 0; c < chunks; c++) {
+			pending.add(c);
+		}
+		ExecutorService pool = Executors.newCachedThreadPool(new NamedThreadFactory("simqueue-coordinator"));
+		pool.execute(() -> accept(pool));
+		try {
+			remaining.await();
+		} finally {
+			try {
+				server.close();
+			} catch(IOException e) {
+				// the workers are stopped anyway
+			}
+			pool.shutdown();
+		}
+		if(failure != null) {
+			throw new IllegalStateException(failure);
+		}
+		ReplicationSummary merged = new ReplicationSummary();
+		for(ReplicationSummary summary : results) {
+			merged.merge(summary);
+		}
+		return merged;
+	}
+	
+	/** Accept the workers until the server socket is closed. */
+	private void accept(ExecutorService pool) {
+		try {
+			while(true) {
+				Socket socket = server.accept();
+				pool.execute(() -> serve(socket));
+			}
+		} catch(SocketException e) {
+			// closed by run()
+		} catch(IOException e) {
+			System.err.println("Warning: coordinator stopped accepting workers: " + e.getMessage());
+		}
+	}
+	
+	/** Hand out chunks to a worker until all of them are done or the worker fails. */
+	private void serve(Socket socket) {
+		Integer chunk = null;
+		try (Socket s = socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+				PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)))) {
+			s.setSoTimeout(timeout);
+			s.setTcpNoDelay(true);
+			while(remaining.getCount() > 0) {
+				chunk = pending.poll(100, TimeUnit.MILLISECONDS);
+				if(chunk == null) {
+					continue;
+				}
+				if(isDone(chunk)) {
+					// a late answer of a failed worker arrived first
+					chunk = null;
+					continue;
+				}
+				long first = (long) chunk * chunkSize;
+				long count = Math.min(chunkSize, replications - first);
+				Object event = FlightRecorderEvents.beginChunk();
+				out.println("chunk=" + chunk + " first=" + first + " count=" + count + scenarioLine);
+				out.flush();
+				String reply = in.readLine();
+				if(reply == null) {
+					throw new IOException("connection closed by the worker");
+				}
+				complete(chunk, reply);
+				FlightRecorderEvents.endChunk(event, "coordinator", chunk, count, String.valueOf(s.getRemoteSocketAddress()));
+				chunk = null;
+			}
+			out.println("quit");
+			out.flush();
+		} catch(IOException e) {
+			if(chunk != null && !isDone(chunk)) {
+				redispatched.incrementAndGet();
+				pending.addFirst(chunk);
+			}
+			System.err.println("Warning: worker " + socket.getRemoteSocketAddress() + " failed (" + e.getMessage() 
+					+ "), chunk " + chunk + " handed out again.");
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/** Return whether a chunk has its summary. */
+	private synchronized boolean isDone(int chunk) {
+		return results[chunk] != null;
+	}
+	
+	/** Record the answer of a worker for a chunk. */
+	private synchronized void complete(int chunk, String reply) throws IOException {
+		int error = reply.indexOf(" error=");
+		if(error >= 0) {
+			// the scenario cannot be simulated by any worker: stop the run
+			failure = "Worker error: " + reply.substring(error + 7);
+			while(remaining.getCount() > 0) {
+				remaining.countDown();
+			}
+			return;
+		}
+		Properties prop;
+		try {
+			prop = BatchDaemon.parse(reply);
+		} catch(ParameterException e) {
+			throw new IOException("malformed answer: " + reply);
+		}
+		if(!String.valueOf(chunk).equals(prop.getProperty("chunk")) || prop.getProperty("summary") == null) {
+			throw new IOException("unexpected answer: " + reply);
+		}
+		if(results[chunk] == null) {
+			try {
+				results[chunk] = ReplicationSummary.decode(prop.getProperty("summary"));
+			} catch(IllegalArgumentException e) {
+				throw new IOException(e.getMessage());
+			}
+			remaining.countDown();
+		}
+	}
+	
+	/**
+	 * Return the number of chunks.
+	 * @return the chunks
+	 */
+	public int getChunks() {
+		return chunks;
+	}
+
+}
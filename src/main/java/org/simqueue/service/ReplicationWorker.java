@@ -0,0 +1,148 @@
+package org.simqueue.service;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+import org.simqueue.exception.ExponentialException;
+import org.simqueue.exception.ParameterException;
+import org.simqueue.exception.SimQueueException;
+import org.simqueue.exception.TriangularException;
+import org.simqueue.sim.Scenario;
+import org.simqueue.sim.SimQueue;
+import org.simqueue.statistics.ReplicationSummary;
+
+
+/**
+ * A worker of a ReplicationCoordinator. The worker connects to the coordinator 
+ * and simulates the chunks of replications it receives, one line per chunk: 
+ * the keys chunk, first, and count, followed by the scenario as key=value pairs. 
+ * Each chunk is answered by one line with its ReplicationSummary, so only a few 
+ * numbers per chunk cross the socket. The queue of the previous replication is 
+ * reused, so a worker allocates its history once.
+ */
+public class ReplicationWorker {
+
+	private final String host;
+	private final int port;
+	
+	/** The queue of the previous replication, whose buffers are reused. */
+	private SimQueue queue = null;
+	
+	/** The number of chunks simulated so far. */
+	private long chunks = 0;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param host the host of the coordinator
+	 * @param port the port of the coordinator
+	 */
+	public ReplicationWorker(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+	
+	/**
+	 * Connect to the coordinator and simulate its chunks until it closes the 
+	 * connection or sends quit.
+	 * 
+	 * @return the number of chunks simulated
+	 * @throws IOException if the coordinator cannot be reached
+	 */
+	public long run() throws IOException {
+		try (Socket socket = new Socket(host, port);
+				BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+				PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)))) {
+			socket.setTcpNoDelay(true);
+			String line;
+			while((line = in.readLine()) != null) {
+				line = line.trim();
+				if(line.equals("quit")) {
+					break;
+				}
+				out.println(runChunk(line));
+				out.flush();
+			}
+		}
+		return chunks;
+	}
+	
+	/**
+	 * Simulate a chunk of replications.
+	 * 
+	 * @param line the chunk
+	 * @return the result line: chunk=k summary=..., or chunk=k error=message
+	 */
+	String runChunk(String line) {
+		chunks++;
+		String chunk = "?";
+		try {
+			Properties prop = BatchDaemon.parse(line);
+			chunk = prop.getProperty("chunk", "?");
+			long first = Long.parseLong(prop.getProperty("first"));
+			long count = Long.parseLong(prop.getProperty("count"));
+			long seed = Long.parseLong(prop.getProperty("seed"));
+			ReplicationSummary summary = new ReplicationSummary();
+			for(long r = first; r < first + count; r++) {
+				prop.setProperty("seed", String.valueOf(ReplicationCoordinator.replicationSeed(seed, r)));
+				queue = Scenario.fromProperties(prop).createSimQueue(queue);
+				queue.run();
+				summary.add(new double[] { queue.getMeanWaitingTime(), 
+						queue.getStatistics().getMeanServiceTime(), queue.getStatistics().getMeanArrivalTime(), 
+						queue.getOccupancyStatistics().getMeanInSystem(), queue.getOccupancyStatistics().getUtilization(), 
+						queue.getServiceRateDerivative(), queue.getArrivalRateDerivative() });
+			}
+			return "chunk=" + chunk + " summary=" + summary.encode();
+		} catch(ParameterException e) {
+			return error(chunk, e.getMessage());
+		} catch(SimQueueException e) {
+			return error(chunk, e.getMessage());
+		} catch(ExponentialException e) {
+			return error(chunk, e.getMessage());
+		} catch(TriangularException e) {
+			return error(chunk, e.getMessage());
+		} catch(IllegalArgumentException e) {
+			// also a missing or malformed number
+			return error(chunk, e.getMessage());
+		} catch(OutOfMemoryError e) {
+			queue = null;
+			return error(chunk, "Not enough memory for the scenario.");
+		}
+	}
+	
+	/** Return an error line; the message is the last key, so it can contain spaces. */
+	private static String error(String chunk, String message) {
+		return "chunk=" + chunk + " error=" + String.valueOf(message).replace('\n', ' ');
+	}
+
+}
@@ -0,0 +1,375 @@
+package org.simqueue.service;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.simqueue.exception.DistributionException;
+import org.simqueue.exception.ExponentialException;
+import org.simqueue.exception.ParameterException;
+import org.simqueue.exception.SimQueueException;
+import org.simqueue.exception.TriangularException;
+import org.simqueue.sim.ClientCursor;
+import org.simqueue.sim.Scenario;
+import org.simqueue.sim.ResultCache;
+import org.simqueue.sim.SimulationResult;
+import org.simqueue.utils.Json;
+import org.simqueue.utils.NamedThreadFactory;
+
+
+/**
+ * A local simulation service. Scenarios are posted as JSON objects or as 
+ * properties (the same format as parameters.txt) to /simulate, and the 
+ * simulated statistics are returned as JSON. With /simulate?history=true 
+ * the history of the queue is streamed after the statistics: it is simulated 
+ * again by a ClientCursor with the seed of the statistics while it is 
+ * written, so it is never stored.
+ * 
+ * The service only listens on the loopback interface, and rejects 
+ * scenarios with more clients than a configurable limit, lower for 
+ * the requests streaming the history.
+ * 
+ * Results of seeded scenarios are served from a ResultCache, whose 
+ * counters are returned by /cache.
+ * 
+ * Requests are handled by virtual threads when the JVM supports them 
+ * (a cached thread pool otherwise), while the simulations run on a 
+ * bounded pool of CPU threads. Keeping the JVM warm avoids paying the 
+ * startup and the JIT compilation for every scenario.
+ */
+public class SimulationServer {
+
+	/** The default port. */
+	public static final int DEFAULT_PORT = 8080;
+	
+	/** The default maximum number of clients of a scenario. */
+	public static final long DEFAULT_MAX_CLIENTS = 10000000L;
+	
+	/** The default maximum number of clients of a scenario whose history is requested. */
+	public static final long DEFAULT_MAX_HISTORY_CLIENTS = 1000000L;
+	
+	private final HttpServer server;
+	private final ExecutorService requestPool;
+	private final ExecutorService simulationPool;
+	private final ResultCache cache;
+	private final Random seeds = new Random();
+	private volatile long maxClients = DEFAULT_MAX_CLIENTS;
+	private volatile long maxHistoryClients = DEFAULT_MAX_HISTORY_CLIENTS;
+	
+	/**
+	 * Constructor. The server is bound to the loopback address.
+	 * 
+	 * @param port the port to listen to
+	 * @param threads the number of simulations running concurrently
+	 * @param cache the cache of the results
+	 * @throws IOException if the server cannot be bound
+	 */
+	public SimulationServer(int port, int threads, final ResultCache cache) throws IOException {
+		this.cache = cache;
+		simulationPool = Executors.newFixedThreadPool(threads, new NamedThreadFactory("simqueue-sim"));
+		requestPool = newRequestExecutor();
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.setExecutor(requestPool);
+		server.createContext("/simulate", new SimulateHandler());
+		server.createContext("/health", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				send(exchange, 200, "{\"status\":\"ok\"}");
+			}
+		});
+		server.createContext("/cache", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				send(exchange, 200, cache.toJson());
+			}
+		});
+	}
+	
+	/**
+	 * Set the maximum number of clients of the scenarios. Larger scenarios are rejected.
+	 * 
+	 * @param maxClients the maximum number of clients
+	 * @param maxHistoryClients the maximum number of clients when the history is requested
+	 */
+	public void setMaxClients(long maxClients, long maxHistoryClients) {
+		if(maxClients < 1 || maxHistoryClients < 1) {
+			throw new IllegalArgumentException("The maximum numbers of clients must be positive.");
+		}
+		this.maxClients = maxClients;
+		this.maxHistoryClients = maxHistoryClients;
+	}
+	
+	/** Start the server. */
+	public void start() {
+		server.start();
+	}
+	
+	/** 
+	 * Stop the server. 
+	 * 
+	 * @param delay the maximum time to wait for the running requests (s)
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		requestPool.shutdownNow();
+		simulationPool.shutdownNow();
+	}
+	
+	/**
+	 * Return the port this server is listening to.
+	 * 
+	 * @return the port
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+	
+	/**
+	 * Return an executor running each task in a new virtual thread, if the 
+	 * JVM provides them (Java 21 or later), or a cached thread pool otherwise.
+	 * 
+	 * @return the executor
+	 */
+	static ExecutorService newRequestExecutor() {
+		try {
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		} catch(ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(new NamedThreadFactory("simqueue-http"));
+		}
+	}
+	
+	/**
+	 * Read a scenario from a request body, either a JSON object or properties.
+	 * 
+	 * @param body the request body
+	 * @return the scenario
+	 * @throws ParameterException if the scenario is not valid
+	 */
+	static Scenario parseScenario(String body) throws ParameterException {
+		Properties prop;
+		if(body.trim().startsWith("{")) {
+			try {
+				prop = Json.parse(body);
+			} catch(IllegalArgumentException e) {
+				throw new ParameterException("Malformed JSON: " + e.getMessage());
+			}
+		} else {
+			prop = new Properties();
+			try {
+				prop.load(new StringReader(body));
+			} catch(IOException e) {
+				throw new ParameterException("Malformed properties: " + e.getMessage());
+			}
+		}
+		return Scenario.fromProperties(prop);
+	}
+	
+	/**
+	 * Parse the parameters of a query string, e.g. history=true&amp;x=1.
+	 * A parameter without a value is mapped to the empty string.
+	 * 
+	 * @param query the raw query string, or null
+	 * @return the decoded parameters
+	 */
+	static Map<String, String> parseQuery(String query) {
+		Map<String, String> parameters = new HashMap<String, String>();
+		if(query == null) {
+			return parameters;
+		}
+		for(String pair : query.split("&")) {
+			if(pair.isEmpty()) {
+				continue;
+			}
+			int eq = pair.indexOf('=');
+			try {
+				parameters.put(URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8"),
+						eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+			} catch(IOException e) {
+				// UTF-8 is always supported
+				throw new IllegalStateException(e);
+			} catch(IllegalArgumentException e) {
+				// malformed escapes are ignored
+			}
+		}
+		return parameters;
+	}
+	
+	/**
+	 * Send a complete response.
+	 * 
+	 * @param exchange the HTTP exchange
+	 * @param code the HTTP status code
+	 * @param json the JSON response
+	 * @throws IOException if the response cannot be sent
+	 */
+	static void send(HttpExchange exchange, int code, String json) throws IOException {
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(code, bytes.length);
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+	
+	/**
+	 * Read a request body.
+	 * 
+	 * @param in the request body stream
+	 * @return the body as a string
+	 * @throws IOException if the body cannot be read
+	 */
+	static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int len;
+		while((len = in.read(buffer)) > 0) {
+			body.write(buffer, 0, len);
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+	
+	
+	/**
+	 * Write the clients of a lazy simulation as JSON arrays [arrival, serving, leaving]. 
+	 * The rows are formatted in a reused buffer, written to out in blocks.
+	 * 
+	 * @param cursor the simulation
+	 * @param out the writer
+	 * @throws IOException if the history cannot be written
+	 */
+	static void writeHistory(ClientCursor cursor, Writer out) throws IOException {
+		StringBuilder rows = new StringBuilder(1 << 16);
+		while(cursor.advance()) {
+			if(cursor.getIndex() > 0) {
+				rows.append(',');
+			}
+			rows.append('[').append(cursor.getArrivalTime()).append(',').append(cursor.getServingTime())
+					.append(',').append(cursor.getLeavingTime()).append(']');
+			if(rows.length() >= 1 << 15) {
+				out.append(rows);
+				rows.setLength(0);
+			}
+		}
+		out.append(rows);
+	}
+	
+	/** The handler running a scenario. */
+	private class SimulateHandler implements HttpHandler {
+		
+		/** {@inheritDoc} */
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if(!"POST".equals(exchange.getRequestMethod())) {
+					send(exchange, 405, "{\"error\":\"POST a scenario\"}");
+					return;
+				}
+				Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+				final boolean history = "true".equalsIgnoreCase(query.get("history"));
+				final Scenario scenario = parseScenario(read(exchange.getRequestBody()));
+				long limit = history ? Math.min(maxClients, maxHistoryClients) : maxClients;
+				if(scenario.getClientsNum() > limit) {
+					throw new ParameterException("`clients_num` exceeds the limit of this service (" + limit 
+							+ (history ? " clients with the history)." : " clients)."));
+				}
+				final boolean seeded = scenario.isSeeded();
+				if(history && !seeded) {
+					// the history is replayed by a cursor, which needs the seed of the statistics
+					synchronized(seeds) {
+						scenario.setSeed(seeds.nextLong());
+					}
+				}
+				final long start = System.nanoTime();
+				SimulationResult r = simulationPool.submit(new Callable<SimulationResult>() {
+					public SimulationResult call() throws Exception {
+						return seeded ? cache.run(scenario) : cache.runUncached(scenario);
+					}
+				}).get();
+				long elapsed = System.nanoTime() - start;
+				String result = "{\"clients_num\":" + scenario.getClientsNum() + 
+						",\"running_time_ms\":" + Json.number(elapsed / 1e6) + 
+						",\"statistics\":" + r.getStatistics().toJson();
+				if(!history) {
+					send(exchange, 200, result + "}");
+					return;
+				}
+				// stream the history with a chunked response, on a simulation thread
+				exchange.getResponseHeaders().set("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, 0);
+				final Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 1 << 16);
+				out.write(result);
+				out.write(",\"history\":[");
+				simulationPool.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						writeHistory(scenario.createCursor(), out);
+						return null;
+					}
+				}).get();
+				out.write("]}");
+				out.close();
+			} catch(ParameterException e) {
+				send(exchange, 400, "{\"error\":" + Json.quote(e.getMessage()) + "}");
+			} catch(ExecutionException e) {
+				Throwable cause = e.getCause();
+				if(exchange.getResponseCode() != -1) {
+					// the history was being streamed: the response is truncated
+					return;
+				}
+				// the simulation rejects invalid parameters with these exceptions, any other failure is an error of the service
+				boolean invalid = cause instanceof SimQueueException || cause instanceof ExponentialException 
+						|| cause instanceof TriangularException || cause instanceof DistributionException 
+						|| cause instanceof IllegalArgumentException;
+				send(exchange, invalid ? 400 : 500, "{\"error\":" + Json.quote(invalid ? cause.getMessage() : String.valueOf(cause)) + "}");
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				send(exchange, 503, "{\"error\":\"interrupted\"}");
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,213 @@
+package org.simqueue.sim;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+
+import org.simqueue.random.RandomVariable;
+
+
+/** 
+ * A lazy, pull-based simulation of the queue. Each call to advance() 
+ * simulates one more client, so the history is never stored: consumers 
+ * read the current client with the primitive getters and can stop at any 
+ * time. The cursor samples the stochastic variables in the same order of 
+ * SimQueue.run(), so it produces the same history for the same seed.
+ */
+public class ClientCursor {
+
+	private final RandomVariable arrivalVar;
+	private final RandomVariable serviceVar;
+	
+	/** The number of clients. */
+	private final long size;
+	
+	/** The index of the current client (-1 before the first advance()). */
+	private long index = -1;
+	
+	private double arrivalTime = 0;
+	private double servingTime = 0;
+	private double leavingTime = 0;
+	
+	/** 
+	 * Constructor.
+	 * 
+	 * @param arrivalVar the variable of the inter-arrival times
+	 * @param serviceVar the variable of the service times
+	 * @param size the number of clients
+	 */
+	public ClientCursor(RandomVariable arrivalVar, RandomVariable serviceVar, long size) {
+		this.arrivalVar = arrivalVar;
+		this.serviceVar = serviceVar;
+		this.size = size;
+	}
+	
+	/**
+	 * Simulate the next client.
+	 * 
+	 * @return false if all the clients were simulated
+	 */
+	public boolean advance() {
+		if(index + 1 >= size) {
+			return false;
+		}
+		index++;
+		if(index == 0) {
+			// The simulation starts when the first client arrives, who is served immediately.
+			arrivalTime = 0;
+			servingTime = 0;
+		} else {
+			arrivalTime += arrivalVar.getNext();
+			servingTime = arrivalTime < leavingTime ? leavingTime : arrivalTime;
+		}
+		leavingTime = servingTime + serviceVar.getNext();
+		return true;
+	}
+	
+	/**
+	 * Return whether more clients can be simulated.
+	 * @return true if advance() would succeed
+	 */
+	public boolean hasNext() {
+		return index + 1 < size;
+	}
+	
+	/**
+	 * Return the number of clients not simulated yet.
+	 * @return the remaining clients
+	 */
+	public long remaining() {
+		return size - index - 1;
+	}
+	
+	/**
+	 * Return the index of the current client.
+	 * @return the index (0 for the first client)
+	 */
+	public long getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Return the arrival time of the current client.
+	 * @return the arrival time
+	 */
+	public double getArrivalTime() {
+		return arrivalTime;
+	}
+	
+	/**
+	 * Return the time the service of the current client starts.
+	 * @return the serving time
+	 */
+	public double getServingTime() {
+		return servingTime;
+	}
+	
+	/**
+	 * Return the leaving time of the current client.
+	 * @return the leaving time
+	 */
+	public double getLeavingTime() {
+		return leavingTime;
+	}
+	
+	/**
+	 * Return the waiting time of the current client.
+	 * @return the waiting time
+	 */
+	public double getWaitingTime() {
+		return servingTime - arrivalTime;
+	}
+	
+	/**
+	 * Return the current client as an object.
+	 * @return the client events
+	 */
+	public ClientEvent getEvent() {
+		return new ClientEvent(index, arrivalTime, servingTime, leavingTime);
+	}
+	
+	/**
+	 * Return a spliterator of the remaining clients. The clients are 
+	 * simulated while the spliterator is traversed.
+	 * 
+	 * @return the spliterator
+	 */
+	public Spliterator<ClientEvent> spliterator() {
+		return new Spliterators.AbstractSpliterator<ClientEvent>(remaining(), 
+				Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.SIZED | Spliterator.IMMUTABLE) {
+			public boolean tryAdvance(Consumer<? super ClientEvent> action) {
+				if(!advance()) {
+					return false;
+				}
+				action.accept(getEvent());
+				return true;
+			}
+		};
+	}
+	
+	/**
+	 * Return a primitive spliterator of the waiting times of the remaining clients.
+	 * 
+	 * @return the spliterator
+	 */
+	public Spliterator.OfDouble waitingTimesSpliterator() {
+		return new Spliterators.AbstractDoubleSpliterator(remaining(), 
+				Spliterator.ORDERED | Spliterator.SIZED | Spliterator.IMMUTABLE) {
+			public boolean tryAdvance(DoubleConsumer action) {
+				if(!advance()) {
+					return false;
+				}
+				action.accept(getWaitingTime());
+				return true;
+			}
+		};
+	}
+	
+	/**
+	 * Return a primitive iterator of the waiting times of the remaining clients.
+	 * 
+	 * @return the iterator
+	 */
+	public PrimitiveIterator.OfDouble waitingTimesIterator() {
+		return new PrimitiveIterator.OfDouble() {
+			public boolean hasNext() {
+				return ClientCursor.this.hasNext();
+			}
+			public double nextDouble() {
+				if(!advance()) {
+					throw new NoSuchElementException();
+				}
+				return getWaitingTime();
+			}
+		};
+	}
+
+}
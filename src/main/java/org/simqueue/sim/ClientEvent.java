@@ -0,0 +1,106 @@
+package org.simqueue.sim;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+/** 
+ * The events of a client of the queue: arrival, start of the service, 
+ * and leaving times.
+ */
+public class ClientEvent {
+
+	private final long index;
+	private final double arrivalTime;
+	private final double servingTime;
+	private final double leavingTime;
+	
+	/** 
+	 * Constructor.
+	 * 
+	 * @param index the client index (0 for the first client)
+	 * @param arrivalTime the arrival time
+	 * @param servingTime the time the service starts
+	 * @param leavingTime the leaving time
+	 */
+	public ClientEvent(long index, double arrivalTime, double servingTime, double leavingTime) {
+		this.index = index;
+		this.arrivalTime = arrivalTime;
+		this.servingTime = servingTime;
+		this.leavingTime = leavingTime;
+	}
+	
+	/**
+	 * Return the client index.
+	 * @return the index (0 for the first client)
+	 */
+	public long getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Return the arrival time.
+	 * @return the arrival time
+	 */
+	public double getArrivalTime() {
+		return arrivalTime;
+	}
+	
+	/**
+	 * Return the time the service starts.
+	 * @return the serving time
+	 */
+	public double getServingTime() {
+		return servingTime;
+	}
+	
+	/**
+	 * Return the leaving time.
+	 * @return the leaving time
+	 */
+	public double getLeavingTime() {
+		return leavingTime;
+	}
+	
+	/**
+	 * Return the time spent waiting in the queue.
+	 * @return the waiting time
+	 */
+	public double getWaitingTime() {
+		return servingTime - arrivalTime;
+	}
+	
+	/**
+	 * Return the length of the service.
+	 * @return the service time
+	 */
+	public double getServiceTime() {
+		return leavingTime - servingTime;
+	}
+	
+	/** {@inheritDoc} */
+	public String toString() {
+		return "[" + (index + 1) + "]\t" + arrivalTime + "\t" + servingTime + "\t" + leavingTime;
+	}
+
+}
@@ -0,0 +1,509 @@
+package org.simqueue.sim;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import org.simqueue.random.BlockRandom;
+import org.simqueue.random.RandomVariable;
+import org.simqueue.utils.IndexedHeap;
+
+
+/**
+ * A simulation of K FIFO single server queues fed by one stream of arrivals, 
+ * each client being routed to a queue by a dispatching policy, as a load 
+ * balancer in front of K servers. The service times of all the queues have 
+ * the same distribution.
+ * 
+ * Join-shortest-queue keeps the number of clients of each queue in an 
+ * IndexedHeap, and the next leaving of each queue in a second one, so that 
+ * a routing decision costs O(log K). Power-of-d samples d queues in O(1) each 
+ * and reads their order lazily. The clients of each queue are kept until 
+ * they leave, in a ring buffer of leaving times, so the memory does not grow 
+ * with the number of clients.
+ */
+public class MultiQueueDispatcher {
+
+	/** The dispatching policies. */
+	public enum Policy {
+		/** The queues in turn. */
+		ROUND_ROBIN,
+		/** The queue with the fewest clients (the lowest index among ties). */
+		JOIN_SHORTEST_QUEUE,
+		/** The queue with the least remaining work, i.e. the earliest last leaving. */
+		LEAST_WORKLOAD,
+		/** The shortest of d queues drawn at random (the first drawn among ties). */
+		POWER_OF_D;
+		
+		/**
+		 * Return the policy of a name, e.g. jsq, power_of_d, round_robin, or least_workload.
+		 * 
+		 * @param name the name, case insensitive
+		 * @return the policy
+		 * @throws IllegalArgumentException if the name is unknown
+		 */
+		public static Policy fromName(String name) {
+			String s = name.trim().toUpperCase();
+			if(s.equals("JSQ")) {
+				return JOIN_SHORTEST_QUEUE;
+			}
+			if(s.equals("POWER_OF_TWO") || s.equals("POWER_OF_2")) {
+				return POWER_OF_D;
+			}
+			return valueOf(s);
+		}
+	}
+	
+	/** The clients whose times are sampled at once. */
+	private static final int BLOCK = 4096;
+	
+	/** The initial capacity of the leaving times of each queue. */
+	private static final int RING_CAPACITY = 16;
+	
+	private final int queues;
+	private final Policy policy;
+	private final RandomVariable arrivalVar;
+	private final RandomVariable serviceVar;
+	private final BlockRandom choiceRand = new BlockRandom();
+	private int choices = 2;
+	
+	// the leaving times of the clients in each queue, oldest first
+	private final double[][] ring;
+	private final int[] head;
+	private final int[] length;
+	private final double[] lastLeaving;
+	
+	// the statistics of each queue
+	private final long[] clients;
+	private final long[] waited;
+	private final double[] waitingTimeSum;
+	private final double[] maxWaitingTime;
+	private final double[] serviceTimeSum;
+	private final double[] responseTimeSum;
+	private long clientsNum = 0L;
+	private double horizon = 0d;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param queues the number K of queues
+	 * @param policy the dispatching policy
+	 * @param arrivalVar the inter-arrival time of all the clients
+	 * @param serviceVar the service time of each queue
+	 */
+	public MultiQueueDispatcher(int queues, Policy policy, RandomVariable arrivalVar, RandomVariable serviceVar) {
+		if(queues < 1) {
+			throw new IllegalArgumentException("The queues must be at least 1.");
+		}
+		this.queues = queues;
+		this.policy = policy;
+		this.arrivalVar = arrivalVar;
+		this.serviceVar = serviceVar;
+		ring = new double[queues][];
+		head = new int[queues];
+		length = new int[queues];
+		lastLeaving = new double[queues];
+		clients = new long[queues];
+		waited = new long[queues];
+		waitingTimeSum = new double[queues];
+		maxWaitingTime = new double[queues];
+		serviceTimeSum = new double[queues];
+		responseTimeSum = new double[queues];
+		if(policy == Policy.JOIN_SHORTEST_QUEUE || policy == Policy.POWER_OF_D) {
+			for(int k = 0; k < queues; k++) {
+				ring[k] = new double[RING_CAPACITY];
+			}
+		}
+	}
+	
+	/**
+	 * Set the number of queues sampled by POWER_OF_D.
+	 * 
+	 * @param d the choices (2 by default)
+	 */
+	public void setChoices(int d) {
+		if(d < 1) {
+			throw new IllegalArgumentException("The choices must be at least 1.");
+		}
+		choices = d;
+	}
+	
+	/**
+	 * Set the seed of the arrivals, of the services, and of the random choices.
+	 * 
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed) {
+		arrivalVar.setSeed(seed);
+		serviceVar.setSeed(SimQueue.serviceSeed(seed));
+		choiceRand.setSeed(SimQueue.serviceSeed(SimQueue.serviceSeed(seed)));
+	}
+	
+	/**
+	 * Simulate a number of clients, starting from empty queues. The first 
+	 * client arrives at time 0.
+	 * 
+	 * @param clientsNum the number of clients
+	 */
+	public void run(long clientsNum) {
+		if(clientsNum < 1) {
+			throw new IllegalArgumentException("The clients must be at least 1.");
+		}
+		reset();
+		this.clientsNum = clientsNum;
+		IndexedHeap order = null, leavings = null;
+		if(policy == Policy.JOIN_SHORTEST_QUEUE || policy == Policy.LEAST_WORKLOAD) {
+			order = new IndexedHeap(queues);
+			for(int k = 0; k < queues; k++) {
+				order.set(k, 0d);
+			}
+		}
+		if(policy == Policy.JOIN_SHORTEST_QUEUE) {
+			leavings = new IndexedHeap(queues);
+		}
+		double[] interArrival = new double[BLOCK];
+		double[] service = new double[BLOCK];
+		double t = 0d;
+		int next = 0;
+		for(long from = 0; from < clientsNum; from += BLOCK) {
+			int m = (int) Math.min(BLOCK, clientsNum - from);
+			// sample the times in bulk, the first client arrives at time 0
+			arrivalVar.fill(interArrival, from == 0 ? 1 : 0, m);
+			serviceVar.fill(service, 0, m);
+			for(int i = 0; i < m; i++) {
+				t += interArrival[i];
+				int k;
+				switch(policy) {
+				case ROUND_ROBIN:
+					k = next;
+					next = next + 1 == queues ? 0 : next + 1;
+					break;
+				case JOIN_SHORTEST_QUEUE:
+					// the clients leaving before t leave first
+					while(leavings.peekKey() <= t) {
+						int q = leavings.peek();
+						leave(q);
+						order.set(q, length[q]);
+						if(length[q] == 0) {
+							leavings.remove(q);
+						} else {
+							leavings.set(q, ring[q][head[q]]);
+						}
+					}
+					k = order.peek();
+					break;
+				case LEAST_WORKLOAD:
+					k = order.peek();
+					break;
+				default:
+					k = choose(t);
+				}
+				double s = service[i];
+				double serving = Math.max(t, lastLeaving[k]);
+				double leaving = serving + s;
+				lastLeaving[k] = leaving;
+				double w = serving - t;
+				clients[k]++;
+				if(w > 0) {
+					waited[k]++;
+					waitingTimeSum[k] += w;
+					if(w > maxWaitingTime[k]) {
+						maxWaitingTime[k] = w;
+					}
+				}
+				serviceTimeSum[k] += s;
+				responseTimeSum[k] += w + s;
+				if(leaving > horizon) {
+					horizon = leaving;
+				}
+				switch(policy) {
+				case JOIN_SHORTEST_QUEUE:
+					enter(k, leaving);
+					order.set(k, length[k]);
+					if(length[k] == 1) {
+						leavings.set(k, leaving);
+					}
+					break;
+				case LEAST_WORKLOAD:
+					order.set(k, leaving);
+					break;
+				case POWER_OF_D:
+					enter(k, leaving);
+					break;
+				default:
+				}
+			}
+		}
+	}
+	
+	/** Return the shortest of d queues drawn at random at time t. */
+	private int choose(double t) {
+		int best = -1;
+		for(int j = 0; j < choices; j++) {
+			int k = choiceRand.nextInt(queues);
+			// the order are brought up to date only for the queues drawn
+			double[] r = ring[k];
+			while(length[k] > 0 && r[head[k]] <= t) {
+				leave(k);
+			}
+			if(best < 0 || length[k] < length[best]) {
+				best = k;
+			}
+		}
+		return best;
+	}
+	
+	/** Add a client to the tail of a queue. */
+	private void enter(int k, double leaving) {
+		double[] r = ring[k];
+		if(length[k] == r.length) {
+			// unroll the ring in a buffer twice as large
+			double[] grown = new double[r.length << 1];
+			int h = head[k];
+			System.arraycopy(r, h, grown, 0, r.length - h);
+			System.arraycopy(r, 0, grown, r.length - h, h);
+			ring[k] = r = grown;
+			head[k] = 0;
+		}
+		r[(head[k] + length[k]) & (r.length - 1)] = leaving;
+		length[k]++;
+	}
+	
+	/** Remove the client at the head of a queue. */
+	private void leave(int k) {
+		head[k] = (head[k] + 1) & (ring[k].length - 1);
+		length[k]--;
+	}
+	
+	/** Clear the queues and the statistics. */
+	private void reset() {
+		Arrays.fill(head, 0);
+		Arrays.fill(length, 0);
+		Arrays.fill(lastLeaving, 0d);
+		Arrays.fill(clients, 0L);
+		Arrays.fill(waited, 0L);
+		Arrays.fill(waitingTimeSum, 0d);
+		Arrays.fill(maxWaitingTime, 0d);
+		Arrays.fill(serviceTimeSum, 0d);
+		Arrays.fill(responseTimeSum, 0d);
+		clientsNum = 0L;
+		horizon = 0d;
+	}
+	
+	/**
+	 * Return the number of queues.
+	 * @return K
+	 */
+	public int getQueues() {
+		return queues;
+	}
+	
+	/**
+	 * Return the dispatching policy.
+	 * @return the policy
+	 */
+	public Policy getPolicy() {
+		return policy;
+	}
+	
+	/**
+	 * Return the time of the last leaving, after run().
+	 * @return the simulated time (min)
+	 */
+	public double getHorizon() {
+		return horizon;
+	}
+	
+	/**
+	 * Return the number of clients routed to a queue, after run().
+	 * 
+	 * @param k the queue
+	 * @return the clients
+	 */
+	public long getClients(int k) {
+		return clients[k];
+	}
+	
+	/**
+	 * Return the mean waiting time of the clients of a queue, after run().
+	 * 
+	 * @param k the queue
+	 * @return the mean waiting time (min)
+	 */
+	public double getMeanWaitingTime(int k) {
+		return clients[k] > 0 ? waitingTimeSum[k] / clients[k] : 0d;
+	}
+	
+	/**
+	 * Return the maximum waiting time of the clients of a queue, after run().
+	 * 
+	 * @param k the queue
+	 * @return the maximum waiting time (min)
+	 */
+	public double getMaxWaitingTime(int k) {
+		return maxWaitingTime[k];
+	}
+	
+	/**
+	 * Return the fraction of the clients of a queue who waited, after run().
+	 * 
+	 * @param k the queue
+	 * @return the probability of waiting
+	 */
+	public double getWaitingProbability(int k) {
+		return clients[k] > 0 ? (double) waited[k] / clients[k] : 0d;
+	}
+	
+	/**
+	 * Return the fraction of the time a server was busy, up to the horizon.
+	 * 
+	 * @param k the queue
+	 * @return the utilization
+	 */
+	public double getUtilization(int k) {
+		return horizon > 0 ? serviceTimeSum[k] / horizon : 0d;
+	}
+	
+	/**
+	 * Return the time average of the number of clients in a queue, up to 
+	 * the horizon: each client is in the system for its response time.
+	 * 
+	 * @param k the queue
+	 * @return the mean number in system
+	 */
+	public double getMeanNumberInSystem(int k) {
+		return horizon > 0 ? responseTimeSum[k] / horizon : 0d;
+	}
+	
+	/**
+	 * Return the mean waiting time of all the clients, after run().
+	 * @return the mean waiting time (min)
+	 */
+	public double getMeanWaitingTime() {
+		double sum = 0d;
+		for(int k = 0; k < queues; k++) {
+			sum += waitingTimeSum[k];
+		}
+		return clientsNum > 0 ? sum / clientsNum : 0d;
+	}
+	
+	/**
+	 * Return the maximum waiting time of all the clients, after run().
+	 * @return the maximum waiting time (min)
+	 */
+	public double getMaxWaitingTime() {
+		double max = 0d;
+		for(int k = 0; k < queues; k++) {
+			max = Math.max(max, maxWaitingTime[k]);
+		}
+		return max;
+	}
+	
+	/**
+	 * Return the fraction of all the clients who waited, after run().
+	 * @return the probability of waiting
+	 */
+	public double getWaitingProbability() {
+		long sum = 0L;
+		for(int k = 0; k < queues; k++) {
+			sum += waited[k];
+		}
+		return clientsNum > 0 ? (double) sum / clientsNum : 0d;
+	}
+	
+	/**
+	 * Return the mean utilization of the servers, after run().
+	 * @return the utilization
+	 */
+	public double getUtilization() {
+		double sum = 0d;
+		for(int k = 0; k < queues; k++) {
+			sum += serviceTimeSum[k];
+		}
+		return horizon > 0 ? sum / horizon / queues : 0d;
+	}
+	
+	/**
+	 * Return the time average of the number of clients in all the queues, after run().
+	 * @return the mean number in system
+	 */
+	public double getMeanNumberInSystem() {
+		double sum = 0d;
+		for(int k = 0; k < queues; k++) {
+			sum += responseTimeSum[k];
+		}
+		return horizon > 0 ? sum / horizon : 0d;
+	}
+	
+	/**
+	 * Return the imbalance of the load: the clients of the busiest queue 
+	 * over the mean clients per queue, after run().
+	 * @return the imbalance (1 if perfectly balanced)
+	 */
+	public double getImbalance() {
+		long max = 0L;
+		for(int k = 0; k < queues; k++) {
+			max = Math.max(max, clients[k]);
+		}
+		return clientsNum > 0 ? (double) max * queues / clientsNum : 0d;
+	}
+	
+	/**
+	 * Write the statistics of each queue as tab separated values, after run().
+	 * 
+	 * @param out the writer
+	 */
+	public void write(PrintWriter out) {
+		out.println("Queue\tClients\tMeanWaitingTime\tMaxWaitingTime\tWaitingProbability\tUtilization\tMeanNumberInSystem");
+		for(int k = 0; k < queues; k++) {
+			out.println(k + "\t" + clients[k] + "\t" + getMeanWaitingTime(k) + "\t" + maxWaitingTime[k] 
+					+ "\t" + getWaitingProbability(k) + "\t" + getUtilization(k) + "\t" + getMeanNumberInSystem(k));
+		}
+	}
+	
+	/** {@inheritDoc} */
+	public String toString() {
+		String name = policy == Policy.POWER_OF_D ? "power of " + choices : policy.name().toLowerCase().replace('_', ' ');
+		StringBuilder s = new StringBuilder(String.format("[DISPATCHER] %d clients on %d queues by %s", 
+				clientsNum, queues, name));
+		s.append(String.format("%n 1- %-28s\t%.6g", "mean waiting time:", getMeanWaitingTime()));
+		s.append(String.format("%n 2- %-28s\t%.6g", "max waiting time:", getMaxWaitingTime()));
+		s.append(String.format("%n 3- %-28s\t%.6g", "waiting probability:", getWaitingProbability()));
+		s.append(String.format("%n 4- %-28s\t%.6g", "mean utilization:", getUtilization()));
+		s.append(String.format("%n 5- %-28s\t%.6g", "mean number in system:", getMeanNumberInSystem()));
+		s.append(String.format("%n 6- %-28s\t%.6g", "load imbalance (max/mean):", getImbalance()));
+		s.append(String.format("%n    %-12s\t%-14s\t%-14s\t%-14s\t%s", "queue", "clients", "mean wait", 
+				"utilization", "mean in system"));
+		// at most 20 rows on screen, all the queues are written to file
+		int rows = Math.min(20, queues);
+		for(int i = 0; i < rows; i++) {
+			int k = rows < 2 ? 0 : (int) ((long) i * (queues - 1) / (rows - 1));
+			s.append(String.format("%n    %-12d\t%-14d\t%-14.6g\t%-14.6g\t%.6g", k, clients[k], 
+					getMeanWaitingTime(k), getUtilization(k), getMeanNumberInSystem(k)));
+		}
+		return s.toString();
+	}
+
+}
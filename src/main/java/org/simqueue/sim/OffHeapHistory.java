@@ -0,0 +1,231 @@
+package org.simqueue.sim;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * A history of queue events stored outside the Java heap and indexed by long, 
+ * so that histories of billions of clients are neither limited by the size 
+ * of Java arrays nor scanned by the garbage collector.
+ * The history is split in segments of direct byte buffers or, if a file is 
+ * given, of buffers mapped to the file. Each client takes 24 bytes: arrival, 
+ * serving, and leaving times.
+ */
+public class OffHeapHistory implements Closeable {
+
+	/** The number of clients per segment (a power of 2). */
+	public static final int SEGMENT_CLIENTS = 1 << 22;
+	
+	/** The size of a client in bytes. */
+	private static final int CLIENT_BYTES = 24;
+	
+	private static final int SEGMENT_SHIFT = Integer.numberOfTrailingZeros(SEGMENT_CLIENTS);
+	private static final long SEGMENT_MASK = SEGMENT_CLIENTS - 1;
+	
+	/** The number of clients. */
+	private final long size;
+	
+	/** The segments. */
+	private ByteBuffer[] segments;
+	
+	/** The backing file, or null. */
+	private RandomAccessFile file = null;
+	
+	/**
+	 * Constructor. Allocate a history in direct memory.
+	 * 
+	 * @param clientsNum the number of clients
+	 */
+	public OffHeapHistory(long clientsNum) {
+		size = clientsNum;
+		segments = new ByteBuffer[segmentCount(clientsNum)];
+		for(int s = 0; s < segments.length; s++) {
+			segments[s] = ByteBuffer.allocateDirect(segmentBytes(s)).order(ByteOrder.nativeOrder());
+		}
+	}
+	
+	/**
+	 * Constructor. Allocate a history mapped to a file, which is 
+	 * created or resized as needed. The operating system pages the history 
+	 * in and out, so it can be larger than the physical memory.
+	 * 
+	 * @param clientsNum the number of clients
+	 * @param backingFile the file
+	 * @throws IOException if the file cannot be mapped
+	 */
+	public OffHeapHistory(long clientsNum, File backingFile) throws IOException {
+		size = clientsNum;
+		segments = new ByteBuffer[segmentCount(clientsNum)];
+		file = new RandomAccessFile(backingFile, "rw");
+		try {
+			file.setLength(clientsNum * CLIENT_BYTES);
+			FileChannel channel = file.getChannel();
+			for(int s = 0; s < segments.length; s++) {
+				segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, 
+						(long) s * SEGMENT_CLIENTS * CLIENT_BYTES, segmentBytes(s)).order(ByteOrder.nativeOrder());
+			}
+		} catch(IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+	
+	/** Return the number of segments for clientsNum clients. */
+	private static int segmentCount(long clientsNum) {
+		if(clientsNum < 1) {
+			throw new IllegalArgumentException("The number of clients must be > 0.");
+		}
+		return (int) ((clientsNum + SEGMENT_CLIENTS - 1) >>> SEGMENT_SHIFT);
+	}
+	
+	/** Return the size in bytes of the segment s. */
+	private int segmentBytes(int s) {
+		long clients = Math.min(SEGMENT_CLIENTS, size - ((long) s << SEGMENT_SHIFT));
+		return (int) clients * CLIENT_BYTES;
+	}
+	
+	/** Return the segment containing a client. */
+	private ByteBuffer segment(long i) {
+		return segments[(int) (i >>> SEGMENT_SHIFT)];
+	}
+	
+	/** Return the position of a client in its segment. */
+	private static int offset(long i) {
+		return (int) (i & SEGMENT_MASK) * CLIENT_BYTES;
+	}
+	
+	/**
+	 * Return the number of clients.
+	 * @return the size
+	 */
+	public long size() {
+		return size;
+	}
+	
+	/**
+	 * Store the times of a client.
+	 * 
+	 * @param i the client index
+	 * @param arrival the arrival time
+	 * @param serving the serving time
+	 * @param leaving the leaving time
+	 */
+	public void set(long i, double arrival, double serving, double leaving) {
+		ByteBuffer b = segment(i);
+		int o = offset(i);
+		b.putDouble(o, arrival);
+		b.putDouble(o + 8, serving);
+		b.putDouble(o + 16, leaving);
+	}
+	
+	/**
+	 * Store the arrival time of a client.
+	 * 
+	 * @param i the client index
+	 * @param arrival the arrival time
+	 */
+	public void setArrivalTime(long i, double arrival) {
+		segment(i).putDouble(offset(i), arrival);
+	}
+	
+	/**
+	 * Store the serving and leaving times of a client.
+	 * 
+	 * @param i the client index
+	 * @param serving the serving time
+	 * @param leaving the leaving time
+	 */
+	public void setService(long i, double serving, double leaving) {
+		ByteBuffer b = segment(i);
+		int o = offset(i);
+		b.putDouble(o + 8, serving);
+		b.putDouble(o + 16, leaving);
+	}
+	
+	/**
+	 * Return the arrival time of a client.
+	 * @param i the client index
+	 * @return the arrival time
+	 */
+	public double getArrivalTime(long i) {
+		return segment(i).getDouble(offset(i));
+	}
+	
+	/**
+	 * Return the serving time of a client.
+	 * @param i the client index
+	 * @return the serving time
+	 */
+	public double getServingTime(long i) {
+		return segment(i).getDouble(offset(i) + 8);
+	}
+	
+	/**
+	 * Return the leaving time of a client.
+	 * @param i the client index
+	 * @return the leaving time
+	 */
+	public double getLeavingTime(long i) {
+		return segment(i).getDouble(offset(i) + 16);
+	}
+	
+	/**
+	 * Flush the history to the backing file, if any.
+	 */
+	public void force() {
+		if(file != null) {
+			for(ByteBuffer b : segments) {
+				((MappedByteBuffer) b).force();
+			}
+		}
+	}
+	
+	/**
+	 * Release the history. Direct memory is returned when the buffers are 
+	 * garbage collected; a backing file is flushed and closed.
+	 * 
+	 * @throws IOException if the backing file cannot be closed
+	 */
+	public void close() throws IOException {
+		if(segments == null) {
+			return;
+		}
+		force();
+		segments = null;
+		if(file != null) {
+			file.close();
+			file = null;
+		}
+	}
+
+}
@@ -0,0 +1,307 @@
+package org.simqueue.sim;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Random;
+
+import org.simqueue.random.ExponentialVariable;
+import org.simqueue.random.TriangularVariable;
+
+
+/**
+ * An importance sampling estimator of the steady-state probability that 
+ * a client waits longer than t, P(wait &gt; t), for tail probabilities 
+ * too small to be observed by SimQueue.run().
+ * 
+ * By the Lindley recursion, the waiting time has the distribution of the 
+ * maximum of the random walk with increments X = service - inter-arrival. 
+ * Under a change of measure exponentially tilted by theta, such that 
+ * E[exp(theta X)] = 1, the walk drifts upwards and crosses t after a few 
+ * clients: the inter-arrival times are exponential with rate lambda + theta, 
+ * and the service times have density proportional to exp(theta x) f(x). 
+ * Each client contributes the likelihood ratio exp(-theta X), so every 
+ * replication returns the unbiased estimate exp(-theta Y), where Y is the 
+ * level of the walk when it first crosses t (Siegmund's algorithm). 
+ * The relative error stays bounded as t grows, whereas plain simulation 
+ * needs about 1/P(wait &gt; t) clients to observe a single event.
+ */
+public class RareEventEstimator {
+
+	/** The estimate of a tail probability. */
+	public static class TailEstimate {
+		private final double threshold;
+		private final double probability;
+		private final double standardError;
+		private final long replications;
+		private final long clients;
+		
+		/**
+		 * Constructor.
+		 * 
+		 * @param threshold the waiting time t
+		 * @param probability the estimate of P(wait &gt; t)
+		 * @param standardError the standard error of the estimate
+		 * @param replications the number of independent replications (or batches)
+		 * @param clients the total number of simulated clients
+		 */
+		public TailEstimate(double threshold, double probability, double standardError, long replications, long clients) {
+			this.threshold = threshold;
+			this.probability = probability;
+			this.standardError = standardError;
+			this.replications = replications;
+			this.clients = clients;
+		}
+		
+		/**
+		 * Return the waiting time threshold.
+		 * @return t
+		 */
+		public double getThreshold() {
+			return threshold;
+		}
+		
+		/**
+		 * Return the estimate of P(wait &gt; t).
+		 * @return the probability
+		 */
+		public double getProbability() {
+			return probability;
+		}
+		
+		/**
+		 * Return the standard error of the estimate.
+		 * @return the standard error
+		 */
+		public double getStandardError() {
+			return standardError;
+		}
+		
+		/**
+		 * Return the relative error of the estimate (standard error / probability).
+		 * @return the relative error, or infinity if the probability is 0
+		 */
+		public double getRelativeError() {
+			return probability > 0 ? standardError / probability : Double.POSITIVE_INFINITY;
+		}
+		
+		/**
+		 * Return the number of independent replications (or batches).
+		 * @return the replications
+		 */
+		public long getReplications() {
+			return replications;
+		}
+		
+		/**
+		 * Return the total number of simulated clients.
+		 * @return the clients
+		 */
+		public long getClients() {
+			return clients;
+		}
+		
+		/** {@inheritDoc} */
+		public String toString() {
+			return String.format("P(wait > %s min) = %.6g (relative error %.3g%%, %d replications, %d clients)", 
+					threshold, probability, 100 * getRelativeError(), replications, clients);
+		}
+	}
+	
+	/** The maximum number of doublings of theta bracketing the root of the cumulant. */
+	private static final int MAX_DOUBLINGS = 128;
+	
+	private final ExponentialVariable arrivalVar;
+	private final TriangularVariable serviceVar;
+	private final double lambda;
+	private final double theta;
+	private final Random rand = new Random();
+	
+	/**
+	 * Constructor. The queue must be stable, i.e. the mean service time must be 
+	 * lower than the mean inter-arrival time.
+	 * 
+	 * @param arrivalVar the inter-arrival time variable
+	 * @param serviceVar the service time variable
+	 */
+	public RareEventEstimator(ExponentialVariable arrivalVar, TriangularVariable serviceVar) {
+		this.arrivalVar = arrivalVar;
+		this.serviceVar = serviceVar;
+		this.lambda = arrivalVar.getLambda();
+		if(serviceVar.getTheoreticalMean() >= arrivalVar.getTheoreticalMean()) {
+			throw new IllegalArgumentException("The queue is not stable: the mean service time must be lower "
+					+ "than the mean inter-arrival time.");
+		}
+		this.theta = solveTheta();
+	}
+	
+	/**
+	 * Set the seed of the estimator and of its variables.
+	 * 
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed) {
+		rand.setSeed(seed);
+		arrivalVar.setSeed(seed);
+		serviceVar.setSeed(SimQueue.serviceSeed(seed));
+	}
+	
+	/**
+	 * Return the tilting parameter theta, the positive root of E[exp(theta X)] = 1.
+	 * @return theta
+	 */
+	public double getTheta() {
+		return theta;
+	}
+	
+	/**
+	 * Estimate P(wait &gt; t) by importance sampling.
+	 * 
+	 * @param t the waiting time threshold (min)
+	 * @param replications the number of independent replications
+	 * @return the estimate
+	 */
+	public TailEstimate estimate(double t, long replications) {
+		double acceptBound = serviceVar.getB();
+		double tiltedRate = lambda + theta;
+		double sum = 0d, sumSquares = 0d;
+		long clients = 0L;
+		for(long r = 0; r < replications; r++) {
+			// the random walk of the waiting time under the tilted measure
+			double y = 0d;
+			while(y <= t) {
+				// tilted service by rejection: accept x with probability exp(theta (x - b))
+				double service;
+				do {
+					service = serviceVar.getNext();
+				} while(rand.nextDouble() > Math.exp(theta * (service - acceptBound)));
+				double interArrival = -Math.log(rand.nextDouble()) / tiltedRate;
+				y += service - interArrival;
+				clients++;
+			}
+			// the product of the likelihood ratios exp(-theta X) of the clients
+			double z = Math.exp(-theta * y);
+			sum += z;
+			sumSquares += z * z;
+		}
+		return summarize(t, sum, sumSquares, replications, clients);
+	}
+	
+	/**
+	 * Estimate P(wait &gt; t) by plain simulation of the queue, for comparison. 
+	 * The standard error is computed by batch means, as the waiting times 
+	 * of consecutive clients are correlated.
+	 * 
+	 * @param t the waiting time threshold (min)
+	 * @param clients the number of simulated clients
+	 * @param batches the number of batches
+	 * @return the estimate
+	 */
+	public TailEstimate crudeEstimate(double t, long clients, int batches) {
+		ClientCursor cursor = new ClientCursor(arrivalVar, serviceVar, clients);
+		long batchSize = Math.max(1L, clients / batches);
+		double sum = 0d, sumSquares = 0d;
+		long count = 0L, n = 0L;
+		while(cursor.advance()) {
+			if(cursor.getWaitingTime() > t) {
+				count++;
+			}
+			if(cursor.getIndex() % batchSize == batchSize - 1) {
+				double p = (double) count / batchSize;
+				sum += p;
+				sumSquares += p * p;
+				count = 0L;
+				n++;
+			}
+		}
+		return summarize(t, sum, sumSquares, n, n * batchSize);
+	}
+	
+	/** Return the mean of n independent estimates and its standard error. */
+	private static TailEstimate summarize(double t, double sum, double sumSquares, long n, long clients) {
+		double mean = sum / n;
+		double var = n > 1 ? Math.max(0d, (sumSquares - n * mean * mean) / (n - 1)) : Double.NaN;
+		return new TailEstimate(t, mean, Math.sqrt(var / n), n, clients);
+	}
+	
+	/**
+	 * Return the logarithm of E[exp(theta X)], where X = service - inter-arrival.
+	 * 
+	 * @param theta the tilting parameter (theta &gt;= 0)
+	 * @return the cumulant generating function of X
+	 */
+	public double cumulant(double theta) {
+		return Math.log(serviceMgf(theta)) + Math.log(lambda / (lambda + theta));
+	}
+	
+	/** 
+	 * Return E[exp(theta S)] of the service time S, integrating by parts with 
+	 * its CDF: exp(theta b) - theta * integral_a^b exp(theta x) F(x) dx.
+	 */
+	private double serviceMgf(double theta) {
+		double a = serviceVar.getA(), m = serviceVar.getM(), b = serviceVar.getB();
+		return Math.exp(theta * b) - theta * (simpson(theta, a, m) + simpson(theta, m, b));
+	}
+	
+	/** Integrate exp(theta x) F(x) over [lo,hi], where F is smooth, by the Simpson rule. */
+	private double simpson(double theta, double lo, double hi) {
+		int intervals = 2048;
+		double h = (hi - lo) / intervals;
+		if(h == 0) {
+			return 0d;
+		}
+		double sum = 0d;
+		for(int i = 0; i <= intervals; i++) {
+			double x = lo + i * h;
+			double w = i == 0 || i == intervals ? 1 : (i % 2 == 1 ? 4 : 2);
+			sum += w * Math.exp(theta * x) * serviceVar.cdf(x);
+		}
+		return sum * h / 3;
+	}
+	
+	/** 
+	 * Solve cumulant(theta) = 0 for theta &gt; 0, as the cumulant is convex and negative near 0. 
+	 * The service time is bounded by b, so the cumulant is finite for every theta and grows 
+	 * as theta b - log(theta): the root is bracketed by doubling theta.
+	 */
+	private double solveTheta() {
+		double lo = 0d, hi = Math.min(lambda / 2, 1d / serviceVar.getB());
+		for(int i = 0; cumulant(hi) < 0; i++) {
+			if(i == MAX_DOUBLINGS) {
+				throw new IllegalStateException("The tilting parameter cannot be bracketed.");
+			}
+			lo = hi;
+			hi *= 2;
+		}
+		for(int i = 0; i < 200 && hi - lo > 1e-15 * hi; i++) {
+			double mid = (lo + hi) / 2;
+			if(cumulant(mid) < 0) {
+				lo = mid;
+			} else {
+				hi = mid;
+			}
+		}
+		return (lo + hi) / 2;
+	}
+
+}
@@ -0,0 +1,381 @@
+package org.simqueue.sim;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.simqueue.random.RandomVariable;
+import org.simqueue.statistics.QuantileSketch;
+import org.simqueue.utils.TimingWheel;
+
+
+/**
+ * A FIFO single server queue whose clients abandon (renege) when their 
+ * waiting time exceeds their patience, drawn at arrival from any random 
+ * variable. An abandoned client leaves the queue at its deadline and is 
+ * not served.
+ * 
+ * The simulation is driven by events: each client who has to wait gets a 
+ * timer at its deadline in a hierarchical TimingWheel, cancelled in O(1) 
+ * when its service begins, and the waiting clients are kept in a ring buffer 
+ * from which the abandoned ones are skipped. The memory depends on the 
+ * clients waiting, not on the clients simulated.
+ */
+public class RenegingQueue implements TimingWheel.Expiry {
+
+	/** The clients whose times are sampled at once. */
+	private static final int BLOCK = 4096;
+	
+	/** The initial capacity of the ring of the waiting clients. */
+	private static final int RING_CAPACITY = 64;
+	
+	/** The bins of the sketches per power of 2. */
+	private static final int SKETCH_SUB_BUCKETS = 64;
+	
+	private final RandomVariable arrivalVar;
+	private final RandomVariable serviceVar;
+	private final RandomVariable patienceVar;
+	private double tickResolution;
+	private TimingWheel wheel;
+	
+	// the waiting clients, in order of arrival, indexed by waiting sequence number
+	private double[] arrival = new double[RING_CAPACITY];
+	private double[] service = new double[RING_CAPACITY];
+	private int[] timer = new int[RING_CAPACITY];
+	private boolean[] abandoned = new boolean[RING_CAPACITY];
+	private long head = 0L;
+	private long tail = 0L;
+	/** The clients waiting who have not abandoned. */
+	private int waiting = 0;
+	
+	/** The time at which the server is free. */
+	private double free = 0d;
+	
+	// the statistics
+	private long clientsNum = 0L;
+	private long served = 0L;
+	private long waited = 0L;
+	private long timersScheduled = 0L;
+	private int maxWaiting = 0;
+	private double serviceTimeSum = 0d;
+	private double horizon = 0d;
+	private final QuantileSketch servedWaits = new QuantileSketch(SKETCH_SUB_BUCKETS);
+	private final QuantileSketch abandonedWaits = new QuantileSketch(SKETCH_SUB_BUCKETS);
+	
+	/**
+	 * Constructor. The tick of the timing wheel is 1/16 of the mean service time.
+	 * 
+	 * @param arrivalVar the inter-arrival time
+	 * @param serviceVar the service time
+	 * @param patienceVar the patience, the longest waiting time of a client
+	 */
+	public RenegingQueue(RandomVariable arrivalVar, RandomVariable serviceVar, RandomVariable patienceVar) {
+		this.arrivalVar = arrivalVar;
+		this.serviceVar = serviceVar;
+		this.patienceVar = patienceVar;
+		double mean = serviceVar.getTheoreticalMean();
+		setTickResolution(mean > 0 && !Double.isInfinite(mean) ? mean / 16 : 1d);
+	}
+	
+	/**
+	 * Set the duration of a tick of the timing wheel. It does not change the 
+	 * results, which use the exact deadlines, only the cost of the timers.
+	 * 
+	 * @param resolution the tick (min)
+	 */
+	public void setTickResolution(double resolution) {
+		wheel = new TimingWheel(resolution);
+		tickResolution = resolution;
+	}
+	
+	/**
+	 * Return the duration of a tick of the timing wheel.
+	 * @return the tick (min)
+	 */
+	public double getTickResolution() {
+		return tickResolution;
+	}
+	
+	/**
+	 * Set the seed of the arrivals, of the services, and of the patience.
+	 * 
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed) {
+		arrivalVar.setSeed(seed);
+		serviceVar.setSeed(SimQueue.serviceSeed(seed));
+		patienceVar.setSeed(SimQueue.serviceSeed(SimQueue.serviceSeed(seed)));
+	}
+	
+	/**
+	 * Simulate a number of clients, starting from an empty queue. The first 
+	 * client arrives at time 0.
+	 * 
+	 * @param clientsNum the number of clients
+	 */
+	public void run(long clientsNum) {
+		if(clientsNum < 1) {
+			throw new IllegalArgumentException("The clients must be at least 1.");
+		}
+		reset();
+		this.clientsNum = clientsNum;
+		double[] interArrivals = new double[BLOCK];
+		double[] services = new double[BLOCK];
+		double[] patiences = new double[BLOCK];
+		double t = 0d;
+		for(long from = 0; from < clientsNum; from += BLOCK) {
+			int m = (int) Math.min(BLOCK, clientsNum - from);
+			// sample the times in bulk, the first client arrives at time 0
+			arrivalVar.fill(interArrivals, from == 0 ? 1 : 0, m);
+			serviceVar.fill(services, 0, m);
+			patienceVar.fill(patiences, 0, m);
+			for(int i = 0; i < m; i++) {
+				t += interArrivals[i];
+				serveUntil(t);
+				wheel.advance(t, this);
+				if(head == tail && free <= t) {
+					// the server is idle: no wait, no timer
+					start(t, t, services[i]);
+				} else {
+					enqueue(t, services[i], t + patiences[i]);
+				}
+			}
+		}
+		serveUntil(Double.POSITIVE_INFINITY);
+		horizon = Math.max(horizon, Math.max(free, t));
+	}
+	
+	/** Start the services of the waiting clients until time t. */
+	private void serveUntil(double t) {
+		while(head != tail && free <= t) {
+			int h = (int) (head & (arrival.length - 1));
+			if(!abandoned[h]) {
+				// the clients whose deadline is before the service start abandon first
+				wheel.advance(free, this);
+			}
+			if(abandoned[h]) {
+				head++;
+				continue;
+			}
+			if(timer[h] >= 0) {
+				wheel.cancel(timer[h]);
+			}
+			head++;
+			waiting--;
+			start(arrival[h], free, service[h]);
+		}
+	}
+	
+	/** Serve a client arrived at time a from time s. */
+	private void start(double a, double s, double duration) {
+		double w = s - a;
+		served++;
+		if(w > 0) {
+			waited++;
+		}
+		servedWaits.add(w);
+		serviceTimeSum += duration;
+		free = s + duration;
+	}
+	
+	/** Add a client to the tail of the waiting clients. */
+	private void enqueue(double a, double duration, double deadline) {
+		if(tail - head == arrival.length) {
+			grow();
+		}
+		int p = (int) (tail & (arrival.length - 1));
+		arrival[p] = a;
+		service[p] = duration;
+		abandoned[p] = false;
+		if(deadline < Double.POSITIVE_INFINITY) {
+			timer[p] = wheel.schedule(deadline, tail);
+			timersScheduled++;
+		} else {
+			timer[p] = -1;
+		}
+		tail++;
+		waiting++;
+		if(waiting > maxWaiting) {
+			maxWaiting = waiting;
+		}
+	}
+	
+	/** Double the ring of the waiting clients, keeping their sequence numbers. */
+	private void grow() {
+		int capacity = arrival.length << 1;
+		double[] a = new double[capacity], s = new double[capacity];
+		int[] tm = new int[capacity];
+		boolean[] ab = new boolean[capacity];
+		for(long w = head; w < tail; w++) {
+			int from = (int) (w & (arrival.length - 1)), to = (int) (w & (capacity - 1));
+			a[to] = arrival[from];
+			s[to] = service[from];
+			tm[to] = timer[from];
+			ab[to] = abandoned[from];
+		}
+		arrival = a;
+		service = s;
+		timer = tm;
+		abandoned = ab;
+	}
+	
+	/** {@inheritDoc} */
+	public void expire(int timer, long payload, double deadline) {
+		int p = (int) (payload & (arrival.length - 1));
+		abandoned[p] = true;
+		waiting--;
+		abandonedWaits.add(deadline - arrival[p]);
+		if(deadline > horizon) {
+			horizon = deadline;
+		}
+	}
+	
+	/** Clear the queue and the statistics. */
+	private void reset() {
+		wheel.clear();
+		head = tail = 0L;
+		waiting = 0;
+		free = 0d;
+		served = waited = timersScheduled = 0L;
+		maxWaiting = 0;
+		serviceTimeSum = 0d;
+		horizon = 0d;
+		servedWaits.reset();
+		abandonedWaits.reset();
+	}
+	
+	/**
+	 * Return the number of clients served, after run().
+	 * @return the clients served
+	 */
+	public long getServed() {
+		return served;
+	}
+	
+	/**
+	 * Return the number of clients who abandoned, after run().
+	 * @return the clients abandoned
+	 */
+	public long getAbandoned() {
+		return clientsNum - served;
+	}
+	
+	/**
+	 * Return the fraction of the clients who abandoned, after run().
+	 * @return the abandonment rate
+	 */
+	public double getAbandonmentRate() {
+		return clientsNum > 0 ? (double) getAbandoned() / clientsNum : 0d;
+	}
+	
+	/**
+	 * Return the waiting times of the clients served, after run().
+	 * @return the sketch of the waiting times
+	 */
+	public QuantileSketch getServedWaits() {
+		return servedWaits;
+	}
+	
+	/**
+	 * Return the waiting times of the clients who abandoned (their patience), after run().
+	 * @return the sketch of the waiting times
+	 */
+	public QuantileSketch getAbandonedWaits() {
+		return abandonedWaits;
+	}
+	
+	/**
+	 * Return the fraction of the clients served who waited, after run().
+	 * @return the probability of waiting
+	 */
+	public double getWaitingProbability() {
+		return served > 0 ? (double) waited / served : 0d;
+	}
+	
+	/**
+	 * Return the fraction of the time the server was busy, after run().
+	 * @return the utilization
+	 */
+	public double getUtilization() {
+		return horizon > 0 ? serviceTimeSum / horizon : 0d;
+	}
+	
+	/**
+	 * Return the time average of the number of clients waiting, after run().
+	 * @return the mean number in queue
+	 */
+	public double getMeanNumberInQueue() {
+		double sum = servedWaits.getMean() * servedWaits.getCount() + abandonedWaits.getMean() * abandonedWaits.getCount();
+		return horizon > 0 ? sum / horizon : 0d;
+	}
+	
+	/**
+	 * Return the maximum number of clients waiting, after run().
+	 * @return the maximum number in queue
+	 */
+	public int getMaxNumberInQueue() {
+		return maxWaiting;
+	}
+	
+	/**
+	 * Return the fraction of the timers cancelled at the service start, after run().
+	 * @return the timers cancelled over the timers scheduled
+	 */
+	public double getCancelledTimers() {
+		return timersScheduled > 0 ? (double) (timersScheduled - getAbandoned()) / timersScheduled : 0d;
+	}
+	
+	/**
+	 * Return the time of the last event, after run().
+	 * @return the simulated time (min)
+	 */
+	public double getHorizon() {
+		return horizon;
+	}
+	
+	/** {@inheritDoc} */
+	public String toString() {
+		StringBuilder s = new StringBuilder(String.format("[ABANDONMENT] %d clients, %d served, %d abandoned", 
+				clientsNum, served, getAbandoned()));
+		s.append(String.format("%n 1- %-28s\t%.6g", "abandonment rate:", getAbandonmentRate()));
+		s.append(String.format("%n 2- %-28s\t%.6g", "waiting probability (served):", getWaitingProbability()));
+		s.append(String.format("%n 3- %-28s\t%.6g", "utilization:", getUtilization()));
+		s.append(String.format("%n 4- %-28s\t%.6g", "mean number in queue:", getMeanNumberInQueue()));
+		s.append(String.format("%n 5- %-28s\t%d", "max number in queue:", maxWaiting));
+		s.append(String.format("%n 6- %-28s\t%.6g", "timers cancelled:", getCancelledTimers()));
+		s.append(String.format("%n    %-12s\t%-14s\t%-14s\t%-14s\t%-14s\t%s", "wait", "mean", "p50", "p90", "p99", "max"));
+		appendWaits(s, "served", servedWaits);
+		appendWaits(s, "abandoned", abandonedWaits);
+		return s.toString();
+	}
+	
+	/** Append a row of waiting time statistics. */
+	private static void appendWaits(StringBuilder s, String name, QuantileSketch waits) {
+		if(waits.getCount() == 0) {
+			s.append(String.format("%n    %-12s\t%s", name, "-"));
+			return;
+		}
+		s.append(String.format("%n    %-12s\t%-14.6g\t%-14.6g\t%-14.6g\t%-14.6g\t%.6g", name, waits.getMean(), 
+				waits.quantile(0.5), waits.quantile(0.9), waits.quantile(0.99), waits.getMax()));
+	}
+
+}
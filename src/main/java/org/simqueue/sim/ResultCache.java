@@ -0,0 +1,311 @@
+package org.simqueue.sim;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.simqueue.exception.ExponentialException;
+import org.simqueue.exception.SimQueueException;
+import org.simqueue.exception.TriangularException;
+import org.simqueue.statistics.BasicStatistics;
+import org.simqueue.utils.FlightRecorderEvents;
+
+
+/**
+ * A cache of simulation results. Seeded scenarios are deterministic, so the 
+ * result of a scenario already simulated is returned without running it again.
+ * Results are kept in a size-bounded LRU memory tier and, optionally, in a 
+ * disk tier which survives restarts. Unseeded scenarios are never cached, 
+ * and only the statistics are cached: a history can be simulated again 
+ * from the seed by Scenario.createCursor().
+ * This class is thread-safe.
+ */
+public class ResultCache {
+
+	/** The header of the cache files. */
+	private static final int MAGIC = 0x53514331;
+	
+	/** 
+	 * The version of the cache files. It must be increased whenever their layout, or the 
+	 * statistics simulated for the same scenario (e.g. the sampling or the summation order), 
+	 * change: files of another version are misses, and are replaced.
+	 */
+	static final int VERSION = 2;
+	
+	/** The maximum size of the memory tier in bytes. */
+	private final long maxBytes;
+	
+	/** The directory of the disk tier, or null. */
+	private final File directory;
+	
+	/** The memory tier, in access order. */
+	private final LinkedHashMap<String, SimulationResult> memory = new LinkedHashMap<String, SimulationResult>(16, 0.75f, true);
+	
+	/** The current size of the memory tier in bytes. */
+	private long memoryBytes = 0L;
+	
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong uncached = new AtomicLong();
+	
+	/** 
+	 * Constructor.
+	 * 
+	 * @param maxBytes the maximum size of the memory tier in bytes
+	 * @param directory the directory of the disk tier, or null for a memory-only cache
+	 * @throws IOException if the directory cannot be created
+	 */
+	public ResultCache(long maxBytes, File directory) throws IOException {
+		this.maxBytes = maxBytes;
+		this.directory = directory;
+		if(directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create the cache directory " + directory);
+		}
+	}
+	
+	/**
+	 * Return the result of a scenario, simulating it only if it is not cached.
+	 * 
+	 * @param scenario the scenario
+	 * @return the result, without history
+	 * @throws SimQueueException if clients_num < 1. 
+	 * @throws ExponentialException if clients_per_hour <= 0. 
+	 * @throws TriangularException if not 0 <= most_common_service_time <= maximum_service_time.
+	 */
+	public SimulationResult run(Scenario scenario) 
+			throws SimQueueException, ExponentialException, TriangularException {
+		if(!scenario.isSeeded()) {
+			return runUncached(scenario);
+		}
+		String key = scenario.getKey();
+		SimulationResult result = getFromMemory(key);
+		if(result != null) {
+			memoryHits.incrementAndGet();
+			FlightRecorderEvents.cacheLookup(key, "memory");
+			return result;
+		}
+		result = readFromDisk(key);
+		if(result != null) {
+			diskHits.incrementAndGet();
+			FlightRecorderEvents.cacheLookup(key, "disk");
+			putInMemory(key, result);
+			return result;
+		}
+		misses.incrementAndGet();
+		FlightRecorderEvents.cacheLookup(key, "miss");
+		result = simulate(scenario);
+		putInMemory(key, result);
+		writeToDisk(key, result);
+		return result;
+	}
+	
+	/**
+	 * Return the result of a scenario, simulating it without looking it up 
+	 * or storing it in the cache (e.g. a scenario seeded only to replay its history).
+	 * 
+	 * @param scenario the scenario
+	 * @return the result, without history
+	 * @throws SimQueueException if clients_num < 1. 
+	 * @throws ExponentialException if clients_per_hour <= 0. 
+	 * @throws TriangularException if not 0 <= most_common_service_time <= maximum_service_time.
+	 */
+	public SimulationResult runUncached(Scenario scenario) 
+			throws SimQueueException, ExponentialException, TriangularException {
+		uncached.incrementAndGet();
+		FlightRecorderEvents.cacheLookup("", "uncached");
+		return simulate(scenario);
+	}
+	
+	/**
+	 * Run a scenario.
+	 * 
+	 * @param scenario the scenario
+	 * @return the result, without history
+	 */
+	private SimulationResult simulate(Scenario scenario) 
+			throws SimQueueException, ExponentialException, TriangularException {
+		SimQueue q = scenario.createSimQueue();
+		q.run();
+		return new SimulationResult(q.getStatistics(), null);
+	}
+	
+	/** Return a cached result from the memory tier, or null. */
+	private synchronized SimulationResult getFromMemory(String key) {
+		return memory.get(key);
+	}
+	
+	/** Add a result to the memory tier, evicting the least recently used results. */
+	private synchronized void putInMemory(String key, SimulationResult result) {
+		long size = result.getSizeInBytes();
+		if(size > maxBytes) {
+			return;
+		}
+		SimulationResult old = memory.put(key, result);
+		if(old != null) {
+			memoryBytes -= old.getSizeInBytes();
+		}
+		memoryBytes += size;
+		Iterator<Map.Entry<String, SimulationResult>> it = memory.entrySet().iterator();
+		while(memoryBytes > maxBytes && it.hasNext()) {
+			memoryBytes -= it.next().getValue().getSizeInBytes();
+			it.remove();
+		}
+	}
+	
+	/** Return the file of the disk tier for a key. */
+	private File getFile(String key) {
+		// FNV-1a hash of the key. Collisions are detected by reading the key stored in the file.
+		long hash = 0xcbf29ce484222325L;
+		for(int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return new File(directory, String.format("%016x.sqc", hash));
+	}
+	
+	/** Return a cached result from the disk tier, or null. */
+	private SimulationResult readFromDisk(String key) {
+		if(directory == null) {
+			return null;
+		}
+		File file = getFile(key);
+		if(!file.isFile()) {
+			return null;
+		}
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key)) {
+				return null;
+			}
+			return new SimulationResult(BasicStatistics.read(in), null);
+		} catch(IOException e) {
+			// a damaged file is treated as a miss, and replaced
+			return null;
+		}
+	}
+	
+	/** Write a result to the disk tier. */
+	private void writeToDisk(String key, SimulationResult result) {
+		if(directory == null) {
+			return;
+		}
+		File file = getFile(key);
+		File tmp = new File(directory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(key);
+			result.getStatistics().write(out);
+		} catch(IOException e) {
+			System.err.println("Warning: result not cached on disk: " + e.getMessage());
+			tmp.delete();
+			return;
+		}
+		// rename, so that readers never see a partial file
+		file.delete();
+		if(!tmp.renameTo(file)) {
+			tmp.delete();
+		}
+	}
+	
+	/** Remove all the results from the memory tier. */
+	public synchronized void clearMemory() {
+		memory.clear();
+		memoryBytes = 0L;
+	}
+	
+	/**
+	 * Return the number of results returned from the memory tier.
+	 * @return the number of memory hits
+	 */
+	public long getMemoryHits() {
+		return memoryHits.get();
+	}
+	
+	/**
+	 * Return the number of results returned from the disk tier.
+	 * @return the number of disk hits
+	 */
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+	
+	/**
+	 * Return the number of seeded scenarios which were simulated.
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * Return the number of unseeded scenarios, which are always simulated.
+	 * @return the number of uncached runs
+	 */
+	public long getUncached() {
+		return uncached.get();
+	}
+	
+	/**
+	 * Return the number of results in the memory tier.
+	 * @return the number of entries
+	 */
+	public synchronized int getMemoryEntries() {
+		return memory.size();
+	}
+	
+	/**
+	 * Return the size of the memory tier.
+	 * @return the size in bytes
+	 */
+	public synchronized long getMemoryBytes() {
+		return memoryBytes;
+	}
+	
+	/** 
+	 * Return the cache counters as a JSON object.
+	 * 
+	 * @return the JSON string
+	 */
+	public String toJson() {
+		return "{\"memory_hits\":" + getMemoryHits() + 
+				",\"disk_hits\":" + getDiskHits() + 
+				",\"misses\":" + getMisses() + 
+				",\"uncached\":" + getUncached() + 
+				",\"memory_entries\":" + getMemoryEntries() + 
+				",\"memory_bytes\":" + getMemoryBytes() + "}";
+	}
+
+}
@@ -0,0 +1,232 @@
+package org.simqueue.sim;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.simqueue.exception.ExponentialException;
+import org.simqueue.exception.TriangularException;
+import org.simqueue.random.ExponentialVariable;
+import org.simqueue.random.RandomVariable;
+import org.simqueue.random.SobolSequence;
+import org.simqueue.random.UniformSource;
+
+
+/**
+ * A comparison of randomized quasi-Monte Carlo (RQMC) and plain Monte Carlo 
+ * estimates of the steady-state statistics of a scenario.
+ * 
+ * Each estimate averages R replications of the scenario, simulated side by 
+ * side one client at a time. With Monte Carlo, the variables are sampled by 
+ * a pseudo-random generator. With RQMC (Array-RQMC, L'Ecuyer et al.), the 
+ * replications are sorted by their state, the workload left by the previous 
+ * client, and the i-th one in this order samples the variables by inversion 
+ * from the i-th point of R points of a scrambled Sobol sequence, scrambled 
+ * again for each client: so the replications are stratified at every step 
+ * and remain unbiased. The uniform source of the arrival and of the service 
+ * time can be chosen independently.
+ * 
+ * Each method repeats its estimate M times with independent randomizations, 
+ * and the variance of the M estimates measures its error. The variance ratio 
+ * is the factor of simulated clients saved by RQMC for the same precision.
+ */
+public class RqmcExperiment {
+
+	/** The estimators computed by each replication. */
+	public static final String[] ESTIMATORS = { "Mean arrive time", "Mean service time", "Mean waiting time" };
+	
+	/** The Sobol dimensions ordering the replications, and sampling the arrival and service times. */
+	private static final int ORDER_DIMENSION = 0, ARRIVAL_DIMENSION = 1, SERVICE_DIMENSION = 2;
+	
+	private final Scenario scenario;
+	private final int replications;
+	private final int randomizations;
+	private final UniformSource arrivalSource;
+	private final UniformSource serviceSource;
+	
+	/** The estimates of each method (0 Monte Carlo, 1 RQMC), estimator, and randomization. */
+	private final double[][][] estimates;
+	
+	/**
+	 * Constructor. Both variables are sampled from scrambled Sobol sequences by RQMC.
+	 * 
+	 * @param scenario the scenario
+	 * @param replications the number R of replications per estimate (a power of 2)
+	 * @param randomizations the number M of estimates per method (at least 2)
+	 */
+	public RqmcExperiment(Scenario scenario, int replications, int randomizations) {
+		this(scenario, replications, randomizations, UniformSource.SOBOL, UniformSource.SOBOL);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param scenario the scenario
+	 * @param replications the number R of replications per estimate (a power of 2)
+	 * @param randomizations the number M of estimates per method (at least 2)
+	 * @param arrivalSource the uniform source of the arrival time in the RQMC estimates
+	 * @param serviceSource the uniform source of the service time in the RQMC estimates
+	 */
+	public RqmcExperiment(Scenario scenario, int replications, int randomizations, 
+			UniformSource arrivalSource, UniformSource serviceSource) {
+		if(replications < 1 || Integer.bitCount(replications) != 1 || randomizations < 2) {
+			throw new IllegalArgumentException("The replications must be a power of 2 and the randomizations at least 2.");
+		}
+		this.scenario = scenario;
+		this.replications = replications;
+		this.randomizations = randomizations;
+		this.arrivalSource = arrivalSource;
+		this.serviceSource = serviceSource;
+		this.estimates = new double[2][ESTIMATORS.length][randomizations];
+	}
+	
+	/**
+	 * Run the estimates of both methods. If the scenario is seeded, 
+	 * the experiment is reproducible.
+	 * 
+	 * @throws ExponentialException if clients_per_hour <= 0. 
+	 * @throws TriangularException if not 0 <= most_common_service_time <= maximum_service_time.
+	 */
+	public void run() throws ExponentialException, TriangularException {
+		Random seeds = scenario.isSeeded() ? new Random(scenario.getSeed()) : new Random();
+		ExponentialVariable expVar = new ExponentialVariable(scenario.getLambda());
+		RandomVariable serviceVar = scenario.createServiceVariable();
+		for(int m = 0; m < randomizations; m++) {
+			estimate(expVar, serviceVar, UniformSource.PSEUDO_RANDOM, UniformSource.PSEUDO_RANDOM, seeds.nextLong(), 0, m);
+			estimate(expVar, serviceVar, arrivalSource, serviceSource, seeds.nextLong(), 1, m);
+		}
+	}
+	
+	/** Simulate the replications of an estimate and store it. */
+	private void estimate(ExponentialVariable expVar, RandomVariable serviceVar, UniformSource arrivals, 
+			UniformSource services, long seed, int method, int m) {
+		int r = replications;
+		int bits = Integer.numberOfTrailingZeros(r);
+		long mask = r - 1;
+		boolean sorted = arrivals == UniformSource.SOBOL || services == UniformSource.SOBOL;
+		Random rand = new Random(seed);
+		SobolSequence sobol = new SobolSequence(3, seed);
+		// the workload left by the previous client of each replication
+		double[] workload = new double[r];
+		long[] order = new long[r];
+		double[] arrivalU = new double[r], serviceU = new double[r];
+		double arrivalSum = 0d, serviceSum = 0d, waitingSum = 0d;
+		long n = scenario.getClientsNum();
+		for(long i = 0; i < n; i++) {
+			if(sorted) {
+				// the k-th point in the order of the first coordinate goes to the k-th replication
+				sobol.setSeed(rand.nextLong());
+				for(int j = 0; j < r; j++) {
+					int k = bits == 0 ? 0 : (int) ((sobol.getBits(j, ORDER_DIMENSION) & 0xFFFFFFFFL) >>> (32 - bits));
+					arrivalU[k] = arrivals == UniformSource.SOBOL ? sobol.get(j, ARRIVAL_DIMENSION) : rand.nextDouble();
+					serviceU[k] = services == UniformSource.SOBOL ? sobol.get(j, SERVICE_DIMENSION) : rand.nextDouble();
+				}
+				// sort the replications by workload, keeping their index in the lowest bits
+				for(int c = 0; c < r; c++) {
+					order[c] = (Double.doubleToRawLongBits(workload[c]) & ~mask) | c;
+				}
+				Arrays.sort(order);
+			} else {
+				for(int k = 0; k < r; k++) {
+					arrivalU[k] = rand.nextDouble();
+					serviceU[k] = rand.nextDouble();
+					order[k] = k;
+				}
+			}
+			for(int k = 0; k < r; k++) {
+				int c = (int) (order[k] & mask);
+				double waiting = 0d;
+				if(i > 0) {
+					// Lindley recursion: the client waits for the workload left when it arrives
+					double interArrival = expVar.quantile(arrivalU[k]);
+					arrivalSum += interArrival;
+					waiting = Math.max(0d, workload[c] - interArrival);
+				}
+				double service = serviceVar.quantile(serviceU[k]);
+				serviceSum += service;
+				waitingSum += waiting;
+				workload[c] = waiting + service;
+			}
+		}
+		estimates[method][0][m] = n > 1 ? arrivalSum / (r * (n - 1)) : 0d;
+		estimates[method][1][m] = serviceSum / (r * n);
+		estimates[method][2][m] = waitingSum / (r * n);
+	}
+	
+	/**
+	 * Return the mean of the estimates of a method.
+	 * 
+	 * @param rqmc true for RQMC, false for Monte Carlo
+	 * @param estimator the index of the estimator in ESTIMATORS
+	 * @return the mean
+	 */
+	public double getMean(boolean rqmc, int estimator) {
+		double sum = 0d;
+		for(double x : estimates[rqmc ? 1 : 0][estimator]) {
+			sum += x;
+		}
+		return sum / randomizations;
+	}
+	
+	/**
+	 * Return the variance of an estimate of a method (an average of R replications).
+	 * 
+	 * @param rqmc true for RQMC, false for Monte Carlo
+	 * @param estimator the index of the estimator in ESTIMATORS
+	 * @return the sample variance of the M estimates
+	 */
+	public double getVariance(boolean rqmc, int estimator) {
+		double mean = getMean(rqmc, estimator);
+		double sum = 0d;
+		for(double x : estimates[rqmc ? 1 : 0][estimator]) {
+			sum += (x - mean) * (x - mean);
+		}
+		return sum / (randomizations - 1);
+	}
+	
+	/**
+	 * Return the variance reduction of RQMC for an estimator.
+	 * 
+	 * @param estimator the index of the estimator in ESTIMATORS
+	 * @return the Monte Carlo variance divided by the RQMC variance
+	 */
+	public double getVarianceRatio(int estimator) {
+		return getVariance(false, estimator) / getVariance(true, estimator);
+	}
+	
+	/** {@inheritDoc} */
+	public String toString() {
+		StringBuilder s = new StringBuilder(String.format("[QUASI-MONTE CARLO] %d estimates of %d replications of %d clients", 
+				randomizations, replications, scenario.getClientsNum()));
+		s.append(String.format("%n    %-20s\t%-14s\t%-14s\t%-14s\t%-14s\t%s", "estimator", "mean (MC)", 
+				"var (MC)", "mean (RQMC)", "var (RQMC)", "variance ratio"));
+		for(int i = 0; i < ESTIMATORS.length; i++) {
+			s.append(String.format("%n %d- %-20s\t%-14.8g\t%-14.6g\t%-14.8g\t%-14.6g\t%.3g", i + 1, ESTIMATORS[i], 
+					getMean(false, i), getVariance(false, i), getMean(true, i), getVariance(true, i), getVarianceRatio(i)));
+		}
+		return s.toString();
+	}
+
+}
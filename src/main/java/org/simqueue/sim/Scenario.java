@@ -0,0 +1,730 @@
+package org.simqueue.sim;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.simqueue.exception.DistributionException;
+import org.simqueue.exception.ExponentialException;
+import org.simqueue.exception.ParameterException;
+import org.simqueue.exception.SimQueueException;
+import org.simqueue.exception.TriangularException;
+import org.simqueue.random.ErlangVariable;
+import org.simqueue.random.ExponentialVariable;
+import org.simqueue.random.GammaVariable;
+import org.simqueue.random.HyperexponentialVariable;
+import org.simqueue.random.LognormalVariable;
+import org.simqueue.random.RandomVariable;
+import org.simqueue.random.TabulatedVariable;
+import org.simqueue.random.TriangularVariable;
+import org.simqueue.random.WeibullVariable;
+
+
+/** 
+ * The parameters of a queue simulation, as read from a configuration file
+ * (e.g. parameters.txt) or from any other set of properties.
+ */
+public class Scenario {
+
+	/** The service distribution using most_common_service_time and maximum_service_time. */
+	public static final String TRIANGULAR = "triangular";
+
+	/** The number of clients. */
+	private long clientsNum = 0;
+	/** The clients arrival rate (clients per hour). */
+	private double clientsPerHour = 0.0d;
+	/** The mode of the service time (min). */
+	private double mostCommonServiceTime = 1.0d;
+	/** The maximum service time (min). */
+	private double maximumServiceTime = 2.0d;
+	/** The distribution of the service time. */
+	private String serviceDistribution = TRIANGULAR;
+	/** The parameters of a service distribution other than triangular. */
+	private double[] serviceParameters = new double[0];
+	/** The error bound of the tabulated service time sampler (0 if the service time is sampled directly). */
+	private double serviceTableError = 0.0d;
+	/** The distribution of the patience of the clients (null if they do not abandon). */
+	private String patienceDistribution = null;
+	/** The parameters of the patience distribution. */
+	private double[] patienceParameters = new double[0];
+	/** The seed of the simulation (null if not reproducible). */
+	private Long seed = null;
+	/** The way the history is stored. */
+	private SimQueue.HistoryMode historyMode = SimQueue.HistoryMode.FULL;
+	/** Whether the runs in FULL mode are pipelined on four threads. */
+	private boolean pipelined = false;
+	
+	/** 
+	 * Constructor.
+	 * 
+	 * @param clientsNum the number of clients
+	 * @param clientsPerHour the clients arrival rate (clients per hour)
+	 * @param mostCommonServiceTime the mode of the service time (min)
+	 * @param maximumServiceTime the maximum service time (min)
+	 */
+	public Scenario(long clientsNum, double clientsPerHour, double mostCommonServiceTime, double maximumServiceTime) {
+		this.clientsNum = clientsNum;
+		this.clientsPerHour = clientsPerHour;
+		this.mostCommonServiceTime = mostCommonServiceTime;
+		this.maximumServiceTime = maximumServiceTime;
+	}
+	
+	/** 
+	 * Constructor for a reproducible scenario.
+	 * 
+	 * @param clientsNum the number of clients
+	 * @param clientsPerHour the clients arrival rate (clients per hour)
+	 * @param mostCommonServiceTime the mode of the service time (min)
+	 * @param maximumServiceTime the maximum service time (min)
+	 * @param seed the seed, or null for a non-reproducible scenario
+	 */
+	public Scenario(long clientsNum, double clientsPerHour, double mostCommonServiceTime, double maximumServiceTime, Long seed) {
+		this(clientsNum, clientsPerHour, mostCommonServiceTime, maximumServiceTime);
+		this.seed = seed;
+	}
+	
+	/**
+	 * Read a scenario from a set of properties. The required properties are
+	 * clients_num, clients_per_hour, most_common_service_time, and maximum_service_time.
+	 * The optional property seed makes the scenario reproducible, and 
+	 * history_mode (full, compact, compact_float, or off_heap) sets how the history is stored.
+	 * Scenarios exceeding Integer.MAX_VALUE clients must use the off_heap mode.
+	 * The optional properties service_distribution and service_parameters replace the 
+	 * triangular service time (see setServiceDistribution()): most_common_service_time 
+	 * and maximum_service_time are then not required. The optional property service_table_error
+	 * samples the service time with a TabulatedVariable with that error bound.
+	 * 
+	 * @param prop the properties
+	 * @return the scenario
+	 * @throws ParameterException if a property is missing or is not a number
+	 */
+	public static Scenario fromProperties(Properties prop) throws ParameterException {
+		String distribution = prop.getProperty("service_distribution", TRIANGULAR).trim().toLowerCase();
+		boolean triangular = distribution.equals(TRIANGULAR);
+		Scenario scenario = new Scenario(
+				getInteger(prop, "clients_num"),
+				getNumber(prop, "clients_per_hour"),
+				triangular || prop.getProperty("most_common_service_time") != null 
+					? getNumber(prop, "most_common_service_time") : 1.0d,
+				triangular || prop.getProperty("maximum_service_time") != null 
+					? getNumber(prop, "maximum_service_time") : 2.0d,
+				getSeed(prop));
+		if(!triangular) {
+			try {
+				scenario.setServiceDistribution(distribution, getNumbers(prop, "service_parameters"));
+			} catch(DistributionException e) {
+				throw new ParameterException("`service_distribution`: " + e.getMessage());
+			}
+		}
+		String mode = prop.getProperty("history_mode");
+		if(mode != null) {
+			try {
+				scenario.setHistoryMode(SimQueue.HistoryMode.valueOf(mode.trim().toUpperCase()));
+			} catch(IllegalArgumentException e) {
+				throw new ParameterException("`history_mode` must be full, compact, compact_float, or off_heap.");
+			}
+		}
+		if(prop.getProperty("patience_distribution") != null) {
+			try {
+				scenario.setPatienceDistribution(prop.getProperty("patience_distribution"), 
+						getNumbers(prop, "patience_parameters"));
+			} catch(DistributionException e) {
+				throw new ParameterException("`patience_distribution`: " + e.getMessage());
+			}
+		}
+		scenario.setPipelined(Boolean.parseBoolean(prop.getProperty("pipelined", "false").trim()));
+		if(prop.getProperty("service_table_error") != null) {
+			double error = getNumber(prop, "service_table_error");
+			if(!(error >= 0 && error <= 0.01)) {
+				throw new ParameterException("`service_table_error` must be between 0 and 0.01.");
+			}
+			scenario.setServiceTableError(error);
+		}
+		if(scenario.clientsNum > Integer.MAX_VALUE && scenario.historyMode != SimQueue.HistoryMode.OFF_HEAP) {
+			throw new ParameterException("`clients_num` exceeds " + Integer.MAX_VALUE + ": use history_mode=off_heap.");
+		}
+		return scenario;
+	}
+	
+	/**
+	 * Return the optional seed property.
+	 * 
+	 * @param prop the properties
+	 * @return the seed, or null if missing
+	 * @throws ParameterException if the seed is not an integer
+	 */
+	private static Long getSeed(Properties prop) throws ParameterException {
+		String value = prop.getProperty("seed");
+		if(value == null) {
+			return null;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch(NumberFormatException e) {
+			throw new ParameterException("`seed` must be an integer.");
+		}
+	}
+	
+	/**
+	 * Return a required integer property.
+	 * 
+	 * @param prop the properties
+	 * @param key the property name
+	 * @return the property value
+	 * @throws ParameterException if the property is missing or is not an integer
+	 */
+	private static long getInteger(Properties prop, String key) throws ParameterException {
+		String value = prop.getProperty(key);
+		if(value == null) {
+			throw new ParameterException("`" + key + "` not found in configuration file.");
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch(NumberFormatException e) {
+			throw new ParameterException("`" + key + "` must be an integer.");
+		}
+	}
+	
+	/**
+	 * Return a required numeric property.
+	 * 
+	 * @param prop the properties
+	 * @param key the property name
+	 * @return the property value
+	 * @throws ParameterException if the property is missing or is not a number
+	 */
+	private static double getNumber(Properties prop, String key) throws ParameterException {
+		String value = prop.getProperty(key);
+		if(value == null) {
+			throw new ParameterException("`" + key + "` not found in configuration file.");
+		}
+		try {
+			return Double.parseDouble(value.trim());
+		} catch(NumberFormatException e) {
+			throw new ParameterException("`" + key + "` must be a number.");
+		}
+	}
+	
+	/**
+	 * Return a required property made of comma separated numbers.
+	 * 
+	 * @param prop the properties
+	 * @param key the property name
+	 * @return the property values
+	 * @throws ParameterException if the property is missing or is not a list of numbers
+	 */
+	private static double[] getNumbers(Properties prop, String key) throws ParameterException {
+		String value = prop.getProperty(key);
+		if(value == null) {
+			throw new ParameterException("`" + key + "` not found in configuration file.");
+		}
+		String[] tokens = value.split(",");
+		double[] numbers = new double[tokens.length];
+		try {
+			for(int i = 0; i < tokens.length; i++) {
+				numbers[i] = Double.parseDouble(tokens[i].trim());
+			}
+		} catch(NumberFormatException e) {
+			throw new ParameterException("`" + key + "` must be a list of comma separated numbers.");
+		}
+		return numbers;
+	}
+	
+	/**
+	 * Set the distribution of the service time. The parameters are, in order:
+	 * lognormal: mu, sigma (of the logarithm of the service time);
+	 * weibull: shape, scale;
+	 * gamma: shape, scale;
+	 * erlang: phases, rate of each phase;
+	 * hyperexponential: probability and rate of each phase (p1, rate1, p2, rate2, ...).
+	 * The triangular distribution takes no parameter, as it uses 
+	 * most_common_service_time and maximum_service_time.
+	 * 
+	 * @param distribution the name of the distribution
+	 * @param parameters the parameters of the distribution
+	 * @throws DistributionException if the distribution is unknown or the parameters are not valid
+	 */
+	public void setServiceDistribution(String distribution, double... parameters) throws DistributionException {
+		String name = distribution.trim().toLowerCase();
+		if(!name.equals(TRIANGULAR)) {
+			// validate the parameters now, so that creating the variable cannot fail
+			createVariable(name, parameters);
+		}
+		this.serviceDistribution = name;
+		this.serviceParameters = name.equals(TRIANGULAR) ? new double[0] : parameters.clone();
+	}
+	
+	/**
+	 * Set the distribution of the patience of the clients, the longest time 
+	 * they wait before abandoning. It takes the distributions and the parameters 
+	 * of setServiceDistribution(), and exponential with the rate (per minute).
+	 * 
+	 * @param distribution the name of the distribution
+	 * @param parameters the parameters of the distribution
+	 * @throws DistributionException if the distribution is unknown or the parameters are not valid
+	 */
+	public void setPatienceDistribution(String distribution, double... parameters) throws DistributionException {
+		String name = distribution.trim().toLowerCase();
+		// validate the parameters now, so that creating the variable cannot fail
+		createPatienceVariable(name, parameters);
+		this.patienceDistribution = name;
+		this.patienceParameters = parameters.clone();
+	}
+	
+	/**
+	 * Create a patience variable.
+	 * 
+	 * @param name the name of the distribution
+	 * @param p the parameters of the distribution
+	 * @return the variable
+	 * @throws DistributionException if the distribution is unknown or the parameters are not valid
+	 */
+	private RandomVariable createPatienceVariable(String name, double[] p) throws DistributionException {
+		if(name.equals("exponential")) {
+			if(p.length != 1) {
+				throw new DistributionException("Distribution exponential needs 1 parameter .");
+			}
+			try {
+				return new ExponentialVariable(p[0]);
+			} catch(ExponentialException e) {
+				throw new DistributionException("The exponential rate must be positive .");
+			}
+		}
+		if(name.equals(TRIANGULAR)) {
+			if(p.length != 2) {
+				throw new DistributionException("Distribution triangular needs 2 parameters .");
+			}
+			try {
+				return new TriangularVariable(0.0d, p[0], p[1]);
+			} catch(TriangularException e) {
+				throw new DistributionException("The triangular parameters must be 0 <= mode <= maximum .");
+			}
+		}
+		return createVariable(name, p);
+	}
+	
+	/** 
+	 * Create the variable of the patience of this scenario (not seeded).
+	 * 
+	 * @return the variable, or null if the clients do not abandon
+	 */
+	public RandomVariable createPatienceVariable() {
+		if(patienceDistribution == null) {
+			return null;
+		}
+		try {
+			return createPatienceVariable(patienceDistribution, patienceParameters);
+		} catch(DistributionException e) {
+			// the parameters were validated by setPatienceDistribution()
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Create a service variable other than triangular.
+	 * 
+	 * @param name the name of the distribution
+	 * @param p the parameters of the distribution
+	 * @return the variable
+	 * @throws DistributionException if the distribution is unknown or the parameters are not valid
+	 */
+	private static RandomVariable createVariable(String name, double[] p) throws DistributionException {
+		int expected = name.equals("hyperexponential") ? p.length - p.length % 2 : 2;
+		if(p.length != expected || p.length == 0) {
+			throw new DistributionException("Distribution " + name + " needs " 
+					+ (name.equals("hyperexponential") ? "pairs of parameters" : "2 parameters") + " .");
+		}
+		if(name.equals("lognormal")) {
+			return new LognormalVariable(p[0], p[1]);
+		} else if(name.equals("weibull")) {
+			return new WeibullVariable(p[0], p[1]);
+		} else if(name.equals("gamma")) {
+			return new GammaVariable(p[0], p[1]);
+		} else if(name.equals("erlang")) {
+			if(p[0] != Math.rint(p[0]) || p[0] > Integer.MAX_VALUE) {
+				throw new DistributionException("Erlang phases must be an integer .");
+			}
+			return new ErlangVariable((int) p[0], p[1]);
+		} else if(name.equals("hyperexponential")) {
+			double[] probabilities = new double[p.length / 2];
+			double[] rates = new double[p.length / 2];
+			for(int i = 0; i < probabilities.length; i++) {
+				probabilities[i] = p[2 * i];
+				rates[i] = p[2 * i + 1];
+			}
+			return new HyperexponentialVariable(probabilities, rates);
+		}
+		throw new DistributionException("Distribution must be triangular, lognormal, weibull, gamma, erlang, or hyperexponential .");
+	}
+	
+	/** 
+	 * Create the variable of the service time of this scenario (not seeded).
+	 * 
+	 * @return the variable
+	 * @throws TriangularException if not 0 <= most_common_service_time <= maximum_service_time.
+	 */
+	public RandomVariable createServiceVariable() throws TriangularException {
+		RandomVariable serviceVar;
+		if(serviceDistribution.equals(TRIANGULAR)) {
+			serviceVar = new TriangularVariable(0.0d, mostCommonServiceTime, maximumServiceTime);
+		} else {
+			try {
+				serviceVar = createVariable(serviceDistribution, serviceParameters);
+			} catch(DistributionException e) {
+				// the parameters were validated by setServiceDistribution()
+				throw new IllegalStateException(e);
+			}
+		}
+		if(serviceTableError > 0) {
+			return new TabulatedVariable(serviceVar, serviceTableError);
+		}
+		return serviceVar;
+	}
+	
+	/** 
+	 * Create the queue simulation for this scenario.
+	 * 
+	 * @return the queue, ready to run
+	 * @throws SimQueueException if clients_num < 1. 
+	 * @throws ExponentialException if clients_per_hour <= 0. 
+	 * @throws TriangularException if not 0 <= most_common_service_time <= maximum_service_time.
+	 */
+	public SimQueue createSimQueue() throws SimQueueException, ExponentialException, TriangularException {
+		SimQueue q;
+		if(historyMode == SimQueue.HistoryMode.OFF_HEAP) {
+			q = new SimQueue(clientsNum, getLambda(), 0.0d, mostCommonServiceTime, maximumServiceTime, null);
+		} else {
+			if(clientsNum > Integer.MAX_VALUE) {
+				throw new SimQueueException();
+			}
+			q = new SimQueue((int) clientsNum, getLambda(), 0.0d, mostCommonServiceTime, maximumServiceTime);
+			if(historyMode != SimQueue.HistoryMode.FULL) {
+				q.setHistoryMode(historyMode);
+			}
+		}
+		if(!serviceDistribution.equals(TRIANGULAR) || serviceTableError > 0) {
+			q.setServiceVariable(createServiceVariable());
+		}
+		q.setSeed(seed);
+		q.setPipelined(pipelined);
+		return q;
+	}
+	
+	/** 
+	 * Return a queue simulation for this scenario, reusing a queue of a previous 
+	 * scenario with the same history mode: its history buffers are kept if they 
+	 * have the size required, and its exponential and triangular variables are 
+	 * reconfigured, so that a long-lived process running many scenarios of the 
+	 * same size allocates nothing for each of them.
+	 * 
+	 * @param previous the queue of a previous scenario, or null
+	 * @return the queue, ready to run: previous if it was reused
+	 * @throws SimQueueException if clients_num < 1. 
+	 * @throws ExponentialException if clients_per_hour <= 0. 
+	 * @throws TriangularException if not 0 <= most_common_service_time <= maximum_service_time.
+	 */
+	public SimQueue createSimQueue(SimQueue previous) throws SimQueueException, ExponentialException, TriangularException {
+		if(previous == null || previous.getHistoryMode() != historyMode || historyMode == SimQueue.HistoryMode.OFF_HEAP
+				|| clientsNum > Integer.MAX_VALUE) {
+			return createSimQueue();
+		}
+		previous.setClientsNum(clientsNum);
+		previous.setExponentialVariable(getLambda());
+		if(serviceDistribution.equals(TRIANGULAR) && serviceTableError == 0) {
+			previous.setTriangularVariable(0.0d, mostCommonServiceTime, maximumServiceTime);
+		} else {
+			previous.setServiceVariable(createServiceVariable());
+		}
+		previous.setSeed(seed);
+		previous.setPipelined(pipelined);
+		return previous;
+	}
+	
+	/** 
+	 * Create a lazy simulation of this scenario, which does not store 
+	 * the history whatever the history mode.
+	 * 
+	 * @return the cursor, before the first client
+	 * @throws SimQueueException if clients_num < 1. 
+	 * @throws ExponentialException if clients_per_hour <= 0. 
+	 * @throws TriangularException if not 0 <= most_common_service_time <= maximum_service_time.
+	 */
+	public ClientCursor createCursor() throws SimQueueException, ExponentialException, TriangularException {
+		if(clientsNum < 1) {
+			throw new SimQueueException();
+		}
+		ExponentialVariable expVar = new ExponentialVariable(getLambda());
+		RandomVariable serviceVar = createServiceVariable();
+		if(seed != null) {
+			expVar.setSeed(seed);
+			serviceVar.setSeed(SimQueue.serviceSeed(seed));
+		}
+		return new ClientCursor(expVar, serviceVar, clientsNum);
+	}
+	
+	/** 
+	 * Create a simulation of K queues of this scenario behind a dispatcher: 
+	 * clients_per_hour is the arrival rate of all the clients, and each 
+	 * queue has the service time of the scenario.
+	 * 
+	 * @param queues the number K of queues
+	 * @param policy the dispatching policy
+	 * @return the dispatcher
+	 * @throws ExponentialException if clients_per_hour <= 0. 
+	 * @throws TriangularException if not 0 <= most_common_service_time <= maximum_service_time.
+	 */
+	public MultiQueueDispatcher createDispatcher(int queues, MultiQueueDispatcher.Policy policy) 
+			throws ExponentialException, TriangularException {
+		MultiQueueDispatcher dispatcher = new MultiQueueDispatcher(queues, policy, 
+				new ExponentialVariable(getLambda()), createServiceVariable());
+		if(seed != null) {
+			dispatcher.setSeed(seed);
+		}
+		return dispatcher;
+	}
+	
+	/** 
+	 * Create a simulation of this scenario in which the clients abandon the 
+	 * queue when their waiting time exceeds their patience.
+	 * 
+	 * @return the queue
+	 * @throws ExponentialException if clients_per_hour <= 0. 
+	 * @throws TriangularException if not 0 <= most_common_service_time <= maximum_service_time.
+	 * @throws IllegalStateException if the patience distribution is not set.
+	 */
+	public RenegingQueue createRenegingQueue() throws ExponentialException, TriangularException {
+		if(patienceDistribution == null) {
+			throw new IllegalStateException("The patience distribution is not set.");
+		}
+		RenegingQueue queue = new RenegingQueue(new ExponentialVariable(getLambda()), createServiceVariable(), 
+				createPatienceVariable());
+		if(seed != null) {
+			queue.setSeed(seed);
+		}
+		return queue;
+	}
+	
+	/** 
+	 * Create an importance sampling estimator of the waiting time tail 
+	 * probabilities of this scenario.
+	 * 
+	 * @return the estimator
+	 * @throws ExponentialException if clients_per_hour <= 0. 
+	 * @throws TriangularException if not 0 <= most_common_service_time <= maximum_service_time.
+	 * @throws IllegalArgumentException if the queue is not stable or the service time is not triangular.
+	 */
+	public RareEventEstimator createRareEventEstimator() throws ExponentialException, TriangularException {
+		if(!serviceDistribution.equals(TRIANGULAR)) {
+			throw new IllegalArgumentException("The tail estimate requires a triangular service time.");
+		}
+		RareEventEstimator estimator = new RareEventEstimator(new ExponentialVariable(getLambda()), 
+				new TriangularVariable(0.0d, mostCommonServiceTime, maximumServiceTime));
+		if(seed != null) {
+			estimator.setSeed(seed);
+		}
+		return estimator;
+	}
+	
+	/**
+	 * Return the number of clients.
+	 * @return clients_num
+	 */
+	public long getClientsNum() {
+		return clientsNum;
+	}
+
+	/**
+	 * Return the clients arrival rate.
+	 * @return clients_per_hour
+	 */
+	public double getClientsPerHour() {
+		return clientsPerHour;
+	}
+	
+	/**
+	 * Return the lambda parameter of the exponential arrival time (clients per minute).
+	 * @return lambda
+	 */
+	public double getLambda() {
+		return clientsPerHour / 60.0d;
+	}
+
+	/**
+	 * Return the mode of the service time.
+	 * @return most_common_service_time
+	 */
+	public double getMostCommonServiceTime() {
+		return mostCommonServiceTime;
+	}
+
+	/**
+	 * Return the maximum service time.
+	 * @return maximum_service_time
+	 */
+	public double getMaximumServiceTime() {
+		return maximumServiceTime;
+	}
+	
+	/**
+	 * Return the distribution of the service time.
+	 * @return the distribution name, e.g. triangular
+	 */
+	public String getServiceDistribution() {
+		return serviceDistribution;
+	}
+	
+	/**
+	 * Return the parameters of the service distribution.
+	 * @return the parameters (empty for the triangular distribution)
+	 */
+	public double[] getServiceParameters() {
+		return serviceParameters.clone();
+	}
+	
+	/**
+	 * Return the distribution of the patience of the clients.
+	 * @return the distribution name, or null if the clients do not abandon
+	 */
+	public String getPatienceDistribution() {
+		return patienceDistribution;
+	}
+	
+	/**
+	 * Set the error bound of the tabulated service time sampler.
+	 * @param serviceTableError the bound on the probability scale, in (0,0.01], or 0 to sample the service time directly
+	 */
+	public void setServiceTableError(double serviceTableError) {
+		this.serviceTableError = serviceTableError;
+	}
+	
+	/**
+	 * Return the error bound of the tabulated service time sampler.
+	 * @return service_table_error, 0 if the service time is sampled directly
+	 */
+	public double getServiceTableError() {
+		return serviceTableError;
+	}
+	
+	/**
+	 * Return the seed of the simulation.
+	 * @return seed, or null if the scenario is not reproducible
+	 */
+	public Long getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * Set the seed of the simulation.
+	 * @param seed the seed, or null for a non-reproducible scenario
+	 */
+	public void setSeed(Long seed) {
+		this.seed = seed;
+	}
+	
+	/**
+	 * Set the way the history is stored.
+	 * @param historyMode the history mode
+	 */
+	public void setHistoryMode(SimQueue.HistoryMode historyMode) {
+		this.historyMode = historyMode;
+	}
+	
+	/**
+	 * Return the way the history is stored.
+	 * @return the history mode
+	 */
+	public SimQueue.HistoryMode getHistoryMode() {
+		return historyMode;
+	}
+	
+	/**
+	 * Set whether the runs in FULL mode are pipelined (see SimQueue.setPipelined()).
+	 * @param pipelined true to pipeline the runs
+	 */
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+	
+	/**
+	 * Return whether the runs in FULL mode are pipelined.
+	 * @return true if the runs are pipelined
+	 */
+	public boolean isPipelined() {
+		return pipelined;
+	}
+	
+	/**
+	 * Return whether the scenario is reproducible, i.e. it has a seed.
+	 * @return true if the scenario is seeded
+	 */
+	public boolean isSeeded() {
+		return seed != null;
+	}
+	
+	/**
+	 * Return a key identifying this scenario. Two seeded scenarios 
+	 * with the same key produce the same simulation.
+	 * 
+	 * @return the key
+	 */
+	public String getKey() {
+		return clientsNum + "|" + clientsPerHour + "|" + mostCommonServiceTime + "|" + maximumServiceTime + "|" + seed + "|" + historyMode
+				+ (serviceDistribution.equals(TRIANGULAR) ? "" : "|" + serviceDistribution + Arrays.toString(serviceParameters))
+				+ (serviceTableError > 0 ? "|" + serviceTableError : "");
+	}
+	
+	/** Return the values separated by commas. */
+	private static String join(double[] values) {
+		StringBuilder s = new StringBuilder();
+		for(int i = 0; i < values.length; i++) {
+			s.append(i == 0 ? "" : ",").append(values[i]);
+		}
+		return s.toString();
+	}
+	
+	/** {@inheritDoc} */
+	public boolean equals(Object o) {
+		return o instanceof Scenario && getKey().equals(((Scenario) o).getKey());
+	}
+	
+	/** {@inheritDoc} */
+	public int hashCode() {
+		return getKey().hashCode();
+	}
+	
+	/** {@inheritDoc} */
+	public String toString() {
+		return "clients_num=" + clientsNum + 
+				"\nclients_per_hour=" + clientsPerHour + 
+				"\nmost_common_service_time=" + mostCommonServiceTime + 
+				"\nmaximum_service_time=" + maximumServiceTime + 
+				(serviceDistribution.equals(TRIANGULAR) ? "" : "\nservice_distribution=" + serviceDistribution 
+						+ "\nservice_parameters=" + join(serviceParameters)) + 
+				(serviceTableError > 0 ? "\nservice_table_error=" + serviceTableError : "") + 
+				(seed != null ? "\nseed=" + seed : "") + 
+				"\nhistory_mode=" + historyMode.name().toLowerCase();
+	}
+
+}
@@ -23,12 +23,31 @@ package org.simqueue.sim;
  * SOFTWARE.
 */
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.DoubleStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 import org.simqueue.exception.ExponentialException;
 import org.simqueue.exception.SimQueueException;
 import org.simqueue.exception.TriangularException;
 import org.simqueue.random.ExponentialVariable;
+import org.simqueue.random.RandomVariable;
 import org.simqueue.random.TriangularVariable;
 import org.simqueue.statistics.BasicStatistics;
+import org.simqueue.statistics.OccupancyStatistics;
+import org.simqueue.utils.FlightRecorderEvents;
+import org.simqueue.utils.Instrumentation;
+import org.simqueue.utils.Instrumentation.Phase;
+import org.simqueue.utils.NamedThreadFactory;
+import org.simqueue.utils.SpscRing;
 
 
 /** 
@@ -43,18 +62,75 @@ import org.simqueue.statistics.BasicStatistics;
  */
 public class SimQueue {
 
-	/** The history of stochastic queue events. */ 
+    /** The ways the history of a queue can be stored. */
+    public enum HistoryMode {
+    	/** Arrival, serving, and leaving times: three doubles per client. */
+    	FULL,
+    	/** Inter-arrival and service durations: two doubles per client. */
+    	COMPACT,
+    	/** Inter-arrival and service durations: two floats per client. */
+    	COMPACT_FLOAT,
+    	/** Arrival, serving, and leaving times outside the Java heap, indexed by long. */
+    	OFF_HEAP
+    }
+
+	/** The history of stochastic queue events (FULL mode only). */ 
     private double[][] queue;
     
-    /** Exponential stochastic variable simulating the client arrival time. */
-    protected ExponentialVariable expVar = null;
+    /** The number of clients. */
+    private long n;
+    
+    /** The way the history is stored. */
+    private HistoryMode historyMode = HistoryMode.FULL;
+    
+    /** The inter-arrival and service durations (COMPACT mode only). */
+    private double[] interArrivals, services;
+    
+    /** The inter-arrival and service durations (COMPACT_FLOAT mode only). */
+    private float[] interArrivalsF, servicesF;
+    
+    /** The history stored outside the Java heap (OFF_HEAP mode only). */
+    private OffHeapHistory offHeap = null;
+    
+    /** The times derived from the durations in the compact modes, computed on demand. */
+    private double[][] views = null;
+    
+    /** Stochastic variable simulating the client inter-arrival time (exponential by default). */
+    protected RandomVariable arrivalVar = null;
 
-    /** Triangular stochastic variable simulating the client service time. */
-    protected TriangularVariable triVar = null;      
+    /** Stochastic variable simulating the client service time (triangular by default). */
+    protected RandomVariable serviceVar = null;      
     
     /** Statistics for this queue */
     protected BasicStatistics stats = new BasicStatistics();
     
+    /** Time-weighted statistics of the number of clients in this queue */
+    protected OccupancyStatistics occupancy = new OccupancyStatistics();
+    
+    /** The mean waiting time of the last run. */
+    protected double meanWaitingTime = 0d;
+    
+    /** The IPA derivatives of the mean waiting time with respect to the service and the arrival rate. */
+    protected double serviceRateDerivative = 0d, arrivalRateDerivative = 0d;
+    
+    /** The seed of the stochastic variables (null if the run is not reproducible). */
+    protected Long seed = null;
+    
+    /** Optional phase timing and progress instrumentation (null if disabled). */
+    protected Instrumentation instrumentation = null;
+    
+    /** The clients per block of the pipelined mode. */
+    private static final int PIPELINE_BLOCK = 1 << 13;
+    
+    /** The blocks in flight between two stages of the pipelined mode. */
+    private static final int PIPELINE_SLOTS = 8;
+    
+    /** Whether run() pipelines the sampling, the recursion, and the statistics (FULL mode only). */
+    private boolean pipelined = false;
+    
+    /** The rings between the stages of the pipelined mode, allocated by its first run. */
+    private SpscRing arrivalRing = null, serviceRing = null, statisticsRing = null;
+    
     
     /** 
      * Constructor. Build a queue of size queueLength.
@@ -64,10 +140,11 @@ public class SimQueue {
      */
     public SimQueue(int queueLength) throws SimQueueException{
         if( queueLength > 0 ) {
+            n = queueLength;
             queue = new double[3][queueLength];
             try {
-            	expVar = new ExponentialVariable(1);
-            	triVar = new TriangularVariable(0, 1, 2);
+            	arrivalVar = new ExponentialVariable(1);
+            	serviceVar = new TriangularVariable(0, 1, 2);
             } catch(ExponentialException e) { 
             	// we won't ever reach this
             } catch(TriangularException e) { 
@@ -92,25 +169,60 @@ public class SimQueue {
     public SimQueue(int queueLength, double lambda, double a, double m, double b) 
     		throws SimQueueException, ExponentialException, TriangularException {
         if( queueLength > 0 ) {
+            n = queueLength;
             queue = new double[3][queueLength];
-            expVar = new ExponentialVariable(lambda);
-            triVar = new TriangularVariable(a, m, b);
+            arrivalVar = new ExponentialVariable(lambda);
+            serviceVar = new TriangularVariable(a, m, b);
+        } else
+            throw new SimQueueException();
+    }
+    
+    /** 
+     * Constructor. Build a queue of clientsNum clients whose history is stored 
+     * outside the Java heap, so that clientsNum can exceed Integer.MAX_VALUE.
+     * Use the long-indexed getters to read the history.
+     * 
+     * @param clientsNum the number of clients
+     * @param lambda the lambda parameter
+     * @param a the a parameter (min)
+     * @param m the m parameter (mode)
+     * @param b the b parameter (max)
+     * @param history the off-heap history, whose size must be clientsNum, or null to allocate it in direct memory
+     * @throws QueueSimulationException if clientsNum < 1. 
+     * @throws ExponentialException if expLambda < 0. 
+     * @throws TriangularException if not a <= m <= b or not a < b.
+     */
+    public SimQueue(long clientsNum, double lambda, double a, double m, double b, OffHeapHistory history) 
+    		throws SimQueueException, ExponentialException, TriangularException {
+        if( clientsNum > 0 && (history == null || history.size() == clientsNum) ) {
+            n = clientsNum;
+            historyMode = HistoryMode.OFF_HEAP;
+            offHeap = history != null ? history : new OffHeapHistory(clientsNum);
+            arrivalVar = new ExponentialVariable(lambda);
+            serviceVar = new TriangularVariable(a, m, b);
         } else
             throw new SimQueueException();
     }
     
     /** 
      * Set the exponential stochastic variable simulating the client arrival time. 
+     * If the arrival time is already exponential, its variable is reconfigured.
      * 
      * @param lambda the lambda parameter
      * @throws ExponentialException if lambda < 0. 
      */
     public void setExponentialVariable(double lambda) throws ExponentialException {
-    	expVar = new ExponentialVariable(lambda);
+    	if(arrivalVar != null && arrivalVar.getClass() == ExponentialVariable.class) {
+    		((ExponentialVariable) arrivalVar).setLambda(lambda);
+    	} else {
+    		arrivalVar = new ExponentialVariable(lambda);
+    	}
+    	applySeed();
     }
     
     /** 
      * Set the triangular stochastic variable simulating the client service time. 
+     * If the service time is already triangular, its variable is reconfigured.
      * 
      * @param a the a parameter (min)
      * @param m the m parameter (mode)
@@ -118,12 +230,252 @@ public class SimQueue {
      * @throws TriangularException if not a <= m <= b or not a < b.
      */
     public void setTriangularVariable(double a, double m, double b) throws TriangularException {
-    	triVar = new TriangularVariable(a, m, b);
+    	if(serviceVar != null && serviceVar.getClass() == TriangularVariable.class) {
+    		((TriangularVariable) serviceVar).setParameters(a, m, b);
+    	} else {
+    		serviceVar = new TriangularVariable(a, m, b);
+    	}
+    	applySeed();
+    }
+    
+    /** 
+     * Set the stochastic variable simulating the client inter-arrival time. 
+     * 
+     * @param arrivalVar the variable, e.g. an ExponentialVariable for a Poisson arrival process
+     */
+    public void setArrivalVariable(RandomVariable arrivalVar) {
+    	this.arrivalVar = arrivalVar;
+    	applySeed();
     }
     
-    /** Return the queue of simulated events */
+    /** 
+     * Set the stochastic variable simulating the client service time. 
+     * 
+     * @param serviceVar the variable, e.g. a LognormalVariable for heavy-tailed service times
+     */
+    public void setServiceVariable(RandomVariable serviceVar) {
+    	this.serviceVar = serviceVar;
+    	applySeed();
+    }
+    
+    /** 
+     * Return the stochastic variable simulating the client inter-arrival time. 
+     * 
+     * @return the variable
+     */
+    public RandomVariable getArrivalVariable() {
+    	return arrivalVar;
+    }
+    
+    /** 
+     * Return the stochastic variable simulating the client service time. 
+     * 
+     * @return the variable
+     */
+    public RandomVariable getServiceVariable() {
+    	return serviceVar;
+    }
+    
+    /**
+     * Set the seed of the stochastic variables. The variables are re-seeded 
+     * at the beginning of each run, so that runs with the same parameters 
+     * and seed produce the same history.
+     * 
+     * @param seed the seed, or null for a non-reproducible run
+     */
+    public void setSeed(Long seed) {
+    	this.seed = seed;
+    	applySeed();
+    }
+    
+    /**
+     * Return the seed of the stochastic variables.
+     * 
+     * @return the seed, or null if the run is not reproducible
+     */
+    public Long getSeed() {
+    	return seed;
+    }
+    
+    /** 
+     * Seed the stochastic variables. Arrival and service times use 
+     * two different streams derived from the same seed.
+     */
+    protected void applySeed() {
+    	if(seed != null) {
+    		arrivalVar.setSeed(seed);
+    		serviceVar.setSeed(serviceSeed(seed));
+    	}
+    }
+    
+    /**
+     * Return the seed of the service times derived from the seed of a queue.
+     * 
+     * @param seed the seed of the queue
+     * @return the seed of the service variable
+     */
+    static long serviceSeed(long seed) {
+    	return seed * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L;
+    }
+    
+    /**
+     * Set the number of clients. The history buffers are kept if they already 
+     * have this size, otherwise they are allocated again in the same history mode.
+     * 
+     * @param clientsNum the number of clients
+     * @throws SimQueueException if clientsNum < 1. 
+     * @throws IllegalArgumentException if the queue exceeds Integer.MAX_VALUE clients 
+     *         and the mode is not OFF_HEAP
+     */
+    public void setClientsNum(long clientsNum) throws SimQueueException {
+    	if(clientsNum < 1) {
+    		throw new SimQueueException();
+    	}
+    	if(clientsNum == n) {
+    		return;
+    	}
+    	if(historyMode != HistoryMode.OFF_HEAP && clientsNum > Integer.MAX_VALUE) {
+    		throw new IllegalArgumentException("Queues longer than " + Integer.MAX_VALUE + " clients need the OFF_HEAP mode.");
+    	}
+    	n = clientsNum;
+    	setHistoryMode(historyMode);
+    }
+    
+    /**
+     * Prepare this queue for another run without allocating: the statistics 
+     * are cleared and the stochastic variables are re-seeded. run() does it 
+     * too, so this is only needed to discard the results of a run early.
+     */
+    public void reset() {
+    	applySeed();
+    	views = null;
+    	stats.reset();
+    	occupancy.reset();
+    	meanWaitingTime = 0d;
+    	serviceRateDerivative = 0d;
+    	arrivalRateDerivative = 0d;
+    }
+    
+    /**
+     * Set the way the history is stored. The compact modes store only the 
+     * inter-arrival and service durations, as doubles (2/3 of the memory) or 
+     * floats (1/3 of the memory). Arrival, serving, and leaving times are then 
+     * derived on demand and cached until the next run. The OFF_HEAP mode 
+     * stores the history in direct memory.
+     * The stored history is discarded.
+     * 
+     * @param mode the history mode
+     * @throws IllegalArgumentException if the queue exceeds Integer.MAX_VALUE clients 
+     *         and the mode is not OFF_HEAP
+     */
+    public void setHistoryMode(HistoryMode mode) {
+    	if(mode != HistoryMode.OFF_HEAP && n > Integer.MAX_VALUE) {
+    		throw new IllegalArgumentException("Queues longer than " + Integer.MAX_VALUE + " clients need the OFF_HEAP mode.");
+    	}
+    	int n = (int) Math.min(this.n, Integer.MAX_VALUE);
+    	historyMode = mode;
+    	releaseOffHeap();
+    	queue = null;
+    	interArrivals = services = null;
+    	interArrivalsF = servicesF = null;
+    	views = null;
+    	switch(mode) {
+    	case FULL:
+    		queue = new double[3][n];
+    		break;
+    	case COMPACT:
+    		interArrivals = new double[n];
+    		services = new double[n];
+    		break;
+    	case COMPACT_FLOAT:
+    		interArrivalsF = new float[n];
+    		servicesF = new float[n];
+    		break;
+    	case OFF_HEAP:
+    		offHeap = new OffHeapHistory(this.n);
+    		break;
+    	}
+    }
+    
+    /**
+     * Store the history in an off-heap history, e.g. one mapped to a file.
+     * The number of clients becomes the size of the history.
+     * 
+     * @param history the off-heap history
+     */
+    public void setOffHeapHistory(OffHeapHistory history) {
+    	releaseOffHeap();
+    	historyMode = HistoryMode.OFF_HEAP;
+    	n = history.size();
+    	offHeap = history;
+    	queue = null;
+    	interArrivals = services = null;
+    	interArrivalsF = servicesF = null;
+    	views = null;
+    }
+    
+    /**
+     * Return the off-heap history.
+     * 
+     * @return the history, or null if the mode is not OFF_HEAP
+     */
+    public OffHeapHistory getOffHeapHistory() {
+    	return offHeap;
+    }
+    
+    /** Close the off-heap history, if any. */
+    private void releaseOffHeap() {
+    	if(offHeap != null) {
+    		try {
+    			offHeap.close();
+    		} catch(IOException e) {
+    			System.err.println("Warning: off-heap history not closed: " + e.getMessage());
+    		}
+    		offHeap = null;
+    	}
+    }
+    
+    /**
+     * Pipeline run() on four threads in FULL mode: two threads sample the 
+     * inter-arrival and the service times in blocks, the calling thread runs 
+     * the recursion as the blocks arrive, and a fourth thread accumulates the 
+     * statistics of the clients recursed. The blocks are passed through bounded 
+     * lock-free rings of preallocated buffers, and the variables are sampled 
+     * in the same order, so the history and the statistics are the same of a 
+     * sequential run. The other history modes always run sequentially.
+     * 
+     * @param pipelined true to pipeline the runs
+     */
+    public void setPipelined(boolean pipelined) {
+    	this.pipelined = pipelined;
+    }
+    
+    /**
+     * Return whether run() is pipelined in FULL mode.
+     * 
+     * @return true if the runs are pipelined
+     */
+    public boolean isPipelined() {
+    	return pipelined;
+    }
+    
+    /**
+     * Return the way the history is stored.
+     * 
+     * @return the history mode
+     */
+    public HistoryMode getHistoryMode() {
+    	return historyMode;
+    }
+    
+    /** 
+     * Return the queue of simulated events.
+     * In the compact and off-heap modes, this is computed on the first call after a run.
+     * 
+     * @throws IllegalStateException if the queue exceeds Integer.MAX_VALUE clients
+     */
     public double[][] getHistory() { 
-        return queue; 
+        return historyMode == HistoryMode.FULL ? queue : getViews(); 
     }
     
     /** 
@@ -132,7 +484,7 @@ public class SimQueue {
      * @return the arrival times
      */
     public double[] getArrivalTimes() {
-    	return queue[0];
+    	return getHistory()[0];
     }
     
     /** 
@@ -141,7 +493,7 @@ public class SimQueue {
      * @return the service times
      */
     public double[] getServingTimes() {
-    	return queue[1];
+    	return getHistory()[1];
     }
     
     /** 
@@ -150,7 +502,7 @@ public class SimQueue {
      * @return the leaving times
      */
     public double[] getLeavingTimes() {
-    	return queue[2];
+    	return getHistory()[2];
     }    
     
     /**
@@ -159,7 +511,13 @@ public class SimQueue {
      * @return the distribution samples.
      */
     public double[] getArrivalTimesDistrib() {
-    	double[] samples = new double[queue[0].length];
+    	double[] samples = new double[getArraySize()];
+    	if(historyMode != HistoryMode.FULL) {
+    		for(int i = 0; i < samples.length; i++) {
+    			samples[i] = getInterArrival(i);
+    		}
+    		return samples;
+    	}
 		samples[0] = queue[0][0];
     	for(int i = 1; i < samples.length; i++) {
     		samples[i] = queue[0][i] - queue[0][i-1];
@@ -174,62 +532,587 @@ public class SimQueue {
      * @return the distribution samples.
      */
     public double[] getServiceTimesDistrib() {
-    	double[] samples = new double[queue[0].length];
+    	double[] samples = new double[getArraySize()];
+    	if(historyMode != HistoryMode.FULL) {
+    		for(int i = 0; i < samples.length; i++) {
+    			samples[i] = getService(i);
+    		}
+    		return samples;
+    	}
     	for(int i = 0; i < samples.length; i++) {
     		samples[i] = queue[2][i] - queue[1][i];
     	}
     	return samples;
     }
     
-    /** Return the capacity of the queue. */
+    /** Return the inter-arrival time of a client in the compact and off-heap modes. */
+    private double getInterArrival(long i) {
+    	switch(historyMode) {
+    	case COMPACT:
+    		return interArrivals[(int) i];
+    	case COMPACT_FLOAT:
+    		return interArrivalsF[(int) i];
+    	default:
+    		return i == 0 ? 0 : offHeap.getArrivalTime(i) - offHeap.getArrivalTime(i - 1);
+    	}
+    }
+    
+    /** Return the service time of a client in the compact and off-heap modes. */
+    private double getService(long i) {
+    	switch(historyMode) {
+    	case COMPACT:
+    		return services[(int) i];
+    	case COMPACT_FLOAT:
+    		return servicesF[(int) i];
+    	default:
+    		return offHeap.getLeavingTime(i) - offHeap.getServingTime(i);
+    	}
+    }
+    
+    /** 
+     * Return the size of the history as an array length.
+     * 
+     * @throws IllegalStateException if the queue exceeds Integer.MAX_VALUE clients
+     */
+    private int getArraySize() {
+    	if(n > Integer.MAX_VALUE) {
+    		throw new IllegalStateException("The history exceeds " + Integer.MAX_VALUE + " clients: use the long-indexed getters.");
+    	}
+    	return (int) n;
+    }
+    
+    /** 
+     * Return the arrival, serving, and leaving times derived from the 
+     * durations stored in the compact modes, or copied from the off-heap history.
+     * 
+     * @return the history
+     */
+    private double[][] getViews() {
+    	if(views == null) {
+    		double[][] v = new double[3][getArraySize()];
+    		if(historyMode == HistoryMode.OFF_HEAP) {
+    			for(int i = 0; i < n; i++) {
+    				v[0][i] = offHeap.getArrivalTime(i);
+    				v[1][i] = offHeap.getServingTime(i);
+    				v[2][i] = offHeap.getLeavingTime(i);
+    			}
+    		} else {
+    			double arrival = 0, leaving = 0;
+    			for(int i = 0; i < n; i++) {
+    				arrival += getInterArrival(i);
+    				v[0][i] = arrival;
+    				// the same recursion of run() in FULL mode
+    				v[1][i] = (i > 0 && arrival < leaving) ? leaving : arrival;
+    				leaving = v[1][i] + getService(i);
+    				v[2][i] = leaving;
+    			}
+    		}
+    		views = v;
+    	}
+    	return views;
+    }
+    
+    /** 
+     * Return the arrival time of a client.
+     * 
+     * @param i the client index
+     * @return the arrival time
+     */
+    public double getArrivalTime(long i) {
+    	if(historyMode == HistoryMode.OFF_HEAP) {
+    		return offHeap.getArrivalTime(i);
+    	}
+    	return getHistory()[0][(int) i];
+    }
+    
+    /** 
+     * Return the initial service time of a client.
+     * 
+     * @param i the client index
+     * @return the serving time
+     */
+    public double getServingTime(long i) {
+    	if(historyMode == HistoryMode.OFF_HEAP) {
+    		return offHeap.getServingTime(i);
+    	}
+    	return getHistory()[1][(int) i];
+    }
+    
+    /** 
+     * Return the leaving time of a client.
+     * 
+     * @param i the client index
+     * @return the leaving time
+     */
+    public double getLeavingTime(long i) {
+    	if(historyMode == HistoryMode.OFF_HEAP) {
+    		return offHeap.getLeavingTime(i);
+    	}
+    	return getHistory()[2][(int) i];
+    }
+    
+    /** 
+     * Return the capacity of the queue. 
+     * For queues exceeding Integer.MAX_VALUE clients, use getClientsNum(). 
+     */
     public int getN() { 
-        return queue[0].length; 
+        return (int) Math.min(n, Integer.MAX_VALUE); 
+    }
+    
+    /** 
+     * Return the number of clients of the queue. 
+     * 
+     * @return the number of clients
+     */
+    public long getClientsNum() { 
+        return n; 
     }
     
     /**
-     * Return the statistics for this simulation
+     * Return the statistics for this simulation. The same object is 
+     * reset and updated by each run.
      * @return statistics
      */
     public BasicStatistics getStatistics() {
     	return stats;
     }
     
+    /**
+     * Return the time-weighted statistics of the number of clients in the queue.
+     * The same object is reset and updated by each run.
+     * 
+     * @return the occupancy statistics of the last run
+     */
+    public OccupancyStatistics getOccupancyStatistics() {
+    	return occupancy;
+    }
+    
+    /**
+     * Set the instrumentation timing the phases of run() and tracking its progress.
+     * 
+     * @param instrumentation the instrumentation, or null to disable it
+     */
+    public void setInstrumentation(Instrumentation instrumentation) {
+    	this.instrumentation = instrumentation;
+    }
+    
+    /**
+     * Return the instrumentation of this simulation.
+     * 
+     * @return the instrumentation, or null if disabled
+     */
+    public Instrumentation getInstrumentation() {
+    	return instrumentation;
+    }
+    
     /** 
      * Create a stochastic queue simulation.
+     * The loops are split in blocks of Instrumentation.PROGRESS_BLOCK clients,
+     * so that the progress is published once per block.
      */
     public void run() {
+    	Object event = FlightRecorderEvents.beginRun(n, arrivalVar.getTheoreticalMean(), 
+    			serviceVar.getClass().getSimpleName(), serviceVar.getTheoreticalMean(), historyMode.name(), seed);
+    	try {
+    		simulate();
+    	} finally {
+    		FlightRecorderEvents.endRun(event, meanWaitingTime);
+    	}
+    }
+    
+    /** Run the simulation in the history mode. */
+    private void simulate() {
+    	// the buffers, variables, and statistics of the previous run are reused
+    	reset();
+    	if(instrumentation != null) {
+    		instrumentation.beginProgress(n);
+    		instrumentation.start(Phase.ARRIVAL_GENERATION);
+    	}
+    	if(historyMode == HistoryMode.OFF_HEAP) {
+    		runOffHeap();
+    		return;
+    	}
+    	if(historyMode != HistoryMode.FULL) {
+    		runCompact();
+    		return;
+    	}
+    	if(pipelined && this.n > 1) {
+    		runPipelined();
+    		return;
+    	}
+    	int n = (int) this.n;
    	
     	// Populate the clients arrival times. 
     	// This history is memoryless and independent of the service time.
     	// The simulation starts when the first client arrives. This is time 0.
     	queue[0][0] = 0;
-    	for(int i=1; i < queue[0].length; i++) {
-    		queue[0][i] = queue[0][i-1] + expVar.getNext();
+    	for(int from=1; from < n; from += Instrumentation.PROGRESS_BLOCK) {
+    		int to = Math.min(n, from + Instrumentation.PROGRESS_BLOCK);
+    		// sample the inter-arrival times in bulk, then accumulate them
+    		arrivalVar.fill(queue[0], from, to);
+    		for(int i=from; i < to; i++) {
+    			queue[0][i] += queue[0][i-1];
+    		}
+    		if(instrumentation != null) {
+    			instrumentation.addProgress(to - from);
+    		}
+    	}
+    	
+    	if(instrumentation != null) {
+    		instrumentation.addProgress(1);
+    		instrumentation.stop(Phase.ARRIVAL_GENERATION);
+    		instrumentation.start(Phase.SERVICE_RECURSION);
     	}
     	
     	// Clients are now served in a FIFO policy.
     	// This history is memoryless, but also depends on client arrival time
     	// The first client will be served immediately
     	queue[1][0] = 0;
-    	queue[2][0] = queue[1][0] + triVar.getNext();   	
-    	for(int i=1; i < queue[0].length; i++) {
-    		if(queue[0][i] < queue[2][i-1]) {
-    			// A client is waiting
-    			// the client is served immediately (gap times are discarded)
-            	queue[1][i] = queue[2][i-1];
-    		} else {
-    			// No client is waiting
-    			// the server must wait until the next client arrives
-    			queue[1][i] = queue[0][i];
+    	queue[2][0] = queue[1][0] + serviceVar.getNext();   	
+    	// the IPA derivatives of the waiting time of the current client (see getServiceRateDerivative())
+    	double meanService = serviceVar.getTheoreticalMean(), meanInterArrival = arrivalVar.getTheoreticalMean();
+    	double waitingSum = 0, dServiceRate = 0, dArrivalRate = 0, dServiceRateSum = 0, dArrivalRateSum = 0;
+    	for(int from=1; from < n; from += Instrumentation.PROGRESS_BLOCK) {
+    		int to = Math.min(n, from + Instrumentation.PROGRESS_BLOCK);
+    		// sample the service times in bulk into the leaving times, then add the serving times
+    		serviceVar.fill(queue[2], from, to);
+    		for(int i=from; i < to; i++) {
+    			if(queue[0][i] < queue[2][i-1]) {
+    				// A client is waiting
+    				// the client is served immediately (gap times are discarded)
+    				queue[1][i] = queue[2][i-1];
+    				// the waiting time moves with the previous service and this inter-arrival time
+    				dServiceRate -= (queue[2][i-1] - queue[1][i-1]) * meanService;
+    				dArrivalRate += (queue[0][i] - queue[0][i-1]) * meanInterArrival;
+    			} else {
+    				// No client is waiting
+    				// the server must wait until the next client arrives
+    				queue[1][i] = queue[0][i];
+    				// an idle server cuts the propagation of the perturbations
+    				dServiceRate = 0;
+    				dArrivalRate = 0;
+    			}
+    			waitingSum += queue[1][i] - queue[0][i];
+    			dServiceRateSum += dServiceRate;
+    			dArrivalRateSum += dArrivalRate;
+    			// the client is served
+    			queue[2][i] += queue[1][i];
+    		}
+    		if(instrumentation != null) {
+    			instrumentation.addProgress(to - from);
     		}
-    		// the client is served
-        	queue[2][i] = queue[1][i] + triVar.getNext();
+    	}
+    	
+    	if(instrumentation != null) {
+    		instrumentation.addProgress(1);
+    		instrumentation.stop(Phase.SERVICE_RECURSION);
+    		instrumentation.start(Phase.STATISTICS);
     	}
     	
     	// calculate the statistics
+    	meanWaitingTime = waitingSum / n;
+    	serviceRateDerivative = dServiceRateSum / n;
+    	arrivalRateDerivative = dArrivalRateSum / n;
     	computeStatistics();
+    	
+    	if(instrumentation != null) {
+    		instrumentation.stop(Phase.STATISTICS);
+    	}
     } 
     
+    /** 
+     * Run the simulation in FULL mode as a pipeline (see setPipelined()).
+     */
+    private void runPipelined() {
+    	final int n = (int) this.n;
+    	if(arrivalRing == null) {
+    		arrivalRing = new SpscRing(PIPELINE_SLOTS, PIPELINE_BLOCK);
+    		serviceRing = new SpscRing(PIPELINE_SLOTS, PIPELINE_BLOCK);
+    		// only the lengths of the blocks recursed are passed to the statistics
+    		statisticsRing = new SpscRing(PIPELINE_SLOTS, 0);
+    	}
+    	arrivalRing.reset();
+    	serviceRing.reset();
+    	statisticsRing.reset();
+    	if(instrumentation != null) {
+    		// the phases overlap: the sampling is timed with the recursion
+    		instrumentation.stop(Phase.ARRIVAL_GENERATION);
+    		instrumentation.start(Phase.SERVICE_RECURSION);
+    		instrumentation.addProgress(2);
+    	}
+    	stats.setExponentialArrivalTime(arrivalVar instanceof ExponentialVariable);
+    	stats.setTriangularServiceTime(serviceVar instanceof TriangularVariable);
+    	ExecutorService pool = Executors.newFixedThreadPool(3, new NamedThreadFactory("simqueue-pipeline"));
+    	List<Future<?>> stages = new ArrayList<Future<?>>();
+    	try {
+    		stages.add(pool.submit(() -> stage(() -> generate(arrivalVar, arrivalRing, n - 1))));
+    		stages.add(pool.submit(() -> stage(() -> {
+    			// the first service is sampled first, as in run()
+    			queue[2][0] = serviceVar.getNext();
+    			generate(serviceVar, serviceRing, n - 1);
+    		})));
+    		stages.add(pool.submit(() -> stage(() -> accumulateStatistics(n))));
+    		queue[0][0] = 0;
+    		queue[1][0] = 0;
+    		// the same recursion and IPA derivatives of run()
+    		double meanService = serviceVar.getTheoreticalMean(), meanInterArrival = arrivalVar.getTheoreticalMean();
+    		double waitingSum = 0, dServiceRate = 0, dArrivalRate = 0, dServiceRateSum = 0, dArrivalRateSum = 0;
+    		try {
+    			for(int from=1; from < n; ) {
+    				double[] interArrivals = arrivalRing.take(), services = serviceRing.take();
+    				int to = from + arrivalRing.length();
+    				for(int i=from, k=0; i < to; i++, k++) {
+    					queue[0][i] = interArrivals[k] + queue[0][i-1];
+    					if(queue[0][i] < queue[2][i-1]) {
+    						queue[1][i] = queue[2][i-1];
+    						dServiceRate -= (queue[2][i-1] - queue[1][i-1]) * meanService;
+    						dArrivalRate += (queue[0][i] - queue[0][i-1]) * meanInterArrival;
+    					} else {
+    						queue[1][i] = queue[0][i];
+    						dServiceRate = 0;
+    						dArrivalRate = 0;
+    					}
+    					waitingSum += queue[1][i] - queue[0][i];
+    					dServiceRateSum += dServiceRate;
+    					dArrivalRateSum += dArrivalRate;
+    					queue[2][i] = services[k] + queue[1][i];
+    				}
+    				arrivalRing.release();
+    				serviceRing.release();
+    				// the first block of the statistics includes the first client
+    				statisticsRing.claim();
+    				statisticsRing.publish(from == 1 ? to : to - from);
+    				if(instrumentation != null) {
+    					instrumentation.addProgress(2 * (to - from));
+    				}
+    				from = to;
+    			}
+    		} catch(CancellationException e) {
+    			// a stage failed and aborted the rings: its exception is thrown below
+    		}
+    		if(instrumentation != null) {
+    			instrumentation.stop(Phase.SERVICE_RECURSION);
+    			instrumentation.start(Phase.STATISTICS);
+    		}
+    		Throwable failure = null;
+    		for(Future<?> stage : stages) {
+    			try {
+    				stage.get();
+    			} catch(ExecutionException e) {
+    				// report the stage which failed, not those it aborted
+    				if(failure == null || failure instanceof CancellationException) {
+    					failure = e.getCause();
+    				}
+    			}
+    		}
+    		if(failure instanceof RuntimeException) {
+    			throw (RuntimeException) failure;
+    		} else if(failure instanceof Error) {
+    			throw (Error) failure;
+    		} else if(failure != null) {
+    			throw new IllegalStateException(failure);
+    		}
+    		meanWaitingTime = waitingSum / n;
+    		serviceRateDerivative = dServiceRateSum / n;
+    		arrivalRateDerivative = dArrivalRateSum / n;
+    		stats.complete();
+    	} catch(InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		throw new IllegalStateException("The pipelined run was interrupted.", e);
+    	} finally {
+    		arrivalRing.abort();
+    		serviceRing.abort();
+    		statisticsRing.abort();
+    		pool.shutdownNow();
+    	}
+    	if(instrumentation != null) {
+    		instrumentation.stop(Phase.STATISTICS);
+    	}
+    }
+    
+    /** Run a stage of the pipeline, aborting the rings if it fails. */
+    private void stage(Runnable body) {
+    	try {
+    		body.run();
+    	} catch(RuntimeException | Error e) {
+    		arrivalRing.abort();
+    		serviceRing.abort();
+    		statisticsRing.abort();
+    		throw e;
+    	}
+    }
+    
+    /** Sample count values of a variable in blocks, published in a ring. */
+    private static void generate(RandomVariable var, SpscRing ring, int count) {
+    	for(int done=0; done < count; ) {
+    		double[] block = ring.claim();
+    		int m = Math.min(block.length, count - done);
+    		var.fill(block, 0, m);
+    		ring.publish(m);
+    		done += m;
+    	}
+    }
+    
+    /** Accumulate the statistics of the clients as their blocks are recursed. */
+    private void accumulateStatistics(int n) {
+    	occupancy.reset();
+    	for(int from=0; from < n; ) {
+    		statisticsRing.take();
+    		int to = from + statisticsRing.length();
+    		statisticsRing.release();
+    		stats.accumulate(queue, from, to);
+    		occupancy.add(queue[0], queue[2], from, to);
+    		from = to;
+    	}
+    	occupancy.finish(queue[2], n);
+    }
+    
+    /**
+     * Return a lazy simulation of this queue, which simulates one client 
+     * per call to advance() without storing the history. The variables are 
+     * re-seeded as in run(), and are shared with this queue: do not call 
+     * run() while the cursor is in use.
+     * 
+     * @return the cursor, before the first client
+     */
+    public ClientCursor cursor() {
+    	applySeed();
+    	return new ClientCursor(arrivalVar, serviceVar, n);
+    }
+    
+    /**
+     * Return a lazy stream of the clients of this queue. The clients are 
+     * simulated while the stream is consumed, so pipelines which stop early 
+     * (e.g. with limit() or anyMatch()) simulate only the clients they need.
+     * 
+     * @return the stream of clients
+     */
+    public Stream<ClientEvent> stream() {
+    	return StreamSupport.stream(cursor().spliterator(), false);
+    }
+    
+    /**
+     * Return a lazy stream of the waiting times of the clients of this queue.
+     * 
+     * @return the stream of waiting times
+     */
+    public DoubleStream waitingTimes() {
+    	return StreamSupport.doubleStream(cursor().waitingTimesSpliterator(), false);
+    }
+    
+    /** 
+     * Create a stochastic queue simulation storing only the inter-arrival 
+     * and service durations. The stochastic variables are sampled in the 
+     * same order of the FULL mode, so the same seed produces the same history.
+     */
+    private void runCompact() {
+    	int n = (int) this.n;
+    	boolean compact = historyMode == HistoryMode.COMPACT;
+    	// The first client arrives at time 0.
+    	if(compact) {
+    		interArrivals[0] = 0;
+    	} else {
+    		interArrivalsF[0] = 0;
+    	}
+    	for(int from=1; from < n; from += Instrumentation.PROGRESS_BLOCK) {
+    		int to = Math.min(n, from + Instrumentation.PROGRESS_BLOCK);
+    		if(compact) {
+    			arrivalVar.fill(interArrivals, from, to);
+    		} else {
+    			for(int i=from; i < to; i++) {
+    				interArrivalsF[i] = (float) arrivalVar.getNext();
+    			}
+    		}
+    		if(instrumentation != null) {
+    			instrumentation.addProgress(to - from);
+    		}
+    	}
+    	
+    	if(instrumentation != null) {
+    		instrumentation.addProgress(1);
+    		instrumentation.stop(Phase.ARRIVAL_GENERATION);
+    		instrumentation.start(Phase.SERVICE_RECURSION);
+    	}
+    	
+    	// The service recursion is deferred to getHistory().
+    	for(int from=0; from < n; from += Instrumentation.PROGRESS_BLOCK) {
+    		int to = Math.min(n, from + Instrumentation.PROGRESS_BLOCK);
+    		if(compact) {
+    			serviceVar.fill(services, from, to);
+    		} else {
+    			for(int i=from; i < to; i++) {
+    				servicesF[i] = (float) serviceVar.getNext();
+    			}
+    		}
+    		if(instrumentation != null) {
+    			instrumentation.addProgress(to - from);
+    		}
+    	}
+    	
+    	if(instrumentation != null) {
+    		instrumentation.stop(Phase.SERVICE_RECURSION);
+    		instrumentation.start(Phase.STATISTICS);
+    	}
+    	
+    	computeStatistics();
+    	
+    	if(instrumentation != null) {
+    		instrumentation.stop(Phase.STATISTICS);
+    	}
+    }
+    
+    /** 
+     * Create a stochastic queue simulation storing the history off-heap.
+     * This is the same simulation of the FULL mode, with long client indices.
+     */
+    private void runOffHeap() {
+    	double arrival = 0;
+    	offHeap.setArrivalTime(0, arrival);
+    	for(long from=1; from < n; from += Instrumentation.PROGRESS_BLOCK) {
+    		long to = Math.min(n, from + Instrumentation.PROGRESS_BLOCK);
+    		for(long i=from; i < to; i++) {
+    			arrival += arrivalVar.getNext();
+    			offHeap.setArrivalTime(i, arrival);
+    		}
+    		if(instrumentation != null) {
+    			instrumentation.addProgress(to - from);
+    		}
+    	}
+    	
+    	if(instrumentation != null) {
+    		instrumentation.addProgress(1);
+    		instrumentation.stop(Phase.ARRIVAL_GENERATION);
+    		instrumentation.start(Phase.SERVICE_RECURSION);
+    	}
+    	
+    	double serving = 0, leaving = serving + serviceVar.getNext();
+    	offHeap.setService(0, serving, leaving);
+    	for(long from=1; from < n; from += Instrumentation.PROGRESS_BLOCK) {
+    		long to = Math.min(n, from + Instrumentation.PROGRESS_BLOCK);
+    		for(long i=from; i < to; i++) {
+    			arrival = offHeap.getArrivalTime(i);
+    			serving = arrival < leaving ? leaving : arrival;
+    			leaving = serving + serviceVar.getNext();
+    			offHeap.setService(i, serving, leaving);
+    		}
+    		if(instrumentation != null) {
+    			instrumentation.addProgress(to - from);
+    		}
+    	}
+    	
+    	if(instrumentation != null) {
+    		instrumentation.addProgress(1);
+    		instrumentation.stop(Phase.SERVICE_RECURSION);
+    		instrumentation.start(Phase.STATISTICS);
+    	}
+    	
+    	computeStatistics();
+    	
+    	if(instrumentation != null) {
+    		instrumentation.stop(Phase.STATISTICS);
+    	}
+    }
+    
     /** 
      * Return a string containing the statistics for this queue using 
      * the parameters of the stochastic variables. 
@@ -238,13 +1121,13 @@ public class SimQueue {
      */
     public String getTheoreticalStatisticsString() {
 	    return "[THEORETICAL VALUES]" +
-			       "\n 1- Mean arrive time: \t\t" + expVar.getTheoreticalMean() + " min" +
-			       "\n 2- Variance arrive time: \t" + expVar.getTheoreticalVar() + " min^2" +
-			       "\n 3- Std dev arrive time:  \t" + expVar.getTheoreticalSD() + " min" +
-			       "\n 4- Maximum service time: \t" + triVar.getB() + " min" +
-			       "\n 5- Mean service time:\t\t" + triVar.getTheoreticalMean() + " min" +
-			       "\n 6- Variance service time:\t" + triVar.getTheoreticalVar() + " min^2" +
-			       "\n 7- Std dev service time: \t" + triVar.getTheoreticalSD() + " min";
+			       "\n 1- Mean arrive time: \t\t" + arrivalVar.getTheoreticalMean() + " min" +
+			       "\n 2- Variance arrive time: \t" + arrivalVar.getTheoreticalVar() + " min^2" +
+			       "\n 3- Std dev arrive time:  \t" + arrivalVar.getTheoreticalSD() + " min" +
+			       "\n 4- Maximum service time: \t" + serviceVar.getTheoreticalMax() + " min" +
+			       "\n 5- Mean service time:\t\t" + serviceVar.getTheoreticalMean() + " min" +
+			       "\n 6- Variance service time:\t" + serviceVar.getTheoreticalVar() + " min^2" +
+			       "\n 7- Std dev service time: \t" + serviceVar.getTheoreticalSD() + " min";
     }
 
     /** 
@@ -271,13 +1154,97 @@ public class SimQueue {
      */
     public String getErrorStatisticsString() {   // + percent
         return "[ABSOLUTE ERRORS]" +
-                "\n 1- Mean arrive time error:  \t\t" + stats.meanArrivalTimeError(expVar.getTheoreticalMean()) + " min " +
-                "\n 2- Variance arrive time error:  \t" + stats.varArrivalTimeError(expVar.getTheoreticalVar()) + " min^2 " +
-                "\n 3- Std dev arrive time error:   \t" + stats.sdArrivalTimeError(expVar.getTheoreticalSD()) + " min " +
-                "\n 4- Maximum service time error:  \t" + stats.maxServiceTimeError(triVar.getB()) + " min " +
-                "\n 5- Mean service time error: \t\t" + stats.meanServiceTimeError(triVar.getTheoreticalMean()) + " min " +
-                "\n 6- Variance service time error: \t" + stats.varServiceTimeError(triVar.getTheoreticalVar()) + " min^2 " +
-                "\n 7- Std dev service time error:  \t" + stats.sdServiceTimeError(triVar.getTheoreticalSD()) + " min ";
+                "\n 1- Mean arrive time error:  \t\t" + stats.meanArrivalTimeError(arrivalVar.getTheoreticalMean()) + " min " +
+                "\n 2- Variance arrive time error:  \t" + stats.varArrivalTimeError(arrivalVar.getTheoreticalVar()) + " min^2 " +
+                "\n 3- Std dev arrive time error:   \t" + stats.sdArrivalTimeError(arrivalVar.getTheoreticalSD()) + " min " +
+                "\n 4- Maximum service time error:  \t" + stats.maxServiceTimeError(serviceVar.getTheoreticalMax()) + " min " +
+                "\n 5- Mean service time error: \t\t" + stats.meanServiceTimeError(serviceVar.getTheoreticalMean()) + " min " +
+                "\n 6- Variance service time error: \t" + stats.varServiceTimeError(serviceVar.getTheoreticalVar()) + " min^2 " +
+                "\n 7- Std dev service time error:  \t" + stats.sdServiceTimeError(serviceVar.getTheoreticalSD()) + " min ";
+    }
+
+    /** 
+     * Return the time-weighted occupancy of this queue. With exponential inter-arrival 
+     * times and a stable queue, the simulated values are followed by the steady-state 
+     * values of the M/G/1 queue (Pollaczek-Khinchine formula).
+     *  
+     * @return the string containing the occupancy statistics 
+     */
+    public String getOccupancyStatisticsString() {
+        String s = "[OCCUPANCY]\t\t\t\tsimulated" +
+                "\n 1- Mean number in system: \t" + occupancy.getMeanInSystem() +
+                "\n 2- Mean number in queue:  \t" + occupancy.getMeanInQueue() +
+                "\n 3- Server utilization:    \t" + occupancy.getUtilization() +
+                "\n 4- Max number in system:  \t" + occupancy.getMaxInSystem();
+        double lambda = 1 / arrivalVar.getTheoreticalMean();
+        double rho = lambda * serviceVar.getTheoreticalMean();
+        if(arrivalVar instanceof ExponentialVariable && rho < 1) {
+            double moment2 = serviceVar.getTheoreticalVar() + serviceVar.getTheoreticalMean() * serviceVar.getTheoreticalMean();
+            double lq = lambda * lambda * moment2 / (2 * (1 - rho));
+            s += "\n    steady state (M/G/1): \tL = " + (lq + rho) + ", Lq = " + lq + ", utilization = " + rho;
+        }
+        return s;
+    }
+
+    /** 
+     * Return the mean waiting time of the clients in the last run.
+     * 
+     * @return the mean waiting time (min)
+     */
+    public double getMeanWaitingTime() {
+    	return meanWaitingTime;
+    }
+    
+    /** 
+     * Return the derivative of the mean waiting time with respect to the service 
+     * rate mu = 1 / mean service time, estimated by infinitesimal perturbation 
+     * analysis (IPA) in the same run: a change of the rate scales all the service 
+     * times, and the waiting time of a client moves with the service times of the 
+     * clients before it in its busy period. The estimate is unbiased for the 
+     * Lindley recursion of a FIFO queue.
+     * 
+     * @return d(mean waiting time) / d(mu), in min^2
+     */
+    public double getServiceRateDerivative() {
+    	return serviceRateDerivative;
+    }
+    
+    /** 
+     * Return the derivative of the mean waiting time with respect to the arrival 
+     * rate lambda = 1 / mean inter-arrival time, estimated by IPA in the same run 
+     * (a change of the rate scales all the inter-arrival times).
+     * 
+     * @return d(mean waiting time) / d(lambda), in min^2
+     */
+    public double getArrivalRateDerivative() {
+    	return arrivalRateDerivative;
+    }
+    
+    /** 
+     * Return a string containing the mean waiting time and its IPA derivatives, 
+     * compared with the M/G/1 values when the arrival time is exponential and 
+     * the queue is stable.
+     * 
+     * @return the sensitivity string
+     */
+    public String getSensitivityStatisticsString() {
+        double lambda = 1 / arrivalVar.getTheoreticalMean();
+        double mu = 1 / serviceVar.getTheoreticalMean();
+        String s = "[SENSITIVITY]\t\t\t\tsimulated (rates per min)" +
+                "\n 1- Mean waiting time:    \t" + meanWaitingTime + " min" +
+                "\n 2- d(wait)/d(service rate):\t" + serviceRateDerivative + 
+                (meanWaitingTime > 0 ? "\t(elasticity " + serviceRateDerivative * mu / meanWaitingTime + ")" : "") +
+                "\n 3- d(wait)/d(arrival rate):\t" + arrivalRateDerivative + 
+                (meanWaitingTime > 0 ? "\t(elasticity " + arrivalRateDerivative * lambda / meanWaitingTime + ")" : "");
+        if(arrivalVar instanceof ExponentialVariable && lambda < mu) {
+            // Pollaczek-Khinchine: W = lambda c / (2 mu (mu - lambda)), with c = E[S^2] mu^2 fixed by the shape
+            double c = (serviceVar.getTheoreticalVar() + 1 / (mu * mu)) * mu * mu;
+            double w = lambda * c / (2 * mu * (mu - lambda));
+            double dMu = -lambda * c * (2 * mu - lambda) / (2 * mu * mu * (mu - lambda) * (mu - lambda));
+            double dLambda = c / (2 * (mu - lambda) * (mu - lambda));
+            s += "\n    steady state (M/G/1): \tW = " + w + ", dW/dmu = " + dMu + ", dW/dlambda = " + dLambda;
+        }
+        return s;
     }
 
     /** 
@@ -288,8 +1255,8 @@ public class SimQueue {
     public String getHistoryString() {
         String s = "Client\tArrival Time (min)\tServing Time (min)\tLeaving Time (min)\n" +
                     		"------\t------------------\t------------------\t------------------\n";
-        for( int j = 0; j < queue[0].length; j++ ) {
-            s += "[" + (j+1) + "]\t" + queue[0][j] + "\t" + queue[1][j] + "\t" + queue[2][j] + "\n";
+        for( long j = 0; j < n; j++ ) {
+            s += "[" + (j+1) + "]\t" + getArrivalTime(j) + "\t" + getServingTime(j) + "\t" + getLeavingTime(j) + "\n";
             if( j % 5 == 0) {
                 try { Thread.sleep(5); }
                 catch(InterruptedException e) { System.err.println("Thread interrupted early."); }
@@ -302,14 +1269,43 @@ public class SimQueue {
      * Compute the statistics for this simulation.
      */
     protected void computeStatistics() {
-        stats.setMeanArrivalTime(queue);
-        stats.setVarArrivalTime(queue);
-        stats.setSDArrivalTime(queue);
-        stats.setMaxServiceTime(queue);
-        stats.setMinServiceTime(queue);
-        stats.setMeanServiceTime(queue);
-        stats.setVarServiceTime(queue);
-        stats.setSDServiceTime(queue);
+        stats.setExponentialArrivalTime(arrivalVar instanceof ExponentialVariable);
+        stats.setTriangularServiceTime(serviceVar instanceof TriangularVariable);
+        if(historyMode != HistoryMode.FULL) {
+            double meanService = serviceVar.getTheoreticalMean(), meanInterArrival = arrivalVar.getTheoreticalMean();
+            double arrival = 0, leaving = 0, previousService = 0;
+            double waitingSum = 0, dServiceRate = 0, dArrivalRate = 0, dServiceRateSum = 0, dArrivalRateSum = 0;
+            for(long i = 0; i < n; i++) {
+                double interArrival = getInterArrival(i), service = getService(i);
+                stats.accumulate(interArrival, service);
+                // the same recursion (and derivatives) of run() in FULL mode
+                arrival += interArrival;
+                double serving = arrival;
+                if(i > 0 && arrival < leaving) {
+                    serving = leaving;
+                    dServiceRate -= previousService * meanService;
+                    dArrivalRate += interArrival * meanInterArrival;
+                } else {
+                    dServiceRate = 0;
+                    dArrivalRate = 0;
+                }
+                leaving = serving + service;
+                previousService = service;
+                waitingSum += serving - arrival;
+                dServiceRateSum += dServiceRate;
+                dArrivalRateSum += dArrivalRate;
+                occupancy.add(arrival, leaving);
+            }
+            meanWaitingTime = waitingSum / n;
+            serviceRateDerivative = dServiceRateSum / n;
+            arrivalRateDerivative = dArrivalRateSum / n;
+            stats.complete();
+            occupancy.finish();
+            return;
+        }
+        occupancy.compute(queue[0], queue[2]);
+        stats.accumulate(queue);
+        stats.complete();
     }
 
 } // end class SimQueue
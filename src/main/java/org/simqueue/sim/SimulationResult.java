@@ -0,0 +1,88 @@
+package org.simqueue.sim;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.simqueue.statistics.BasicStatistics;
+
+
+/** 
+ * The result of a queue simulation: the simulated statistics and, 
+ * optionally, the history of the queue.
+ */
+public class SimulationResult {
+
+	/** The simulated statistics. */
+	private final BasicStatistics stats;
+	
+	/** The history (arrival, serving, and leaving times), or null. */
+	private final double[][] history;
+	
+	/** 
+	 * Constructor.
+	 * 
+	 * @param stats the simulated statistics
+	 * @param history the history of the queue, or null
+	 */
+	public SimulationResult(BasicStatistics stats, double[][] history) {
+		this.stats = stats;
+		this.history = history;
+	}
+	
+	/**
+	 * Return the simulated statistics.
+	 * @return statistics
+	 */
+	public BasicStatistics getStatistics() {
+		return stats;
+	}
+	
+	/**
+	 * Return the history of the queue.
+	 * @return the history, or null if it was not kept
+	 */
+	public double[][] getHistory() {
+		return history;
+	}
+	
+	/**
+	 * Return whether the history of the queue was kept.
+	 * @return true if the history is available
+	 */
+	public boolean hasHistory() {
+		return history != null;
+	}
+	
+	/**
+	 * Return an estimate of the memory used by this result.
+	 * @return the size in bytes
+	 */
+	public long getSizeInBytes() {
+		long size = 128;
+		if(history != null) {
+			size += 3L * 8 * history[0].length;
+		}
+		return size;
+	}
+
+}
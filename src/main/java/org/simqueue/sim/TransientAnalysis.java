@@ -0,0 +1,301 @@
+package org.simqueue.sim;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.simqueue.exception.ExponentialException;
+import org.simqueue.exception.TriangularException;
+import org.simqueue.random.ExponentialVariable;
+import org.simqueue.random.RandomVariable;
+import org.simqueue.statistics.QuantileSketch;
+import org.simqueue.utils.FlightRecorderEvents;
+import org.simqueue.utils.NamedThreadFactory;
+
+
+/**
+ * A transient analysis of a scenario: the distribution of the waiting time 
+ * of the i-th client (or of the clients arriving in the i-th time window) 
+ * across R independent replications, starting from an empty queue.
+ * 
+ * The replications are simulated lazily by ClientCursor, in parallel, and 
+ * each waiting time is folded into the quantile sketch of its bucket: the 
+ * memory grows with the number of buckets, not with R times the clients. 
+ * The seed of each replication is drawn from the seed of the scenario, so 
+ * a seeded analysis does not depend on the number of threads.
+ */
+public class TransientAnalysis {
+
+	/** The number of buckets by client index when the bucket width is not set. */
+	public static final int DEFAULT_BUCKETS = 1000;
+	
+	/** The default quantiles of the bands. */
+	public static final double[] DEFAULT_QUANTILES = { 0.05, 0.5, 0.95 };
+	
+	/** The maximum number of buckets, each holding a sketch. */
+	public static final int MAX_BUCKETS = 1 << 20;
+	
+	/** The bins of the sketches per power of 2 (a relative error of the quantiles of 1.6%). */
+	private static final int SKETCH_SUB_BUCKETS = 64;
+	
+	private final Scenario scenario;
+	private final int replications;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	
+	/** The clients per bucket, if the buckets are by client index. */
+	private long bucketWidth;
+	
+	/** The minutes per bucket, if the buckets are by arrival time (0 otherwise). */
+	private double timeBucket = 0d;
+	
+	/** The sketches of the buckets, after run(). */
+	private List<QuantileSketch> sketches = new ArrayList<QuantileSketch>();
+	
+	/**
+	 * Constructor. The clients are grouped by index in DEFAULT_BUCKETS buckets.
+	 * 
+	 * @param scenario the scenario
+	 * @param replications the number R of replications
+	 */
+	public TransientAnalysis(Scenario scenario, int replications) {
+		if(replications < 1) {
+			throw new IllegalArgumentException("The replications must be at least 1.");
+		}
+		this.scenario = scenario;
+		this.replications = replications;
+		this.bucketWidth = (scenario.getClientsNum() + DEFAULT_BUCKETS - 1) / DEFAULT_BUCKETS;
+	}
+	
+	/**
+	 * Group the clients by index.
+	 * 
+	 * @param clients the clients per bucket (1 for one band per client)
+	 */
+	public void setBucketWidth(long clients) {
+		if(clients < 1) {
+			throw new IllegalArgumentException("The bucket width must be at least 1.");
+		}
+		bucketWidth = clients;
+		timeBucket = 0d;
+	}
+	
+	/**
+	 * Group the clients by arrival time.
+	 * 
+	 * @param minutes the length of the time window of each bucket
+	 */
+	public void setTimeBucket(double minutes) {
+		if(!(minutes > 0)) {
+			throw new IllegalArgumentException("The time bucket must be positive.");
+		}
+		timeBucket = minutes;
+	}
+	
+	/**
+	 * Set the number of simulation threads.
+	 * 
+	 * @param threads the threads (the available processors by default)
+	 */
+	public void setThreads(int threads) {
+		if(threads < 1) {
+			throw new IllegalArgumentException("The threads must be at least 1.");
+		}
+		this.threads = threads;
+	}
+	
+	/**
+	 * Run the replications. If the scenario is seeded, the analysis is reproducible.
+	 * 
+	 * @throws ExponentialException if clients_per_hour <= 0. 
+	 * @throws TriangularException if not 0 <= most_common_service_time <= maximum_service_time.
+	 * @throws IllegalArgumentException if there are more than MAX_BUCKETS buckets.
+	 */
+	public void run() throws ExponentialException, TriangularException {
+		// validate the variables before starting the workers
+		new ExponentialVariable(scenario.getLambda());
+		scenario.createServiceVariable();
+		Random rand = scenario.isSeeded() ? new Random(scenario.getSeed()) : new Random();
+		final long[] seeds = new long[replications];
+		for(int r = 0; r < replications; r++) {
+			seeds[r] = rand.nextLong();
+		}
+		int workers = Math.min(threads, replications);
+		ExecutorService pool = Executors.newFixedThreadPool(workers, new NamedThreadFactory("simqueue-transient"));
+		try {
+			List<Future<List<QuantileSketch>>> parts = new ArrayList<Future<List<QuantileSketch>>>();
+			for(int w = 0; w < workers; w++) {
+				final int first = w, step = workers;
+				parts.add(pool.submit(() -> simulate(seeds, first, step)));
+			}
+			// merge in the order of the workers
+			List<QuantileSketch> merged = new ArrayList<QuantileSketch>();
+			for(Future<List<QuantileSketch>> part : parts) {
+				List<QuantileSketch> buckets = part.get();
+				for(int b = 0; b < buckets.size(); b++) {
+					if(b == merged.size()) {
+						merged.add(new QuantileSketch(SKETCH_SUB_BUCKETS));
+					}
+					merged.get(b).merge(buckets.get(b));
+				}
+			}
+			sketches = merged;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("The transient analysis was interrupted.", e);
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof IllegalArgumentException) {
+				throw (IllegalArgumentException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	/** Simulate the replications first, first + step, ... into a list of bucket sketches. */
+	private List<QuantileSketch> simulate(long[] seeds, int first, int step) throws ExponentialException, TriangularException {
+		Object event = FlightRecorderEvents.beginChunk();
+		List<QuantileSketch> buckets = new ArrayList<QuantileSketch>();
+		ExponentialVariable expVar = new ExponentialVariable(scenario.getLambda());
+		RandomVariable serviceVar = scenario.createServiceVariable();
+		long n = scenario.getClientsNum();
+		for(int r = first; r < seeds.length; r += step) {
+			// the same streams of Scenario.createCursor() for the seed of the replication
+			expVar.setSeed(seeds[r]);
+			serviceVar.setSeed(SimQueue.serviceSeed(seeds[r]));
+			ClientCursor cursor = new ClientCursor(expVar, serviceVar, n);
+			QuantileSketch sketch = null;
+			long end = -1;
+			while(cursor.advance()) {
+				long b;
+				if(timeBucket > 0) {
+					b = (long) (cursor.getArrivalTime() / timeBucket);
+				} else {
+					b = cursor.getIndex() / bucketWidth;
+				}
+				if(sketch == null || b != end) {
+					if(b >= MAX_BUCKETS) {
+						throw new IllegalArgumentException("More than " + MAX_BUCKETS + " buckets: increase the bucket width.");
+					}
+					while(buckets.size() <= b) {
+						buckets.add(new QuantileSketch(SKETCH_SUB_BUCKETS));
+					}
+					sketch = buckets.get((int) b);
+					end = b;
+				}
+				sketch.add(cursor.getWaitingTime());
+			}
+		}
+		FlightRecorderEvents.endChunk(event, "transient", first, (seeds.length - first + step - 1) / step, 
+				Thread.currentThread().getName());
+		return buckets;
+	}
+	
+	/**
+	 * Return the number of buckets, after run().
+	 * @return the buckets
+	 */
+	public int getBuckets() {
+		return sketches.size();
+	}
+	
+	/**
+	 * Return the sketch of the waiting times of a bucket, after run().
+	 * 
+	 * @param bucket the bucket
+	 * @return the sketch
+	 */
+	public QuantileSketch getSketch(int bucket) {
+		return sketches.get(bucket);
+	}
+	
+	/**
+	 * Return the start of a bucket.
+	 * 
+	 * @param bucket the bucket
+	 * @return the first client index, or the start time (min) if the buckets are by arrival time
+	 */
+	public double getBucketStart(int bucket) {
+		return timeBucket > 0 ? bucket * timeBucket : (double) bucket * bucketWidth;
+	}
+	
+	/**
+	 * Write the mean and the percentile bands of the waiting time of each bucket 
+	 * as tab separated values, after run().
+	 * 
+	 * @param out the writer
+	 * @param quantiles the quantiles of the bands, in [0,1]
+	 */
+	public void write(PrintWriter out, double[] quantiles) {
+		StringBuilder header = new StringBuilder("Bucket\t");
+		header.append(timeBucket > 0 ? "StartTime" : "StartClient").append("\tCount\tMeanWaitingTime\tNoWait");
+		for(double q : quantiles) {
+			header.append(String.format("\tP%s", formatQuantile(q)));
+		}
+		out.println(header);
+		for(int b = 0; b < sketches.size(); b++) {
+			QuantileSketch sketch = sketches.get(b);
+			StringBuilder line = new StringBuilder();
+			line.append(b).append('\t').append(timeBucket > 0 ? String.valueOf(getBucketStart(b)) : String.valueOf((long) getBucketStart(b)))
+				.append('\t').append(sketch.getCount()).append('\t').append(sketch.getMean())
+				.append('\t').append(sketch.getZeroFraction());
+			for(double q : quantiles) {
+				line.append('\t').append(sketch.quantile(q));
+			}
+			out.println(line);
+		}
+	}
+	
+	/** Return a quantile as a percentile label, e.g. 5 for 0.05 or 99.9 for 0.999. */
+	private static String formatQuantile(double q) {
+		String s = String.valueOf(q * 100);
+		return s.endsWith(".0") ? s.substring(0, s.length() - 2) : s;
+	}
+	
+	/** {@inheritDoc} */
+	public String toString() {
+		StringBuilder s = new StringBuilder(String.format("[TRANSIENT] %d replications of %d clients in %d buckets of %s", 
+				replications, scenario.getClientsNum(), sketches.size(), 
+				timeBucket > 0 ? timeBucket + " min" : bucketWidth + " clients"));
+		s.append(String.format("%n    %-12s\t%-14s\t%-14s\t%-14s\t%-14s\t%s", "bucket", "start", "mean wait", 
+				"p5", "p50", "p95"));
+		// at most 20 rows on screen, the full bands are written to file
+		int rows = Math.min(20, sketches.size());
+		for(int i = 0; i < rows; i++) {
+			int b = rows < 2 ? 0 : (int) ((long) i * (sketches.size() - 1) / (rows - 1));
+			QuantileSketch sketch = sketches.get(b);
+			s.append(String.format("%n    %-12d\t%-14.6g\t%-14.6g\t%-14.6g\t%-14.6g\t%.6g", b, getBucketStart(b), 
+					sketch.getMean(), sketch.quantile(0.05), sketch.quantile(0.5), sketch.quantile(0.95)));
+		}
+		return s.toString();
+	}
+
+}
@@ -0,0 +1,254 @@
+package org.simqueue.sim;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.simqueue.exception.DistributionException;
+import org.simqueue.exception.ExponentialException;
+import org.simqueue.exception.TriangularException;
+import org.simqueue.random.ErlangVariable;
+import org.simqueue.random.ExponentialVariable;
+import org.simqueue.random.GammaVariable;
+import org.simqueue.random.HyperexponentialVariable;
+import org.simqueue.random.LognormalVariable;
+import org.simqueue.random.RandomVariable;
+import org.simqueue.random.TabulatedVariable;
+import org.simqueue.random.TriangularVariable;
+import org.simqueue.random.WeibullVariable;
+import org.simqueue.statistics.GoodnessOfFit;
+import org.simqueue.statistics.Histogram;
+import org.simqueue.utils.SpecialFunctions;
+
+
+/**
+ * A validation run checking that the samplers follow their distributions. 
+ * Every random variable, and the tabulated sampler of the continuous ones, 
+ * is sampled by fill() (the path of the simulation loops) and by getNext(), 
+ * and tested by Kolmogorov-Smirnov, Anderson-Darling, and chi-square. 
+ * A larger number of samples is then streamed into a log-bucketed 
+ * histogram and tested by the binned Kolmogorov-Smirnov and chi-square. 
+ * 
+ * The run ends with a regression of the RareEventEstimator: at low, 
+ * medium, and high loads, its importance sampling estimate of P(wait &gt; t) 
+ * must agree with a plain simulation of the queue (a two-sided z-test).
+ * 
+ * The run is seeded, so that it is reproducible: a rejection at the 
+ * significance level is a regression of a sampler (or a false positive 
+ * of probability about alpha per test, to be confirmed with other seeds).
+ */
+public class Validation {
+
+	/** The default number of samples of each test on arrays. */
+	public static final int DEFAULT_SAMPLES = 100000;
+	
+	/** The default seed. */
+	public static final long DEFAULT_SEED = 20050101L;
+	
+	/** The default significance level of each test. */
+	public static final double DEFAULT_ALPHA = 0.001;
+	
+	/** The factor of samples of the streamed histograms. */
+	private static final int STREAMED_FACTOR = 10;
+	
+	/** The number of bins of the chi-square tests on arrays. */
+	private static final int CHI_SQUARE_BINS = 100;
+	
+	/** The number of bins per power of 2 of the streamed histograms. */
+	private static final int HISTOGRAM_SUB_BUCKETS = 256;
+	
+	/** The loads of the tail estimates, with a triangular(0,m,2m) service time. */
+	private static final double[] TAIL_LOADS = { 0.17, 0.5, 0.9 };
+	
+	/** The arrival rate of the tail estimates (clients per minute). */
+	private static final double TAIL_LAMBDA = 25d / 60;
+	
+	/** The factor of clients of the plain simulations compared with the tail estimates. */
+	private static final int CRUDE_FACTOR = 50;
+	
+	private final int samples;
+	private final long seed;
+	private final double alpha;
+	
+	private int tests = 0;
+	private int rejected = 0;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param samples the number of samples of each test on arrays (at least 100)
+	 * @param seed the seed
+	 * @param alpha the significance level of each test
+	 */
+	public Validation(int samples, long seed, double alpha) {
+		if(samples < 100 || !(alpha > 0 && alpha < 1)) {
+			throw new IllegalArgumentException("Require at least 100 samples and 0 < alpha < 1.");
+		}
+		this.samples = samples;
+		this.seed = seed;
+		this.alpha = alpha;
+	}
+	
+	/**
+	 * Return the random variables to validate, by name. The parameters 
+	 * cover the branches of the samplers (e.g. gamma shapes below and 
+	 * above 1, Erlang phases below and above ErlangVariable.PRODUCT_LIMIT).
+	 * 
+	 * @return the variables
+	 */
+	public static Map<String, RandomVariable> variables() {
+		Map<String, RandomVariable> vars = new LinkedHashMap<String, RandomVariable>();
+		try {
+			vars.put("exponential(25/60)", new ExponentialVariable(25d / 60));
+			vars.put("triangular(0,3.5,10)", new TriangularVariable(0d, 3.5d, 10d));
+			vars.put("triangular(0,0,4)", new TriangularVariable(0d, 0d, 4d));
+			vars.put("lognormal(0.5,0.6)", new LognormalVariable(0.5d, 0.6d));
+			vars.put("weibull(0.7,2)", new WeibullVariable(0.7d, 2d));
+			vars.put("weibull(1.5,2)", new WeibullVariable(1.5d, 2d));
+			vars.put("gamma(0.5,2)", new GammaVariable(0.5d, 2d));
+			vars.put("gamma(2.5,1)", new GammaVariable(2.5d, 1d));
+			vars.put("erlang(3,1.5)", new ErlangVariable(3, 1.5d));
+			vars.put("erlang(20,10)", new ErlangVariable(20, 10d));
+			vars.put("hyperexponential(0.3,0.2,0.7,1.5)", 
+					new HyperexponentialVariable(new double[] { 0.3d, 0.7d }, new double[] { 0.2d, 1.5d }));
+			vars.put("tabulated triangular(0,3.5,10)", new TabulatedVariable(new TriangularVariable(0d, 3.5d, 10d)));
+			vars.put("tabulated lognormal(0.5,0.6)", new TabulatedVariable(new LognormalVariable(0.5d, 0.6d)));
+			vars.put("tabulated weibull(0.7,2)", new TabulatedVariable(new WeibullVariable(0.7d, 2d)));
+			vars.put("tabulated gamma(0.5,2)", new TabulatedVariable(new GammaVariable(0.5d, 2d)));
+			vars.put("tabulated hyperexponential(0.3,0.2,0.7,1.5)", new TabulatedVariable(
+					new HyperexponentialVariable(new double[] { 0.3d, 0.7d }, new double[] { 0.2d, 1.5d })));
+		} catch(DistributionException e) {
+			// the parameters are constant
+			throw new IllegalStateException(e);
+		} catch(ExponentialException e) {
+			throw new IllegalStateException(e);
+		} catch(TriangularException e) {
+			throw new IllegalStateException(e);
+		}
+		return vars;
+	}
+	
+	/**
+	 * Run the tests of all the variables, printing one line per test.
+	 * 
+	 * @param out the stream where the results are printed
+	 * @return true if no test rejected its hypothesis
+	 */
+	public boolean run(PrintStream out) {
+		tests = 0;
+		rejected = 0;
+		out.println("[VALIDATION] " + samples + " samples per test (" + (long) STREAMED_FACTOR * samples 
+				+ " streamed), seed " + seed + ", alpha " + alpha);
+		long k = 0;
+		for(Map.Entry<String, RandomVariable> entry : variables().entrySet()) {
+			String name = entry.getKey();
+			RandomVariable var = entry.getValue();
+			
+			double[] x = new double[samples];
+			var.setSeed(seed + k++);
+			var.fill(x);
+			report(out, name, "fill", GoodnessOfFit.chiSquare(x, var, CHI_SQUARE_BINS));
+			// the tests below sort the samples in place
+			report(out, name, "fill", GoodnessOfFit.kolmogorovSmirnov(x, var));
+			report(out, name, "fill", GoodnessOfFit.andersonDarling(x, var));
+			
+			var.setSeed(seed + k++);
+			for(int i = 0; i < samples; i++) {
+				x[i] = var.getNext();
+			}
+			report(out, name, "getNext", GoodnessOfFit.chiSquare(x, var, CHI_SQUARE_BINS));
+			report(out, name, "getNext", GoodnessOfFit.kolmogorovSmirnov(x, var));
+			report(out, name, "getNext", GoodnessOfFit.andersonDarling(x, var));
+			
+			var.setSeed(seed + k++);
+			Histogram histogram = GoodnessOfFit.sample(var, (long) STREAMED_FACTOR * samples, 
+					Histogram.logarithmic(HISTOGRAM_SUB_BUCKETS));
+			report(out, name, "streamed", GoodnessOfFit.kolmogorovSmirnov(histogram, var));
+			report(out, name, "streamed", GoodnessOfFit.chiSquare(histogram, var));
+		}
+		for(double load : TAIL_LOADS) {
+			report(out, String.format("waiting tail (load %.2f)", load), "IS/crude", compareTail(load, seed + k++));
+		}
+		out.println(tests + " tests, " + rejected + " rejected at alpha " + alpha);
+		return rejected == 0;
+	}
+	
+	/**
+	 * Compare the importance sampling estimate of P(wait &gt; 5 m) with a plain 
+	 * simulation, at a load with a triangular(0,m,2m) service time.
+	 * 
+	 * @param load the load (mean service time / mean inter-arrival time)
+	 * @param seed the seed
+	 * @return the z statistic of the difference of the estimates, and its two-sided p-value
+	 */
+	private GoodnessOfFit.Result compareTail(double load, long seed) {
+		double m = load / TAIL_LAMBDA;
+		RareEventEstimator estimator;
+		try {
+			estimator = new RareEventEstimator(new ExponentialVariable(TAIL_LAMBDA), new TriangularVariable(0d, m, 2 * m));
+		} catch(ExponentialException e) {
+			// the parameters are constant
+			throw new IllegalStateException(e);
+		} catch(TriangularException e) {
+			throw new IllegalStateException(e);
+		}
+		estimator.setSeed(seed);
+		RareEventEstimator.TailEstimate tilted = estimator.estimate(5 * m, samples / 10);
+		RareEventEstimator.TailEstimate crude = estimator.crudeEstimate(5 * m, (long) CRUDE_FACTOR * samples, 100);
+		double z = (tilted.getProbability() - crude.getProbability()) 
+				/ Math.hypot(tilted.getStandardError(), crude.getStandardError());
+		return new GoodnessOfFit.Result("Importance sampling vs plain z", z, 
+				SpecialFunctions.erfc(Math.abs(z) / Math.sqrt(2)), tilted.getClients() + crude.getClients());
+	}
+	
+	/** Print the result of a test and count it. */
+	private void report(PrintStream out, String name, String path, GoodnessOfFit.Result result) {
+		// a test without enough data (NaN p-value) is a failure too
+		boolean failed = !(result.getPValue() >= alpha);
+		tests++;
+		if(failed) {
+			rejected++;
+		}
+		out.println(String.format("%-44s %-9s %s%s", name, path, result, failed ? "  REJECTED" : ""));
+	}
+	
+	/**
+	 * Return the number of tests of the last run.
+	 * @return the tests
+	 */
+	public int getTests() {
+		return tests;
+	}
+	
+	/**
+	 * Return the number of tests rejecting their hypothesis in the last run.
+	 * @return the rejected tests
+	 */
+	public int getRejected() {
+		return rejected;
+	}
+
+}
@@ -23,6 +23,12 @@ package org.simqueue.statistics;
  * SOFTWARE.
 */
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.simqueue.utils.Json;
+
 /** 
  * A class for computing basic statistics from the queue simulation.
  * Errors between the theoretical and practical statistics are also computed.
@@ -46,17 +52,32 @@ public class BasicStatistics {
 	private double meanServiceTimeError = 0d;
 	private double varServiceTimeError = 0d;
 	private double sdServiceTimeError = 0d;	
+	
+	// whether the variances are derived from the exponential and triangular 
+	// models, or computed as sample variances for other distributions
+	private boolean exponentialArrivalTime = true;
+	private boolean triangularServiceTime = true;
+	
+	// accumulators of the durations passed to accumulate()
+	private long samples = 0L;
+	private double sumInterArrivalTime = 0d;
+	private double sumServiceTime = 0d;
+	private double sumSquaredInterArrivalTime = 0d;
+	private double sumSquaredServiceTime = 0d;
+	private double accMinServiceTime = Double.POSITIVE_INFINITY;
+	private double accMaxServiceTime = 0d;
 
 	/** Default constructor */
 	public BasicStatistics() {
 
 	}
 
-	/** Reset the statistics */
+	/** Reset the statistics and the accumulators, so that this object can be reused for another run. */
 	public void reset() {
 		meanArrivalTime = 0d;
 		varArrivalTime = 0d;
 		sdArrivalTime = 0d;
+		minServiceTime = 0d;
 		maxServiceTime = 0d;
 		meanServiceTime = 0d;
 		varServiceTime = 0d;
@@ -65,12 +86,41 @@ public class BasicStatistics {
 		meanArrivalTimeError = 0d;
 		varArrivalTimeError = 0d;
 		sdArrivalTimeError = 0d;
+		minServiceTimeError = 0d;
 		maxServiceTimeError = 0d;
 		meanServiceTimeError = 0d;
 		varServiceTimeError = 0d;
 		sdServiceTimeError = 0d;
+		
+		samples = 0L;
+		sumInterArrivalTime = 0d;
+		sumServiceTime = 0d;
+		sumSquaredInterArrivalTime = 0d;
+		sumSquaredServiceTime = 0d;
+		accMinServiceTime = Double.POSITIVE_INFINITY;
+		accMaxServiceTime = 0d;
 	}
 
+	/** 
+	 * Set whether the variance of the arrival time is derived from its mean, as for 
+	 * an exponential variable, or computed as the sample variance. 
+	 * 
+	 * @param exponential true for an exponential inter-arrival time (default)
+	 */
+	public void setExponentialArrivalTime(boolean exponential) {
+		this.exponentialArrivalTime = exponential;
+	}
+	
+	/** 
+	 * Set whether the variance of the service time is derived from its mean, minimum, 
+	 * and maximum, as for a triangular variable, or computed as the sample variance. 
+	 * 
+	 * @param triangular true for a triangular service time (default)
+	 */
+	public void setTriangularServiceTime(boolean triangular) {
+		this.triangularServiceTime = triangular;
+	}
+	
 	/** 
 	 * Return the queue length 
 	 * @return the queue length 
@@ -90,16 +140,14 @@ public class BasicStatistics {
 	 * @param queue
 	 */
 	public void setMeanArrivalTime(double[][] queue) {
-        if(meanArrivalTime != 0d) { 
-        	return;
-        }
         int n = getQueueLength(queue);
         if(n == 0) { 
         	return; 
         }
+        double sum = 0d;
         for( int i = 1; i < n; i++ )
-            meanArrivalTime += queue[0][i] - queue[0][i-1];
-	    meanArrivalTime /= n;
+            sum += queue[0][i] - queue[0][i-1];
+	    meanArrivalTime = sum / n;
     }
 
 	/** 
@@ -108,14 +156,27 @@ public class BasicStatistics {
 	 * @param queue
 	 */
 	public void setVarArrivalTime(double[][] queue) {
-        if(varArrivalTime != 0d) { 
-        	return;
-        }
 		int n = getQueueLength(queue);
 		if (n == 0) {
 			return;
 		}
 		setMeanArrivalTime(queue);
+		if(exponentialArrivalTime) {
+			deriveVarArrivalTime();
+			return;
+		}
+		double sum = 0d;
+		for( int i = 1; i < n; i++ ) {
+			double d = queue[0][i] - queue[0][i-1] - meanArrivalTime;
+			sum += d * d;
+		}
+		// the first client arrives at time 0: its inter-arrival time is 0, as in the mean
+		sum += meanArrivalTime * meanArrivalTime;
+		varArrivalTime = sum / n;
+	}
+
+	/** Derive the variance of the arrival time from its mean. */
+	private void deriveVarArrivalTime() {
 		if(meanArrivalTime == 0d) {
 			varArrivalTime = 0d;
 		} else {
@@ -130,9 +191,6 @@ public class BasicStatistics {
 	 * @param queue
 	 */
 	public void setSDArrivalTime(double[][] queue) {
-        if(sdArrivalTime != 0d) { 
-        	return;
-        }
         setVarArrivalTime(queue);
 		sdArrivalTime = Math.sqrt(varArrivalTime);
 	}
@@ -142,19 +200,18 @@ public class BasicStatistics {
 	 * @param queue
 	 */
 	public void setMaxServiceTime(double[][] queue) {
-        if(maxServiceTime != 0d) { 
-        	return;
-        }		
 		double temp = 0.0;
 		int n = getQueueLength(queue);
 		if (n == 0) {
 			return;
 		}
+		double max = 0d;
 		for (int i = 0; i < n; i++) {
 			temp = queue[2][i] - queue[1][i];
-			if (temp > maxServiceTime)
-				maxServiceTime = temp;
+			if (temp > max)
+				max = temp;
 		}
+		maxServiceTime = max;
 	}
 
 	/** 
@@ -163,9 +220,6 @@ public class BasicStatistics {
 	 * @param queue
 	 */
 	public void setMinServiceTime(double[][] queue) {
-        if(minServiceTime != 0d) { 
-        	return;
-        }	
 		int n = getQueueLength(queue);
 		if (n == 0) {
 			return;
@@ -185,16 +239,14 @@ public class BasicStatistics {
 	 * @param queue
 	 */
 	public void setMeanServiceTime(double[][] queue) {
-        if(meanServiceTime != 0d) { 
-        	return;
-        }		
 		int n = getQueueLength(queue);
 		if (n == 0) {
 			return;
 		}
+		double sum = 0d;
 		for (int i = 0; i < n; i++)
-			meanServiceTime += queue[2][i] - queue[1][i];
-		meanServiceTime /= n;
+			sum += queue[2][i] - queue[1][i];
+		meanServiceTime = sum / n;
 	}	
 	
 	/** 
@@ -203,12 +255,27 @@ public class BasicStatistics {
 	 * @param queue
 	 */
 	public void setVarServiceTime(double[][] queue) {
-        if(varServiceTime != 0d) { 
-        	return;
-        }
         setMeanServiceTime(queue);
         setMinServiceTime(queue);
         setMaxServiceTime(queue);
+		if(triangularServiceTime) {
+			deriveVarServiceTime();
+			return;
+		}
+		int n = getQueueLength(queue);
+		if (n == 0) {
+			return;
+		}
+		double sum = 0d;
+		for (int i = 0; i < n; i++) {
+			double d = queue[2][i] - queue[1][i] - meanServiceTime;
+			sum += d * d;
+		}
+		varServiceTime = sum / n;
+	}
+
+	/** Derive the variance of the service time from its mean, minimum, and maximum. */
+	private void deriveVarServiceTime() {
 		double ave = meanServiceTime, 
 			   min = minServiceTime, 
 			   max = maxServiceTime, 
@@ -222,13 +289,112 @@ public class BasicStatistics {
 	 * @param queue
 	 */
 	public void setSDServiceTime(double[][] queue) {
-        if(sdServiceTime != 0d) { 
-        	return;
-        }
         setVarServiceTime(queue);
 		sdServiceTime = Math.sqrt(varServiceTime);
 	}
 
+	/** 
+	 * Accumulate the durations of a client, as an alternative to the setters 
+	 * when the history is not stored as arrival, serving, and leaving times.
+	 * Call complete() after the last client.
+	 * 
+	 * @param interArrivalTime the time since the arrival of the previous client (0 for the first client)
+	 * @param serviceTime the service time of the client
+	 */
+	public void accumulate(double interArrivalTime, double serviceTime) {
+		samples++;
+		sumInterArrivalTime += interArrivalTime;
+		sumServiceTime += serviceTime;
+		sumSquaredInterArrivalTime += interArrivalTime * interArrivalTime;
+		sumSquaredServiceTime += serviceTime * serviceTime;
+		if(serviceTime < accMinServiceTime)
+			accMinServiceTime = serviceTime;
+		if(serviceTime > accMaxServiceTime)
+			accMaxServiceTime = serviceTime;
+	}
+
+	/** 
+	 * Accumulate the durations of all the clients of a history, in a single 
+	 * pass instead of one pass per setter. Call complete() after it.
+	 * 
+	 * @param queue the arrival, serving, and leaving times of the clients
+	 */
+	public void accumulate(double[][] queue) {
+		accumulate(queue, 0, getQueueLength(queue));
+	}
+
+	/** 
+	 * Accumulate the durations of the clients from..to-1 of a history, e.g. 
+	 * while another thread simulates the next clients. Consecutive ranges 
+	 * from 0 give the same sums of accumulate(queue). Call complete() after 
+	 * the last range.
+	 * 
+	 * @param queue the arrival, serving, and leaving times of the clients
+	 * @param from the first client (inclusive)
+	 * @param to the last client (exclusive)
+	 */
+	public void accumulate(double[][] queue, int from, int to) {
+		if(to <= from) {
+			return;
+		}
+		double[] arrivals = queue[0], servings = queue[1], leavings = queue[2];
+		// the first client arrives at time 0: its inter-arrival time is 0
+		double sumA = sumInterArrivalTime, sumSquaredA = sumSquaredInterArrivalTime;
+		double sumS = sumServiceTime, sumSquaredS = sumSquaredServiceTime;
+		double min = accMinServiceTime, max = accMaxServiceTime;
+		double previous = arrivals[from > 0 ? from - 1 : 0];
+		for(int i = from; i < to; i++) {
+			double interArrival = arrivals[i] - previous, service = leavings[i] - servings[i];
+			previous = arrivals[i];
+			sumA += interArrival;
+			sumSquaredA += interArrival * interArrival;
+			sumS += service;
+			sumSquaredS += service * service;
+			min = Math.min(min, service);
+			max = Math.max(max, service);
+		}
+		samples += to - from;
+		sumInterArrivalTime = sumA;
+		sumSquaredInterArrivalTime = sumSquaredA;
+		sumServiceTime = sumS;
+		sumSquaredServiceTime = sumSquaredS;
+		accMinServiceTime = min;
+		accMaxServiceTime = max;
+	}
+
+	/** 
+	 * Set all the simulated statistics from the durations passed to accumulate(), 
+	 * then clear the accumulators.
+	 */
+	public void complete() {
+		if(samples == 0) {
+			return;
+		}
+		meanArrivalTime = sumInterArrivalTime / samples;
+		if(exponentialArrivalTime) {
+			deriveVarArrivalTime();
+		} else {
+			varArrivalTime = Math.max(0d, sumSquaredInterArrivalTime / samples - meanArrivalTime * meanArrivalTime);
+		}
+		sdArrivalTime = Math.sqrt(varArrivalTime);
+		minServiceTime = accMinServiceTime;
+		maxServiceTime = accMaxServiceTime;
+		meanServiceTime = sumServiceTime / samples;
+		if(triangularServiceTime) {
+			deriveVarServiceTime();
+		} else {
+			varServiceTime = Math.max(0d, sumSquaredServiceTime / samples - meanServiceTime * meanServiceTime);
+		}
+		sdServiceTime = Math.sqrt(varServiceTime);
+		samples = 0L;
+		sumInterArrivalTime = 0d;
+		sumServiceTime = 0d;
+		sumSquaredInterArrivalTime = 0d;
+		sumSquaredServiceTime = 0d;
+		accMinServiceTime = Double.POSITIVE_INFINITY;
+		accMaxServiceTime = 0d;
+	}
+
 	// Getter Methods
 	/** 
 	 * Return the simulated mean time of a new user arrive.
@@ -275,6 +441,15 @@ public class BasicStatistics {
 		return maxServiceTime;
 	}
 
+	/** 
+	 * Return the minimum simulated service time.
+	 * 
+	 * @return the statistics
+	 */
+	public double getMinServiceTime() {
+		return minServiceTime;
+	}
+
 	/** 
 	 * Return the simulated variance service time.
 	 * 
@@ -376,5 +551,58 @@ public class BasicStatistics {
 		return sdServiceTimeError;
 	}
 
+	/** 
+	 * Write the simulated statistics in binary form.
+	 * 
+	 * @param out the output
+	 * @throws IOException if the statistics cannot be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeDouble(meanArrivalTime);
+		out.writeDouble(varArrivalTime);
+		out.writeDouble(sdArrivalTime);
+		out.writeDouble(minServiceTime);
+		out.writeDouble(maxServiceTime);
+		out.writeDouble(meanServiceTime);
+		out.writeDouble(varServiceTime);
+		out.writeDouble(sdServiceTime);
+	}
+
+	/** 
+	 * Read simulated statistics written by write().
+	 * 
+	 * @param in the input
+	 * @return the statistics
+	 * @throws IOException if the statistics cannot be read
+	 */
+	public static BasicStatistics read(DataInput in) throws IOException {
+		BasicStatistics stats = new BasicStatistics();
+		stats.meanArrivalTime = in.readDouble();
+		stats.varArrivalTime = in.readDouble();
+		stats.sdArrivalTime = in.readDouble();
+		stats.minServiceTime = in.readDouble();
+		stats.maxServiceTime = in.readDouble();
+		stats.meanServiceTime = in.readDouble();
+		stats.varServiceTime = in.readDouble();
+		stats.sdServiceTime = in.readDouble();
+		return stats;
+	}
+
+	/** 
+	 * Return the simulated statistics as a JSON object.
+	 * 
+	 * @return the JSON string
+	 */
+	public String toJson() {
+		return "{\"mean_arrival_time\":" + Json.number(meanArrivalTime) +
+				",\"var_arrival_time\":" + Json.number(varArrivalTime) +
+				",\"sd_arrival_time\":" + Json.number(sdArrivalTime) +
+				",\"min_service_time\":" + Json.number(minServiceTime) +
+				",\"max_service_time\":" + Json.number(maxServiceTime) +
+				",\"mean_service_time\":" + Json.number(meanServiceTime) +
+				",\"var_service_time\":" + Json.number(varServiceTime) +
+				",\"sd_service_time\":" + Json.number(sdServiceTime) + "}";
+	}
+
 
 }
@@ -0,0 +1,330 @@
+package org.simqueue.statistics;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.simqueue.random.RandomVariable;
+import org.simqueue.utils.SpecialFunctions;
+
+
+/**
+ * Goodness-of-fit tests checking that samples follow the distribution 
+ * of a random variable: Kolmogorov-Smirnov, Anderson-Darling, and chi-square.
+ * The tests run on primitive arrays, which are sorted in parallel for 
+ * the empirical CDF, or on the binned counts of a Histogram, so that runs 
+ * too large to be stored can be validated by streaming the samples.
+ */
+public class GoodnessOfFit {
+
+	/** The minimum expected count of a chi-square bin. Smaller bins are merged. */
+	public static final double MIN_EXPECTED_COUNT = 5d;
+	
+	/** The result of a test. */
+	public static class Result {
+		private final String test;
+		private final double statistic;
+		private final double pValue;
+		private final long samples;
+		
+		/**
+		 * Constructor.
+		 * 
+		 * @param test the name of the test
+		 * @param statistic the test statistic
+		 * @param pValue the p-value
+		 * @param samples the number of samples
+		 */
+		public Result(String test, double statistic, double pValue, long samples) {
+			this.test = test;
+			this.statistic = statistic;
+			this.pValue = pValue;
+			this.samples = samples;
+		}
+		
+		/**
+		 * Return the name of the test.
+		 * @return the name
+		 */
+		public String getTest() {
+			return test;
+		}
+		
+		/**
+		 * Return the test statistic.
+		 * @return the statistic
+		 */
+		public double getStatistic() {
+			return statistic;
+		}
+		
+		/**
+		 * Return the probability of a statistic at least as extreme under the hypothesis 
+		 * that the samples follow the distribution.
+		 * @return the p-value
+		 */
+		public double getPValue() {
+			return pValue;
+		}
+		
+		/**
+		 * Return the number of samples.
+		 * @return the number of samples
+		 */
+		public long getSamples() {
+			return samples;
+		}
+		
+		/**
+		 * Return true if the hypothesis that the samples follow the distribution is 
+		 * rejected at the significance level alpha.
+		 * 
+		 * @param alpha the significance level, e.g. 0.01
+		 * @return true if the p-value is lower than alpha
+		 */
+		public boolean isRejected(double alpha) {
+			return pValue < alpha;
+		}
+		
+		/** {@inheritDoc} */
+		public String toString() {
+			return String.format("%s: statistic = %.6g, p-value = %.4g (%d samples)", test, statistic, pValue, samples);
+		}
+	}
+	
+	/** Default constructor */
+	private GoodnessOfFit() {
+		
+	}
+	
+	/**
+	 * Draw n samples of a random variable and count them in a histogram.
+	 * 
+	 * @param var the random variable
+	 * @param n the number of samples
+	 * @param histogram the histogram
+	 * @return the histogram
+	 */
+	public static Histogram sample(RandomVariable var, long n, Histogram histogram) {
+		for(long i = 0; i < n; i++) {
+			histogram.add(var.getNext());
+		}
+		return histogram;
+	}
+	
+	/**
+	 * Kolmogorov-Smirnov test. The samples are sorted in place.
+	 * 
+	 * @param samples the samples
+	 * @param var the random variable
+	 * @return the maximum distance D between the empirical and the theoretical CDF, and its p-value
+	 */
+	public static Result kolmogorovSmirnov(final double[] samples, final RandomVariable var) {
+		final int n = samples.length;
+		Arrays.parallelSort(samples);
+		double d = IntStream.range(0, n).parallel().mapToDouble(i -> {
+			double f = var.cdf(samples[i]);
+			return Math.max((i + 1d) / n - f, f - (double) i / n);
+		}).max().orElse(Double.NaN);
+		return new Result("Kolmogorov-Smirnov", d, kolmogorovPValue(d, n), n);
+	}
+	
+	/**
+	 * Kolmogorov-Smirnov test on binned samples. The distance is evaluated at 
+	 * the bin edges only, so it is a lower bound of the distance of the samples: 
+	 * the bins must be narrow compared to the distribution.
+	 * 
+	 * @param histogram the binned samples
+	 * @param var the random variable
+	 * @return the maximum distance D at the bin edges, and its p-value
+	 */
+	public static Result kolmogorovSmirnov(Histogram histogram, RandomVariable var) {
+		long n = histogram.getCount();
+		long cumulative = 0L;
+		double d = 0d;
+		for(int i = 0; i < histogram.getBins(); i++) {
+			if(histogram.getCount(i) == 0) {
+				continue;
+			}
+			// the empirical CDF just below the lower edge and at the upper edge of the bin
+			double lower = Math.max(histogram.getLowerEdge(i), histogram.getMin());
+			double upper = Math.min(histogram.getUpperEdge(i), histogram.getMax());
+			d = Math.max(d, Math.abs((double) cumulative / n - var.cdf(lower)));
+			cumulative += histogram.getCount(i);
+			d = Math.max(d, Math.abs((double) cumulative / n - var.cdf(upper)));
+		}
+		return new Result("Kolmogorov-Smirnov (binned)", d, kolmogorovPValue(d, n), n);
+	}
+	
+	/**
+	 * Anderson-Darling test, which is more sensitive than Kolmogorov-Smirnov 
+	 * in the tails. The samples are sorted in place.
+	 * 
+	 * @param samples the samples
+	 * @param var the random variable
+	 * @return the statistic A^2 and its p-value
+	 */
+	public static Result andersonDarling(final double[] samples, final RandomVariable var) {
+		final int n = samples.length;
+		Arrays.parallelSort(samples);
+		double s = IntStream.range(0, n).parallel().mapToDouble(i -> {
+			double lower = clamp(var.cdf(samples[i]));
+			double upper = clamp(var.cdf(samples[n - 1 - i]));
+			return (2d * i + 1) * (Math.log(lower) + Math.log1p(-upper));
+		}).sum();
+		double a2 = -n - s / n;
+		return new Result("Anderson-Darling", a2, n == 0 ? Double.NaN : 1 - andersonDarlingCdf(a2), n);
+	}
+	
+	/**
+	 * Chi-square test on samples counted in bins of the same width between 
+	 * the minimum and the maximum sample.
+	 * 
+	 * @param samples the samples
+	 * @param var the random variable
+	 * @param bins the number of bins
+	 * @return the statistic and its p-value
+	 */
+	public static Result chiSquare(double[] samples, RandomVariable var, int bins) {
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for(double x : samples) {
+			min = Math.min(min, x);
+			max = Math.max(max, x);
+		}
+		if(!(min < max)) {
+			return new Result("Chi-square", Double.NaN, Double.NaN, samples.length);
+		}
+		Histogram histogram = Histogram.linear(min, Math.nextUp(max), bins);
+		for(double x : samples) {
+			histogram.add(x);
+		}
+		return chiSquare(histogram, var);
+	}
+	
+	/**
+	 * Chi-square test on binned samples. The first and the last bins are 
+	 * open, as the histogram counts the samples out of its range in them. 
+	 * Adjacent bins are merged until their expected count is at least 
+	 * MIN_EXPECTED_COUNT.
+	 * 
+	 * @param histogram the binned samples
+	 * @param var the random variable
+	 * @return the statistic and its p-value
+	 */
+	public static Result chiSquare(Histogram histogram, RandomVariable var) {
+		long n = histogram.getCount();
+		int last = histogram.getBins() - 1;
+		double chi2 = 0d;
+		int groups = 0;
+		double expected = 0d;
+		long observed = 0L;
+		double previousCdf = 0d;
+		for(int i = 0; i <= last; i++) {
+			double cdf = i == last ? 1d : var.cdf(histogram.getUpperEdge(i));
+			expected += n * (cdf - previousCdf);
+			observed += histogram.getCount(i);
+			previousCdf = cdf;
+			if(expected >= MIN_EXPECTED_COUNT && n * (1d - cdf) >= MIN_EXPECTED_COUNT) {
+				chi2 += (observed - expected) * (observed - expected) / expected;
+				groups++;
+				expected = 0d;
+				observed = 0L;
+			}
+		}
+		// the remaining bins form the last group
+		if(expected > 0 || observed > 0) {
+			chi2 += expected > 0 ? (observed - expected) * (observed - expected) / expected : Double.POSITIVE_INFINITY;
+			groups++;
+		}
+		if(groups < 2) {
+			return new Result("Chi-square", Double.NaN, Double.NaN, n);
+		}
+		return new Result("Chi-square", chi2, chiSquarePValue(chi2, groups - 1), n);
+	}
+	
+	/**
+	 * Return the asymptotic p-value of the Kolmogorov-Smirnov distance, 
+	 * with the small sample correction of Stephens.
+	 * 
+	 * @param d the distance
+	 * @param n the number of samples
+	 * @return the p-value
+	 */
+	public static double kolmogorovPValue(double d, long n) {
+		if(n == 0 || Double.isNaN(d)) {
+			return Double.NaN;
+		}
+		double sqrtN = Math.sqrt(n);
+		double lambda = (sqrtN + 0.12 + 0.11 / sqrtN) * d;
+		if(lambda < 0.2) {
+			return 1d;
+		}
+		double sum = 0d, sign = 1d;
+		for(int k = 1; k <= 100; k++) {
+			double term = sign * Math.exp(-2d * k * k * lambda * lambda);
+			sum += term;
+			if(Math.abs(term) < 1e-16 * sum) {
+				break;
+			}
+			sign = -sign;
+		}
+		return Math.max(0d, Math.min(1d, 2 * sum));
+	}
+	
+	/**
+	 * Return the asymptotic CDF of the Anderson-Darling statistic 
+	 * (Marsaglia and Marsaglia, 2004).
+	 * 
+	 * @param z the statistic
+	 * @return the probability of a statistic lower than z
+	 */
+	public static double andersonDarlingCdf(double z) {
+		if(!(z > 0)) {
+			return 0d;
+		}
+		if(z < 2) {
+			return Math.exp(-1.2337141 / z) / Math.sqrt(z) * (2.00012 + (.247105 - (.0649821 - (.0347962 
+					- (.011672 - .00168691 * z) * z) * z) * z) * z);
+		}
+		return Math.exp(-Math.exp(1.0776 - (2.30695 - (.43424 - (.082433 - (.008056 - .0003146 * z) * z) * z) * z) * z));
+	}
+	
+	/**
+	 * Return the p-value of a chi-square statistic.
+	 * 
+	 * @param chi2 the statistic
+	 * @param degreesOfFreedom the degrees of freedom
+	 * @return the probability of a statistic greater than chi2
+	 */
+	public static double chiSquarePValue(double chi2, int degreesOfFreedom) {
+		return SpecialFunctions.regularizedGammaQ(degreesOfFreedom / 2d, chi2 / 2d);
+	}
+	
+	/** Keep a probability away from 0 and 1, where the logarithms diverge. */
+	private static double clamp(double p) {
+		return Math.max(Double.MIN_NORMAL, Math.min(1d - 0x1p-53, p));
+	}
+
+}
@@ -0,0 +1,332 @@
+package org.simqueue.statistics;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Arrays;
+
+/**
+ * A histogram of non-negative samples with a constant memory footprint.
+ * Samples are counted in fixed-width bins over [min,max), or in 
+ * log-bucketed bins (as in HdrHistogram) where each power of 2 is split 
+ * in a number of sub-buckets, so that the relative error of the quantiles 
+ * is bounded by 1/subBuckets over the whole double range.
+ * Histograms with the same layout can be merged.
+ */
+public class Histogram {
+
+	/** The lowest power of 2 of the log-bucketed layout. Smaller samples are counted in the first bin. */
+	private static final int MIN_EXPONENT = -64;
+	
+	/** The highest power of 2 of the log-bucketed layout. Larger samples are counted in the last bin. */
+	private static final int MAX_EXPONENT = 64;
+	
+	private final boolean logarithmic;
+	private final double low;
+	private final double high;
+	private final int subBuckets;
+	private final long[] counts;
+	
+	private long count = 0L;
+	private double sum = 0d;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	
+	/** Constructor. Use the factory methods. */
+	private Histogram(boolean logarithmic, double low, double high, int subBuckets, int bins) {
+		this.logarithmic = logarithmic;
+		this.low = low;
+		this.high = high;
+		this.subBuckets = subBuckets;
+		this.counts = new long[bins];
+	}
+	
+	/**
+	 * Create a histogram of bins of the same width over [min,max). 
+	 * Samples out of the range are counted in the first or last bin.
+	 * 
+	 * @param min the lower bound
+	 * @param max the upper bound
+	 * @param bins the number of bins
+	 * @return the histogram
+	 */
+	public static Histogram linear(double min, double max, int bins) {
+		if(!(min < max) || bins < 1) {
+			throw new IllegalArgumentException("Require min < max and bins > 0.");
+		}
+		return new Histogram(false, min, max, 0, bins);
+	}
+	
+	/**
+	 * Create a log-bucketed histogram, where each power of 2 between 2^-64 
+	 * and 2^64 is split in subBuckets bins.
+	 * 
+	 * @param subBuckets the number of bins per power of 2 (e.g. 64 for a relative error of 1.6%)
+	 * @return the histogram
+	 */
+	public static Histogram logarithmic(int subBuckets) {
+		if(subBuckets < 1) {
+			throw new IllegalArgumentException("Require subBuckets > 0.");
+		}
+		return new Histogram(true, 0d, 0d, subBuckets, logBins(subBuckets));
+	}
+	
+	/** Return the number of bins of the log-bucketed layout. */
+	static int logBins(int subBuckets) {
+		return (MAX_EXPONENT - MIN_EXPONENT) * subBuckets;
+	}
+	
+	/** Return the log-bucketed bin of a positive sample. */
+	static int logIndex(double x, int subBuckets) {
+		int e = Math.getExponent(x);
+		if(e < MIN_EXPONENT) {
+			return 0;
+		}
+		if(e >= MAX_EXPONENT) {
+			return logBins(subBuckets) - 1;
+		}
+		// the mantissa x / 2^e is in [1,2)
+		int sub = (int) ((Math.scalb(x, -e) - 1d) * subBuckets);
+		return (e - MIN_EXPONENT) * subBuckets + Math.min(sub, subBuckets - 1);
+	}
+	
+	/** Return the lower edge of a log-bucketed bin. */
+	static double logLowerEdge(int i, int subBuckets) {
+		return Math.scalb(1d + (double) (i % subBuckets) / subBuckets, i / subBuckets + MIN_EXPONENT);
+	}
+	
+	/**
+	 * Return a new, empty histogram with the same layout of this one.
+	 * 
+	 * @return the histogram
+	 */
+	public Histogram emptyCopy() {
+		return new Histogram(logarithmic, low, high, subBuckets, counts.length);
+	}
+	
+	/** Return the bin of a sample. */
+	private int index(double x) {
+		if(logarithmic) {
+			return x > 0 ? logIndex(x, subBuckets) : 0;
+		}
+		int i = (int) Math.floor((x - low) / (high - low) * counts.length);
+		return i < 0 ? 0 : (i >= counts.length ? counts.length - 1 : i);
+	}
+	
+	/**
+	 * Return the lower edge of a bin.
+	 * 
+	 * @param i the bin
+	 * @return the lower edge
+	 */
+	public double getLowerEdge(int i) {
+		if(logarithmic) {
+			return logLowerEdge(i, subBuckets);
+		}
+		return low + (high - low) * i / counts.length;
+	}
+	
+	/**
+	 * Return the upper edge of a bin.
+	 * 
+	 * @param i the bin
+	 * @return the upper edge
+	 */
+	public double getUpperEdge(int i) {
+		if(logarithmic) {
+			return logLowerEdge(i + 1, subBuckets);
+		}
+		return low + (high - low) * (i + 1) / counts.length;
+	}
+	
+	/**
+	 * Add a sample.
+	 * 
+	 * @param x the sample
+	 */
+	public void add(double x) {
+		counts[index(x)]++;
+		count++;
+		sum += x;
+		if(x < min)
+			min = x;
+		if(x > max)
+			max = x;
+	}
+	
+	/**
+	 * Add the counts of another histogram with the same layout.
+	 * 
+	 * @param other the histogram
+	 */
+	public void merge(Histogram other) {
+		if(other.logarithmic != logarithmic || other.counts.length != counts.length 
+				|| other.low != low || other.high != high) {
+			throw new IllegalArgumentException("The histograms have different layouts.");
+		}
+		for(int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+	
+	/** Remove all the samples. */
+	public void reset() {
+		Arrays.fill(counts, 0L);
+		count = 0L;
+		sum = 0d;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+	
+	/**
+	 * Return the number of bins.
+	 * @return the number of bins
+	 */
+	public int getBins() {
+		return counts.length;
+	}
+	
+	/**
+	 * Return the number of samples in a bin.
+	 * 
+	 * @param i the bin
+	 * @return the count
+	 */
+	public long getCount(int i) {
+		return counts[i];
+	}
+	
+	/**
+	 * Return the number of samples.
+	 * @return the count
+	 */
+	public long getCount() {
+		return count;
+	}
+	
+	/**
+	 * Return the exact mean of the samples.
+	 * @return the mean, or NaN if empty
+	 */
+	public double getMean() {
+		return count == 0 ? Double.NaN : sum / count;
+	}
+	
+	/**
+	 * Return the exact minimum sample.
+	 * @return the minimum
+	 */
+	public double getMin() {
+		return min;
+	}
+	
+	/**
+	 * Return the exact maximum sample.
+	 * @return the maximum
+	 */
+	public double getMax() {
+		return max;
+	}
+	
+	/**
+	 * Return the approximate quantile q, interpolating linearly within the bin.
+	 * 
+	 * @param q the probability, in [0,1]
+	 * @return the quantile, or NaN if empty
+	 */
+	public double quantile(double q) {
+		if(count == 0) {
+			return Double.NaN;
+		}
+		if(q <= 0) {
+			return min;
+		}
+		if(q >= 1) {
+			return max;
+		}
+		double target = q * count;
+		long cumulative = 0L;
+		for(int i = 0; i < counts.length; i++) {
+			if(counts[i] == 0) {
+				continue;
+			}
+			if(cumulative + counts[i] >= target) {
+				double lo = Math.max(getLowerEdge(i), min);
+				double hi = Math.min(getUpperEdge(i), max);
+				double x = lo + (hi - lo) * (target - cumulative) / counts[i];
+				return Math.max(min, Math.min(max, x));
+			}
+			cumulative += counts[i];
+		}
+		return max;
+	}
+	
+	/**
+	 * Return the fraction of samples lower than the upper edge of the bin of x.
+	 * 
+	 * @param x the value
+	 * @return the approximate empirical CDF at x
+	 */
+	public double cdf(double x) {
+		if(count == 0) {
+			return Double.NaN;
+		}
+		if(x < min) {
+			return 0d;
+		}
+		if(x >= max) {
+			return 1d;
+		}
+		int last = index(x);
+		long cumulative = 0L;
+		for(int i = 0; i <= last; i++) {
+			cumulative += counts[i];
+		}
+		return (double) cumulative / count;
+	}
+	
+	/**
+	 * Return the empirical CDF downsampled to a number of points, 
+	 * evenly spaced in probability.
+	 * 
+	 * @param points the number of points (at least 2)
+	 * @return the values (row 0) and their probabilities (row 1)
+	 */
+	public double[][] ecdf(int points) {
+		if(points < 2) {
+			throw new IllegalArgumentException("Require at least 2 points.");
+		}
+		double[][] ecdf = new double[2][points];
+		for(int j = 0; j < points; j++) {
+			double q = (double) j / (points - 1);
+			ecdf[0][j] = quantile(q);
+			ecdf[1][j] = q;
+		}
+		return ecdf;
+	}
+
+}
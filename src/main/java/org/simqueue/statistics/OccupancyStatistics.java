@@ -0,0 +1,313 @@
+package org.simqueue.statistics;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Arrays;
+
+import org.simqueue.utils.Json;
+
+
+/** 
+ * The time-weighted statistics of the queue occupancy: the time-average number of 
+ * clients in the system and in the queue, the server utilization, and the fraction 
+ * of time spent with k clients in the system. 
+ * 
+ * The arrival and leaving times of a FIFO queue are both sorted, so the number of 
+ * clients in the system is obtained by merging the two sequences in a single sweep, 
+ * without event objects or sorting. The statistics can be computed from a stored 
+ * history with of(), or incrementally with add() while the clients are simulated: 
+ * the leaving times not reached yet by the arrivals are kept in a ring buffer, 
+ * whose size is the number of clients in the system.
+ */
+public class OccupancyStatistics {
+
+	/** The largest number of clients in the system whose time is recorded separately. */
+	public static final int MAX_STATES = 1 << 16;
+	
+	/** The time of the last event. */
+	private double lastTime = 0d;
+	/** The number of clients in the system after the last event. */
+	private long inSystem = 0L;
+	/** The maximum number of clients in the system. */
+	private long maxInSystem = 0L;
+	/** The integral of the number of clients in the system. */
+	private double areaInSystem = 0d;
+	/** The integral of the number of clients in the queue. */
+	private double areaInQueue = 0d;
+	/** The time with at least one client in the system. */
+	private double busyTime = 0d;
+	/** The time spent with k clients in the system (the last one for MAX_STATES - 1 or more). */
+	private double[] stateTime = new double[16];
+	/** The number of clients. */
+	private long clients = 0L;
+	
+	// the ring buffer of the pending leaving times
+	private double[] pending = new double[16];
+	private int head = 0;
+	private int size = 0;
+	
+	/** The next leaving time of a history added by ranges, not processed yet. */
+	private int nextLeaving = 0;
+	
+	/** Default constructor */
+	public OccupancyStatistics() {
+
+	}
+	
+	/**
+	 * Compute the statistics of a stored history by merging its arrival and leaving times.
+	 * 
+	 * @param arrivals the arrival times, sorted
+	 * @param leavings the leaving times, sorted (FIFO queue)
+	 * @return the statistics
+	 */
+	public static OccupancyStatistics of(double[] arrivals, double[] leavings) {
+		OccupancyStatistics stats = new OccupancyStatistics();
+		stats.compute(arrivals, leavings);
+		return stats;
+	}
+	
+	/**
+	 * Reset the statistics and compute them from a stored history, reusing the buffers.
+	 * 
+	 * @param arrivals the arrival times, sorted
+	 * @param leavings the leaving times, sorted (FIFO queue)
+	 */
+	public void compute(double[] arrivals, double[] leavings) {
+		reset();
+		add(arrivals, leavings, 0, arrivals.length);
+		finish(leavings, arrivals.length);
+	}
+	
+	/**
+	 * Add the clients from..to-1 of a history being stored, e.g. while another 
+	 * thread simulates the next clients. The ranges must follow each other 
+	 * from 0, and the leaving times of the clients before to must be stored. 
+	 * Call finish(leavings, n) after the last range.
+	 * 
+	 * @param arrivals the arrival times, sorted
+	 * @param leavings the leaving times, sorted (FIFO queue)
+	 * @param from the first client (inclusive)
+	 * @param to the last client (exclusive)
+	 */
+	public void add(double[] arrivals, double[] leavings, int from, int to) {
+		int j = nextLeaving;
+		for(int i = from; i < to; i++) {
+			double arrival = arrivals[i];
+			// the clients leaving before (or when) this one arrives
+			while(j < i && leavings[j] <= arrival) {
+				leave(leavings[j++]);
+			}
+			arrive(arrival);
+		}
+		nextLeaving = j;
+		clients += to - from;
+	}
+	
+	/**
+	 * Process the leaving times of the clients of a history still in the system, 
+	 * after add(arrivals, leavings, from, to).
+	 * 
+	 * @param leavings the leaving times, sorted (FIFO queue)
+	 * @param n the number of clients of the history
+	 */
+	public void finish(double[] leavings, int n) {
+		while(nextLeaving < n) {
+			leave(leavings[nextLeaving++]);
+		}
+	}
+	
+	/** Reset the statistics, keeping the buffers for the next history. */
+	public void reset() {
+		lastTime = 0d;
+		inSystem = 0L;
+		maxInSystem = 0L;
+		areaInSystem = 0d;
+		areaInQueue = 0d;
+		busyTime = 0d;
+		Arrays.fill(stateTime, 0d);
+		clients = 0L;
+		head = 0;
+		size = 0;
+		nextLeaving = 0;
+	}
+	
+	/**
+	 * Add the next client of a FIFO queue. The clients must be added in arrival order.
+	 * Call finish() after the last client.
+	 * 
+	 * @param arrival the arrival time of the client
+	 * @param leaving the leaving time of the client
+	 */
+	public void add(double arrival, double leaving) {
+		while(size > 0 && pending[head] <= arrival) {
+			leave(pending[head]);
+			head = (head + 1) & (pending.length - 1);
+			size--;
+		}
+		arrive(arrival);
+		if(size == pending.length) {
+			// unroll the ring buffer into a buffer twice as large
+			double[] grown = new double[2 * size];
+			for(int k = 0; k < size; k++) {
+				grown[k] = pending[(head + k) & (pending.length - 1)];
+			}
+			pending = grown;
+			head = 0;
+		}
+		pending[(head + size) & (pending.length - 1)] = leaving;
+		size++;
+		clients++;
+	}
+	
+	/**
+	 * Process the leaving times of the clients still in the system, 
+	 * so that the statistics cover the whole history.
+	 */
+	public void finish() {
+		while(size > 0) {
+			leave(pending[head]);
+			head = (head + 1) & (pending.length - 1);
+			size--;
+		}
+	}
+	
+	/** Process an arrival event. */
+	private void arrive(double time) {
+		advance(time);
+		inSystem++;
+		if(inSystem > maxInSystem) {
+			maxInSystem = inSystem;
+		}
+	}
+	
+	/** Process a leaving event. */
+	private void leave(double time) {
+		advance(time);
+		inSystem--;
+	}
+	
+	/** Integrate the current state until time. */
+	private void advance(double time) {
+		double dt = time - lastTime;
+		if(dt > 0) {
+			areaInSystem += inSystem * dt;
+			if(inSystem > 0) {
+				areaInQueue += (inSystem - 1) * dt;
+				busyTime += dt;
+			}
+			int state = (int) Math.min(inSystem, MAX_STATES - 1);
+			if(state >= stateTime.length) {
+				stateTime = Arrays.copyOf(stateTime, Math.min(MAX_STATES, Math.max(2 * stateTime.length, state + 1)));
+			}
+			stateTime[state] += dt;
+			lastTime = time;
+		}
+	}
+	
+	/**
+	 * Return the length of the observed period, from time 0 to the last event.
+	 * @return the horizon
+	 */
+	public double getHorizon() {
+		return lastTime;
+	}
+	
+	/**
+	 * Return the number of clients added.
+	 * @return the number of clients
+	 */
+	public long getClients() {
+		return clients;
+	}
+	
+	/**
+	 * Return the time-average number of clients in the system (L).
+	 * @return the mean number in system
+	 */
+	public double getMeanInSystem() {
+		return lastTime > 0 ? areaInSystem / lastTime : 0d;
+	}
+	
+	/**
+	 * Return the time-average number of clients waiting in the queue (Lq).
+	 * @return the mean number in queue
+	 */
+	public double getMeanInQueue() {
+		return lastTime > 0 ? areaInQueue / lastTime : 0d;
+	}
+	
+	/**
+	 * Return the fraction of time the server is busy.
+	 * @return the utilization, in [0,1]
+	 */
+	public double getUtilization() {
+		return lastTime > 0 ? busyTime / lastTime : 0d;
+	}
+	
+	/**
+	 * Return the maximum number of clients in the system.
+	 * @return the maximum number in system
+	 */
+	public long getMaxInSystem() {
+		return maxInSystem;
+	}
+	
+	/**
+	 * Return the number of states whose probability is recorded, i.e. getMaxInSystem() + 1 
+	 * up to MAX_STATES.
+	 * @return the number of states
+	 */
+	public int getStates() {
+		return (int) Math.min(maxInSystem + 1, MAX_STATES);
+	}
+	
+	/**
+	 * Return the fraction of time spent with k clients in the system. 
+	 * The last state, MAX_STATES - 1, includes the larger numbers of clients.
+	 * 
+	 * @param k the number of clients
+	 * @return the probability
+	 */
+	public double getStateProbability(int k) {
+		if(k < 0 || k >= stateTime.length || lastTime <= 0) {
+			return 0d;
+		}
+		return stateTime[k] / lastTime;
+	}
+	
+	/** 
+	 * Return the statistics as a JSON object.
+	 * 
+	 * @return the JSON string
+	 */
+	public String toJson() {
+		return "{\"mean_in_system\":" + Json.number(getMeanInSystem()) +
+				",\"mean_in_queue\":" + Json.number(getMeanInQueue()) +
+				",\"utilization\":" + Json.number(getUtilization()) +
+				",\"max_in_system\":" + maxInSystem +
+				",\"horizon\":" + Json.number(lastTime) + "}";
+	}
+
+}
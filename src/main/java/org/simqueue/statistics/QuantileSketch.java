@@ -0,0 +1,218 @@
+package org.simqueue.statistics;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Arrays;
+
+
+/**
+ * A small, mergeable sketch of the quantiles of non-negative samples. 
+ * Samples are counted in the log-bucketed bins of a logarithmic Histogram 
+ * (each power of 2 split in subBuckets bins, for a relative error of the 
+ * quantiles bounded by 1/subBuckets), but only the range of bins between the 
+ * smallest and the largest sample is allocated, and zeros are counted apart. 
+ * Thousands of sketches, e.g. one per client index, fit in a few megabytes.
+ */
+public class QuantileSketch {
+
+	private final int subBuckets;
+	
+	/** The counts of the bins from offset to offset + counts.length - 1. */
+	private long[] counts = new long[0];
+	private int offset = 0;
+	
+	private long zeros = 0L;
+	private long count = 0L;
+	private double sum = 0d;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param subBuckets the number of bins per power of 2 (e.g. 32 for a relative error of 3%)
+	 */
+	public QuantileSketch(int subBuckets) {
+		if(subBuckets < 1) {
+			throw new IllegalArgumentException("Require subBuckets > 0.");
+		}
+		this.subBuckets = subBuckets;
+	}
+	
+	/** Make room for the bins from first to last. */
+	private void ensureRange(int first, int last) {
+		if(counts.length == 0) {
+			counts = new long[last - first + 1];
+			offset = first;
+			return;
+		}
+		int from = Math.min(first, offset), to = Math.max(last, offset + counts.length - 1);
+		if(from == offset && to == offset + counts.length - 1) {
+			return;
+		}
+		// grow by at least half of the current range on the side that overflows, to amortize the copies
+		int slack = counts.length / 2;
+		if(from < offset) {
+			from = Math.max(0, Math.min(from, offset - slack));
+		}
+		if(to > offset + counts.length - 1) {
+			to = Math.min(Histogram.logBins(subBuckets) - 1, Math.max(to, offset + counts.length - 1 + slack));
+		}
+		long[] grown = new long[to - from + 1];
+		System.arraycopy(counts, 0, grown, offset - from, counts.length);
+		counts = grown;
+		offset = from;
+	}
+	
+	/**
+	 * Add a sample.
+	 * 
+	 * @param x the sample, >= 0
+	 */
+	public void add(double x) {
+		count++;
+		sum += x;
+		if(x < min) {
+			min = x;
+		}
+		if(x > max) {
+			max = x;
+		}
+		if(!(x > 0)) {
+			zeros++;
+			return;
+		}
+		int bin = Histogram.logIndex(x, subBuckets);
+		if(bin < offset || bin >= offset + counts.length) {
+			ensureRange(bin, bin);
+		}
+		counts[bin - offset]++;
+	}
+	
+	/**
+	 * Add the samples of another sketch with the same number of sub-buckets.
+	 * 
+	 * @param other the sketch
+	 */
+	public void merge(QuantileSketch other) {
+		if(other.subBuckets != subBuckets) {
+			throw new IllegalArgumentException("The sketches have different sub-buckets.");
+		}
+		if(other.count == 0) {
+			return;
+		}
+		if(other.counts.length > 0) {
+			ensureRange(other.offset, other.offset + other.counts.length - 1);
+			for(int i = 0; i < other.counts.length; i++) {
+				counts[other.offset - offset + i] += other.counts[i];
+			}
+		}
+		zeros += other.zeros;
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+	
+	/** Remove all the samples. */
+	public void reset() {
+		Arrays.fill(counts, 0L);
+		zeros = 0L;
+		count = 0L;
+		sum = 0d;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+	
+	/**
+	 * Return the q-quantile of the samples, with a relative error bounded by 1/subBuckets.
+	 * 
+	 * @param q the probability, in [0,1]
+	 * @return the quantile, or NaN if there are no samples
+	 */
+	public double quantile(double q) {
+		if(count == 0) {
+			return Double.NaN;
+		}
+		if(q <= 0) {
+			return min;
+		}
+		long rank = (long) Math.ceil(q * count);
+		if(rank <= zeros) {
+			return 0d;
+		}
+		long seen = zeros;
+		for(int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if(seen >= rank) {
+				int bin = offset + i;
+				// the middle of the bin, within the observed range
+				double mid = (Histogram.logLowerEdge(bin, subBuckets) + Histogram.logLowerEdge(bin + 1, subBuckets)) / 2;
+				return Math.max(min, Math.min(max, mid));
+			}
+		}
+		return max;
+	}
+	
+	/**
+	 * Return the number of samples.
+	 * @return the count
+	 */
+	public long getCount() {
+		return count;
+	}
+	
+	/**
+	 * Return the mean of the samples.
+	 * @return the mean, or NaN if there are no samples
+	 */
+	public double getMean() {
+		return count > 0 ? sum / count : Double.NaN;
+	}
+	
+	/**
+	 * Return the smallest sample.
+	 * @return the minimum
+	 */
+	public double getMin() {
+		return min;
+	}
+	
+	/**
+	 * Return the largest sample.
+	 * @return the maximum
+	 */
+	public double getMax() {
+		return max;
+	}
+	
+	/**
+	 * Return the fraction of samples equal to 0.
+	 * @return the fraction of zeros, or NaN if there are no samples
+	 */
+	public double getZeroFraction() {
+		return count > 0 ? (double) zeros / count : Double.NaN;
+	}
+
+}
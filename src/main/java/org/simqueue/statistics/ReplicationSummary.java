@@ -0,0 +1,180 @@
+package org.simqueue.statistics;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Arrays;
+
+
+/**
+ * A mergeable summary of the results of independent replications: the count, 
+ * the sums, and the sums of squares of a few metrics per replication, from which 
+ * the mean of each metric and its standard error are computed. Summaries of 
+ * chunks of replications can be merged in any order, so the raw histories never 
+ * leave the process that simulated them.
+ */
+public class ReplicationSummary {
+
+	/** The metrics of each replication. */
+	public static final String[] METRICS = { "Mean waiting time", "Mean service time", "Mean arrive time", 
+			"Mean number in system", "Server utilization", "d(wait)/d(service rate)", "d(wait)/d(arrival rate)" };
+	
+	/** The 0.975 quantile of the standard normal distribution, for 95% confidence intervals. */
+	private static final double Z_975 = 1.959963984540054;
+	
+	private long count = 0L;
+	private final double[] sum = new double[METRICS.length];
+	private final double[] sumSquared = new double[METRICS.length];
+	
+	/** Default constructor */
+	public ReplicationSummary() {
+
+	}
+	
+	/**
+	 * Add the metrics of a replication.
+	 * 
+	 * @param values the values of the metrics, in the order of METRICS
+	 */
+	public void add(double[] values) {
+		if(values.length != METRICS.length) {
+			throw new IllegalArgumentException("Expected " + METRICS.length + " metrics.");
+		}
+		count++;
+		for(int i = 0; i < values.length; i++) {
+			sum[i] += values[i];
+			sumSquared[i] += values[i] * values[i];
+		}
+	}
+	
+	/**
+	 * Add the replications of another summary.
+	 * 
+	 * @param other the summary
+	 */
+	public void merge(ReplicationSummary other) {
+		count += other.count;
+		for(int i = 0; i < sum.length; i++) {
+			sum[i] += other.sum[i];
+			sumSquared[i] += other.sumSquared[i];
+		}
+	}
+	
+	/**
+	 * Return the number of replications.
+	 * @return the count
+	 */
+	public long getCount() {
+		return count;
+	}
+	
+	/**
+	 * Return the mean of a metric across the replications.
+	 * 
+	 * @param metric the index of the metric in METRICS
+	 * @return the mean
+	 */
+	public double getMean(int metric) {
+		return count > 0 ? sum[metric] / count : Double.NaN;
+	}
+	
+	/**
+	 * Return the standard error of the mean of a metric.
+	 * 
+	 * @param metric the index of the metric in METRICS
+	 * @return the sample standard deviation divided by the square root of the count
+	 */
+	public double getStandardError(int metric) {
+		if(count < 2) {
+			return Double.NaN;
+		}
+		double mean = sum[metric] / count;
+		double var = Math.max(0d, (sumSquared[metric] - count * mean * mean) / (count - 1));
+		return Math.sqrt(var / count);
+	}
+	
+	/**
+	 * Encode the summary as a single line of comma separated numbers 
+	 * (count, sums, sums of squares), exact in its decimal form.
+	 * 
+	 * @return the encoded summary
+	 */
+	public String encode() {
+		StringBuilder s = new StringBuilder().append(count);
+		for(double x : sum) {
+			s.append(',').append(x);
+		}
+		for(double x : sumSquared) {
+			s.append(',').append(x);
+		}
+		return s.toString();
+	}
+	
+	/**
+	 * Decode a summary encoded by encode().
+	 * 
+	 * @param encoded the encoded summary
+	 * @return the summary
+	 * @throws IllegalArgumentException if the summary is malformed
+	 */
+	public static ReplicationSummary decode(String encoded) {
+		String[] fields = encoded.split(",");
+		if(fields.length != 1 + 2 * METRICS.length) {
+			throw new IllegalArgumentException("Malformed summary: " + encoded);
+		}
+		ReplicationSummary summary = new ReplicationSummary();
+		summary.count = Long.parseLong(fields[0]);
+		for(int i = 0; i < METRICS.length; i++) {
+			summary.sum[i] = Double.parseDouble(fields[1 + i]);
+			summary.sumSquared[i] = Double.parseDouble(fields[1 + METRICS.length + i]);
+		}
+		return summary;
+	}
+	
+	/** {@inheritDoc} */
+	public boolean equals(Object o) {
+		if(!(o instanceof ReplicationSummary)) {
+			return false;
+		}
+		ReplicationSummary other = (ReplicationSummary) o;
+		return count == other.count && Arrays.equals(sum, other.sum) && Arrays.equals(sumSquared, other.sumSquared);
+	}
+	
+	/** {@inheritDoc} */
+	public int hashCode() {
+		return 31 * Long.hashCode(count) + Arrays.hashCode(sum);
+	}
+	
+	/** {@inheritDoc} */
+	public String toString() {
+		StringBuilder s = new StringBuilder(String.format("[REPLICATIONS] %d independent replications", count));
+		s.append(String.format("%n    %-24s\t%-14s\t%-14s\t%s", "metric", "mean", "std error", "95% confidence interval"));
+		for(int i = 0; i < METRICS.length; i++) {
+			double mean = getMean(i), se = getStandardError(i);
+			s.append(String.format("%n %d- %-24s\t%-14.8g\t%-14.6g\t[%.8g, %.8g]", i + 1, METRICS[i], mean, se, 
+					mean - Z_975 * se, mean + Z_975 * se));
+		}
+		return s.toString();
+	}
+
+}
@@ -0,0 +1,164 @@
+package org.simqueue.statistics;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.PrintWriter;
+
+
+/**
+ * A streaming rollup of the clients of a queue into fixed time windows, 
+ * as the per-minute or per-hour series of a dashboard. Each client is 
+ * assigned to the window of its arrival or of its departure time; as the 
+ * clients of a FIFO queue arrive and depart in order, each window is 
+ * complete, and written as one row, when the first client of a later window 
+ * is added. Only the current window is kept in memory: its count, the sums 
+ * and maximum of the waiting and response times, and a small quantile 
+ * sketch of the waiting times. The windows without clients are written too, 
+ * so the series is regular from time 0.
+ */
+public class TimeWindowRollup {
+
+	/** The time assigning a client to a window. */
+	public enum By {
+		/** The arrival time. */
+		ARRIVAL,
+		/** The leaving time. */
+		DEPARTURE
+	}
+	
+	/** The bins of the sketches per power of 2 (a relative error of the quantiles within 3%). */
+	private static final int SKETCH_SUB_BUCKETS = 32;
+	
+	private final double window;
+	private final By by;
+	private final PrintWriter out;
+	
+	/** The current window. */
+	private long current = 0L;
+	private long count = 0L;
+	private double waitingTimeSum = 0d;
+	private double maxWaitingTime = 0d;
+	private double responseTimeSum = 0d;
+	private final QuantileSketch waits = new QuantileSketch(SKETCH_SUB_BUCKETS);
+	
+	private long windows = 0L;
+	private long clients = 0L;
+	
+	/**
+	 * Constructor. The header of the series is written.
+	 * 
+	 * @param window the length of each window (min)
+	 * @param by the time assigning a client to a window
+	 * @param out the writer of the rows, as tab separated values
+	 */
+	public TimeWindowRollup(double window, By by, PrintWriter out) {
+		if(!(window > 0) || Double.isInfinite(window)) {
+			throw new IllegalArgumentException("The window must be positive.");
+		}
+		this.window = window;
+		this.by = by;
+		this.out = out;
+		out.println("Window\tStartTime\tCount\tThroughput\tMeanWaitingTime\tMaxWaitingTime\tMeanResponseTime"
+				+ "\tP50WaitingTime\tP90WaitingTime\tP99WaitingTime");
+	}
+	
+	/**
+	 * Add the next client. The clients must be added in order of the time 
+	 * assigning them to a window.
+	 * 
+	 * @param arrival the arrival time
+	 * @param serving the serving time
+	 * @param leaving the leaving time
+	 * @throws IllegalArgumentException if the client belongs to a window already written
+	 */
+	public void add(double arrival, double serving, double leaving) {
+		long w = (long) Math.floor((by == By.ARRIVAL ? arrival : leaving) / window);
+		if(w != current) {
+			if(w < current) {
+				throw new IllegalArgumentException("The clients must be added in order of " 
+						+ by.name().toLowerCase() + " time.");
+			}
+			// write the current window and the empty ones before the client
+			while(current < w) {
+				writeWindow();
+			}
+		}
+		double wait = serving - arrival;
+		count++;
+		waitingTimeSum += wait;
+		if(wait > maxWaitingTime) {
+			maxWaitingTime = wait;
+		}
+		responseTimeSum += leaving - arrival;
+		waits.add(wait);
+	}
+	
+	/** Write the last window, after the last client. */
+	public void finish() {
+		if(count > 0) {
+			writeWindow();
+		}
+		out.flush();
+	}
+	
+	/** Write the current window, then clear it for the next one. */
+	private void writeWindow() {
+		StringBuilder row = new StringBuilder();
+		row.append(current).append('\t').append(current * window).append('\t').append(count)
+			.append('\t').append(count / window * 60.0d);
+		if(count > 0) {
+			row.append('\t').append(waitingTimeSum / count).append('\t').append(maxWaitingTime)
+				.append('\t').append(responseTimeSum / count).append('\t').append(waits.quantile(0.5))
+				.append('\t').append(waits.quantile(0.9)).append('\t').append(waits.quantile(0.99));
+		} else {
+			row.append("\t0.0\t0.0\t0.0\t0.0\t0.0\t0.0");
+		}
+		out.println(row);
+		windows++;
+		clients += count;
+		current++;
+		count = 0L;
+		waitingTimeSum = 0d;
+		maxWaitingTime = 0d;
+		responseTimeSum = 0d;
+		waits.reset();
+	}
+	
+	/**
+	 * Return the number of windows written.
+	 * @return the windows
+	 */
+	public long getWindows() {
+		return windows;
+	}
+	
+	/**
+	 * Return the number of clients of the windows written.
+	 * @return the clients
+	 */
+	public long getClients() {
+		return clients;
+	}
+
+}
@@ -24,37 +24,54 @@ package org.simqueue.utils;
  */
 
 import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
 
 
 /**
- * An utility to compute the elapsed time in minutes, seconds, and milliseconds
+ * An utility to compute the elapsed time in hours, minutes, seconds, and milliseconds
  */
 public class ElapsedTime {
-	
+
 	/**
 	 * Print the running time of the simulation.
-	 * 
+	 *
 	 * @param start
 	 * @param end
 	 * @return the human readable string
 	 */
     public static String compute(Calendar start, Calendar end) {
         if(start != null && end != null) {
-            int m  = end.get( Calendar.MINUTE ) - start.get( Calendar.MINUTE );
-            int s  = end.get( Calendar.SECOND ) - start.get( Calendar.SECOND );
-            int ms = end.get( Calendar.MILLISECOND ) - start.get( Calendar.MILLISECOND );
-            if( m < 0 ) m = 60 + m;
-            if( s < 0 ) {
-                m--;
-                s = 60 + s;
-            }
-            if( ms < 0 ) {
-                s--;
-                ms = 1000 + ms;
-            }
-            return "Running time of the simulation: " + m + " min " + s + " s " + ms + " ms";
+            return compute(TimeUnit.MILLISECONDS.toNanos(end.getTimeInMillis() - start.getTimeInMillis()));
         }
         return "";
-    }	
+    }
+
+	/**
+	 * Print the running time of the simulation.
+	 *
+	 * @param nanos the running time in nanoseconds, e.g. the difference of two System.nanoTime() calls
+	 * @return the human readable string
+	 */
+    public static String compute(long nanos) {
+        return "Running time of the simulation: " + format(nanos);
+    }
+
+	/**
+	 * Format a duration as hours, minutes, seconds, and milliseconds.
+	 *
+	 * @param nanos the duration in nanoseconds
+	 * @return the human readable string
+	 */
+    public static String format(long nanos) {
+        long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+        long h = ms / 3600000;
+        long m = (ms / 60000) % 60;
+        long s = (ms / 1000) % 60;
+        ms = ms % 1000;
+        if( h > 0 ) {
+            return h + " h " + m + " min " + s + " s " + ms + " ms";
+        }
+        return m + " min " + s + " s " + ms + " ms";
+    }
 
 }
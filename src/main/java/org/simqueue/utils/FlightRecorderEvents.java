@@ -0,0 +1,171 @@
+package org.simqueue.utils;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+/**
+ * The JDK Flight Recorder events of the simulations: runs with their 
+ * parameters, phases, chunks of the parallel modes, output blocks, and 
+ * result cache lookups. They are recorded with e.g. 
+ * <code>jcmd &lt;pid&gt; JFR.start</code> or -XX:StartFlightRecording, 
+ * under the category SimQueue.
+ * 
+ * The event classes are loaded only if jdk.jfr is present (Java 11, or 
+ * Java 8 from update 262) and the system property simqueue.jfr is not 
+ * false. Otherwise each method returns after testing a static final flag, 
+ * which the JIT folds away; when JFR is present but not recording, the 
+ * events are not committed and their allocation is eliminated. The events 
+ * are emitted once per run, phase, chunk, or block, never per client.
+ */
+public final class FlightRecorderEvents {
+
+	/** Whether the JFR events are emitted. */
+	public static final boolean AVAILABLE = isAvailable();
+	
+	private FlightRecorderEvents() {
+		
+	}
+	
+	/** Return whether jdk.jfr can be loaded and is not disabled. */
+	private static boolean isAvailable() {
+		if("false".equalsIgnoreCase(System.getProperty("simqueue.jfr"))) {
+			return false;
+		}
+		try {
+			Class.forName("jdk.jfr.Event", false, FlightRecorderEvents.class.getClassLoader());
+			return true;
+		} catch(ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Begin the event of a simulation run.
+	 * 
+	 * @param clients the number of clients
+	 * @param meanInterArrivalTime the mean inter-arrival time (min)
+	 * @param serviceDistribution the name of the service time variable
+	 * @param meanServiceTime the mean service time (min)
+	 * @param historyMode the history mode
+	 * @param seed the seed, or null
+	 * @return the event to pass to endRun(), or null if not recorded
+	 */
+	public static Object beginRun(long clients, double meanInterArrivalTime, String serviceDistribution, 
+			double meanServiceTime, String historyMode, Long seed) {
+		if(!AVAILABLE) {
+			return null;
+		}
+		return JfrEvents.beginRun(clients, meanInterArrivalTime, serviceDistribution, meanServiceTime, 
+				historyMode, seed);
+	}
+	
+	/**
+	 * Commit the event of a simulation run.
+	 * 
+	 * @param event the event returned by beginRun()
+	 * @param meanWaitingTime the simulated mean waiting time (min)
+	 */
+	public static void endRun(Object event, double meanWaitingTime) {
+		if(event != null) {
+			JfrEvents.endRun(event, meanWaitingTime);
+		}
+	}
+	
+	/**
+	 * Begin the event of a phase of a simulation run.
+	 * 
+	 * @param phase the name of the phase
+	 * @return the event to pass to endPhase(), or null if not recorded
+	 */
+	public static Object beginPhase(String phase) {
+		if(!AVAILABLE) {
+			return null;
+		}
+		return JfrEvents.beginPhase(phase);
+	}
+	
+	/**
+	 * Commit the event of a phase.
+	 * 
+	 * @param event the event returned by beginPhase()
+	 */
+	public static void endPhase(Object event) {
+		if(event != null) {
+			JfrEvents.endPhase(event);
+		}
+	}
+	
+	/**
+	 * Begin the event of a chunk of replications of a parallel mode.
+	 * 
+	 * @return the event to pass to endChunk(), or null if not recorded
+	 */
+	public static Object beginChunk() {
+		if(!AVAILABLE) {
+			return null;
+		}
+		return JfrEvents.beginChunk();
+	}
+	
+	/**
+	 * Commit the event of a completed chunk.
+	 * 
+	 * @param event the event returned by beginChunk()
+	 * @param mode the parallel mode, e.g. transient or coordinator
+	 * @param chunk the index of the chunk
+	 * @param replications the replications of the chunk
+	 * @param worker the thread or the address of the worker
+	 */
+	public static void endChunk(Object event, String mode, int chunk, long replications, String worker) {
+		if(event != null) {
+			JfrEvents.endChunk(event, mode, chunk, replications, worker);
+		}
+	}
+	
+	/**
+	 * Emit the event of a block of output written.
+	 * 
+	 * @param target the file or stream written
+	 * @param bytes the bytes of data
+	 * @param writtenBytes the bytes written, e.g. after compression
+	 */
+	public static void outputFlush(String target, long bytes, long writtenBytes) {
+		if(AVAILABLE) {
+			JfrEvents.outputFlush(target, bytes, writtenBytes);
+		}
+	}
+	
+	/**
+	 * Emit the event of a lookup in a result cache.
+	 * 
+	 * @param key the key of the scenario
+	 * @param result memory, disk, miss, or uncached
+	 */
+	public static void cacheLookup(String key, String result) {
+		if(AVAILABLE) {
+			JfrEvents.cacheLookup(key, result);
+		}
+	}
+
+}
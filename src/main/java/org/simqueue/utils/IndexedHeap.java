@@ -0,0 +1,198 @@
+package org.simqueue.utils;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Arrays;
+
+
+/**
+ * A binary min-heap of the items 0..capacity-1 with double keys, stored in 
+ * primitive arrays. The position of each item in the heap is indexed, so the 
+ * key of any item can be changed or removed in O(log n), and the item with 
+ * the minimum key is read in O(1). Ties are broken by the lowest item, so 
+ * the order is deterministic.
+ */
+public class IndexedHeap {
+
+	/** The items, in heap order. */
+	private final int[] heap;
+	/** The position of each item in heap (-1 if absent). */
+	private final int[] position;
+	/** The key of each item. */
+	private final double[] key;
+	private int size = 0;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param capacity the number of items
+	 */
+	public IndexedHeap(int capacity) {
+		heap = new int[capacity];
+		position = new int[capacity];
+		key = new double[capacity];
+		Arrays.fill(position, -1);
+	}
+	
+	/**
+	 * Insert an item, or change its key.
+	 * 
+	 * @param item the item
+	 * @param k the key
+	 */
+	public void set(int item, double k) {
+		int p = position[item];
+		if(p < 0) {
+			key[item] = k;
+			heap[size] = item;
+			position[item] = size;
+			siftUp(size++);
+			return;
+		}
+		double old = key[item];
+		key[item] = k;
+		if(k < old) {
+			siftUp(p);
+		} else if(k > old) {
+			siftDown(p);
+		}
+	}
+	
+	/**
+	 * Remove an item, if present.
+	 * 
+	 * @param item the item
+	 */
+	public void remove(int item) {
+		int p = position[item];
+		if(p < 0) {
+			return;
+		}
+		position[item] = -1;
+		size--;
+		if(p == size) {
+			return;
+		}
+		// move the last item in the hole
+		int last = heap[size];
+		heap[p] = last;
+		position[last] = p;
+		siftUp(p);
+		siftDown(position[last]);
+	}
+	
+	/** Remove all the items. */
+	public void clear() {
+		for(int i = 0; i < size; i++) {
+			position[heap[i]] = -1;
+		}
+		size = 0;
+	}
+	
+	/**
+	 * Return the item with the minimum key.
+	 * @return the item, or -1 if the heap is empty
+	 */
+	public int peek() {
+		return size > 0 ? heap[0] : -1;
+	}
+	
+	/**
+	 * Return the minimum key.
+	 * @return the key, or +infinity if the heap is empty
+	 */
+	public double peekKey() {
+		return size > 0 ? key[heap[0]] : Double.POSITIVE_INFINITY;
+	}
+	
+	/**
+	 * Return whether an item is in the heap.
+	 * 
+	 * @param item the item
+	 * @return true if present
+	 */
+	public boolean contains(int item) {
+		return position[item] >= 0;
+	}
+	
+	/**
+	 * Return the key of an item.
+	 * 
+	 * @param item the item
+	 * @return the key (meaningless if the item is absent)
+	 */
+	public double getKey(int item) {
+		return key[item];
+	}
+	
+	/**
+	 * Return the number of items in the heap.
+	 * @return the size
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/** Return whether item a precedes item b. */
+	private boolean less(int a, int b) {
+		return key[a] < key[b] || (key[a] == key[b] && a < b);
+	}
+	
+	private void siftUp(int p) {
+		int item = heap[p];
+		while(p > 0) {
+			int parent = (p - 1) >>> 1;
+			if(!less(item, heap[parent])) {
+				break;
+			}
+			heap[p] = heap[parent];
+			position[heap[p]] = p;
+			p = parent;
+		}
+		heap[p] = item;
+		position[item] = p;
+	}
+	
+	private void siftDown(int p) {
+		int item = heap[p];
+		while(true) {
+			int child = 2 * p + 1;
+			if(child >= size) {
+				break;
+			}
+			if(child + 1 < size && less(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if(!less(heap[child], item)) {
+				break;
+			}
+			heap[p] = heap[child];
+			position[heap[p]] = p;
+			p = child;
+		}
+		heap[p] = item;
+		position[item] = p;
+	}
+
+}
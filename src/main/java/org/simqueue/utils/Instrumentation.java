@@ -0,0 +1,297 @@
+package org.simqueue.utils;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ * Phase-level timing and progress instrumentation for a simulation run.
+ * Phases are timed with System.nanoTime(). The simulation loops publish
+ * their progress once every PROGRESS_BLOCK clients, so that a live report
+ * (clients per second, ETA) can be printed without slowing them down.
+ * The collected values can be queried directly or through JMX.
+ */
+public class Instrumentation implements InstrumentationMBean {
+
+	/** The phases of a simulation run. */
+	public enum Phase {
+		PARAMETER_LOAD,
+		ARRIVAL_GENERATION,
+		SERVICE_RECURSION,
+		STATISTICS,
+		OUTPUT
+	}
+
+	/** Number of clients processed by the simulation loops between two progress updates. */
+	public static final int PROGRESS_BLOCK = 1 << 16;
+
+	/** The JMX object name used by registerMBean(). */
+	public static final String OBJECT_NAME = "org.simqueue:type=Instrumentation";
+
+	/** The accumulated duration of each phase. */
+	private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+
+	/** The start time of each phase currently running. */
+	private final long[] phaseStart = new long[Phase.values().length];
+
+	/** The JFR event of each phase currently running (null if not recorded). */
+	private final Object[] phaseEvent = new Object[Phase.values().length];
+
+	// Progress is measured in client steps: each client is processed once
+	// by the arrival generation and once by the service recursion.
+	private volatile long stepsDone = 0L;
+	private volatile long stepsTotal = 0L;
+	private volatile long progressStart = 0L;
+
+	/** The scheduler printing the progress reports. */
+	private ScheduledExecutorService reporter = null;
+
+	/** Default constructor */
+	public Instrumentation() {
+
+	}
+
+	/** Reset all the collected values. */
+	public void reset() {
+		for (int i = 0; i < phaseNanos.length(); i++) {
+			phaseNanos.set(i, 0L);
+		}
+		stepsDone = 0L;
+		stepsTotal = 0L;
+		progressStart = 0L;
+	}
+
+	/**
+	 * Start timing a phase.
+	 *
+	 * @param phase the phase
+	 */
+	public void start(Phase phase) {
+		phaseEvent[phase.ordinal()] = FlightRecorderEvents.beginPhase(phase.name());
+		phaseStart[phase.ordinal()] = System.nanoTime();
+	}
+
+	/**
+	 * Stop timing a phase. The elapsed time is added to the phase duration.
+	 *
+	 * @param phase the phase
+	 */
+	public void stop(Phase phase) {
+		phaseNanos.addAndGet(phase.ordinal(), System.nanoTime() - phaseStart[phase.ordinal()]);
+		FlightRecorderEvents.endPhase(phaseEvent[phase.ordinal()]);
+		phaseEvent[phase.ordinal()] = null;
+	}
+
+	/**
+	 * Return the accumulated duration of a phase.
+	 *
+	 * @param phase the phase
+	 * @return the duration in nanoseconds
+	 */
+	public long getPhaseNanos(Phase phase) {
+		return phaseNanos.get(phase.ordinal());
+	}
+
+	/**
+	 * Start tracking the progress of a simulation of clientsNum clients.
+	 *
+	 * @param clientsNum the number of clients to simulate
+	 */
+	public void beginProgress(long clientsNum) {
+		stepsDone = 0L;
+		stepsTotal = 2 * clientsNum;
+		progressStart = System.nanoTime();
+	}
+
+	/**
+	 * Publish that a block of clients has been processed by the current phase.
+	 * This must be called by the simulation thread only.
+	 *
+	 * @param clients the number of clients processed since the last call
+	 */
+	public void addProgress(long clients) {
+		stepsDone = stepsDone + clients;
+	}
+
+	/**
+	 * Start printing a progress report every intervalMillis milliseconds.
+	 *
+	 * @param intervalMillis the report interval
+	 * @param out the stream where the reports are printed
+	 */
+	public synchronized void startReporter(long intervalMillis, final PrintStream out) {
+		stopReporter();
+		reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "simqueue-progress");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		reporter.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				if (stepsTotal > 0) {
+					out.println(getProgressString());
+				}
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/** Stop printing the progress reports. */
+	public synchronized void stopReporter() {
+		if (reporter != null) {
+			reporter.shutdownNow();
+			reporter = null;
+		}
+	}
+
+	/**
+	 * Register this object in the platform MBean server as OBJECT_NAME.
+	 * A previously registered instance is replaced.
+	 *
+	 * @throws JMException if the registration fails
+	 */
+	public void registerMBean() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (server.isRegistered(name)) {
+			server.unregisterMBean(name);
+		}
+		server.registerMBean(this, name);
+	}
+
+	/**
+	 * Return a one-line progress report.
+	 *
+	 * @return the progress string
+	 */
+	public String getProgressString() {
+		long eta = getEtaNanos();
+		return String.format("Progress: %5.1f%% (%d/%d clients), %.0f clients/s, ETA %s",
+				100 * getProgress(), getClientsProcessed(), getClientsTotal(), getClientsPerSecond(),
+				eta < 0 ? "unknown" : ElapsedTime.format(eta));
+	}
+
+	/** {@inheritDoc} */
+	public long getParameterLoadNanos() {
+		return getPhaseNanos(Phase.PARAMETER_LOAD);
+	}
+
+	/** {@inheritDoc} */
+	public long getArrivalGenerationNanos() {
+		return getPhaseNanos(Phase.ARRIVAL_GENERATION);
+	}
+
+	/** {@inheritDoc} */
+	public long getServiceRecursionNanos() {
+		return getPhaseNanos(Phase.SERVICE_RECURSION);
+	}
+
+	/** {@inheritDoc} */
+	public long getStatisticsNanos() {
+		return getPhaseNanos(Phase.STATISTICS);
+	}
+
+	/** {@inheritDoc} */
+	public long getOutputNanos() {
+		return getPhaseNanos(Phase.OUTPUT);
+	}
+
+	/** {@inheritDoc} */
+	public long getTotalNanos() {
+		long total = 0L;
+		for (int i = 0; i < phaseNanos.length(); i++) {
+			total += phaseNanos.get(i);
+		}
+		return total;
+	}
+
+	/** {@inheritDoc} */
+	public long getClientsProcessed() {
+		return stepsDone / 2;
+	}
+
+	/** {@inheritDoc} */
+	public long getClientsTotal() {
+		return stepsTotal / 2;
+	}
+
+	/** {@inheritDoc} */
+	public double getProgress() {
+		long total = stepsTotal;
+		if (total == 0) {
+			return 0d;
+		}
+		return (double) stepsDone / total;
+	}
+
+	/** {@inheritDoc} */
+	public double getClientsPerSecond() {
+		long elapsed = System.nanoTime() - progressStart;
+		if (stepsTotal == 0 || elapsed <= 0) {
+			return 0d;
+		}
+		return stepsDone / 2d / (elapsed / 1e9);
+	}
+
+	/** {@inheritDoc} */
+	public long getEtaNanos() {
+		long done = stepsDone;
+		long total = stepsTotal;
+		if (done == 0 || total == 0) {
+			return -1L;
+		}
+		long elapsed = System.nanoTime() - progressStart;
+		return (long) ((double) elapsed / done * (total - done));
+	}
+
+	/** {@inheritDoc} */
+	public String getReport() {
+		StringBuilder s = new StringBuilder("[RUNNING TIMES]");
+		int i = 1;
+		for (Phase phase : Phase.values()) {
+			s.append(String.format("%n %d- %-20s\t%s", i++, phase.name().toLowerCase().replace('_', ' ') + ":",
+					ElapsedTime.format(getPhaseNanos(phase))));
+		}
+		s.append(String.format("%n    %-20s\t%s", "total:", ElapsedTime.format(getTotalNanos())));
+		return s.toString();
+	}
+
+	/** {@inheritDoc} */
+	public String toString() {
+		return getReport();
+	}
+
+}
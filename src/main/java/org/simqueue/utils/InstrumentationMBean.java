@@ -0,0 +1,69 @@
+package org.simqueue.utils;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+/**
+ * The JMX management interface of {@link Instrumentation}.
+ * All the durations are expressed in nanoseconds.
+ */
+public interface InstrumentationMBean {
+
+	/** @return the time spent loading the parameters */
+	long getParameterLoadNanos();
+
+	/** @return the time spent generating the client arrival times */
+	long getArrivalGenerationNanos();
+
+	/** @return the time spent in the service recursion */
+	long getServiceRecursionNanos();
+
+	/** @return the time spent computing the statistics */
+	long getStatisticsNanos();
+
+	/** @return the time spent writing the output */
+	long getOutputNanos();
+
+	/** @return the sum of all the phase durations */
+	long getTotalNanos();
+
+	/** @return the number of clients processed so far by the current phase */
+	long getClientsProcessed();
+
+	/** @return the number of clients of the simulation */
+	long getClientsTotal();
+
+	/** @return the fraction of the simulation completed, in [0,1] */
+	double getProgress();
+
+	/** @return the simulation throughput in clients per second */
+	double getClientsPerSecond();
+
+	/** @return the estimated time to completion, or -1 if unknown */
+	long getEtaNanos();
+
+	/** @return a human readable report of the phase durations */
+	String getReport();
+
+}
@@ -0,0 +1,197 @@
+package org.simqueue.utils;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * The JFR event classes, referenced only by FlightRecorderEvents when 
+ * jdk.jfr is available.
+ */
+final class JfrEvents {
+
+	private JfrEvents() {
+		
+	}
+	
+	@Name("org.simqueue.Run")
+	@Label("Simulation Run")
+	@Category("SimQueue")
+	@Description("A run of a queue simulation, with its parameters")
+	@StackTrace(false)
+	static final class RunEvent extends Event {
+		@Label("Clients")
+		long clients;
+		@Label("Mean Inter-Arrival Time (min)")
+		double meanInterArrivalTime;
+		@Label("Service Distribution")
+		String serviceDistribution;
+		@Label("Mean Service Time (min)")
+		double meanServiceTime;
+		@Label("History Mode")
+		String historyMode;
+		@Label("Seeded")
+		boolean seeded;
+		@Label("Seed")
+		long seed;
+		@Label("Mean Waiting Time (min)")
+		double meanWaitingTime;
+	}
+	
+	@Name("org.simqueue.Phase")
+	@Label("Simulation Phase")
+	@Category("SimQueue")
+	@Description("A phase of a simulation run")
+	@StackTrace(false)
+	static final class PhaseEvent extends Event {
+		@Label("Phase")
+		String phase;
+	}
+	
+	@Name("org.simqueue.Chunk")
+	@Label("Chunk Completed")
+	@Category("SimQueue")
+	@Description("A chunk of replications completed by a worker of a parallel mode")
+	@StackTrace(false)
+	static final class ChunkEvent extends Event {
+		@Label("Mode")
+		String mode;
+		@Label("Chunk")
+		int chunk;
+		@Label("Replications")
+		long replications;
+		@Label("Worker")
+		String worker;
+	}
+	
+	@Name("org.simqueue.OutputFlush")
+	@Label("Output Flush")
+	@Category("SimQueue")
+	@Description("A block of output written")
+	@StackTrace(false)
+	static final class OutputFlushEvent extends Event {
+		@Label("Target")
+		String target;
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+		@Label("Written Bytes")
+		@DataAmount
+		long writtenBytes;
+	}
+	
+	@Name("org.simqueue.CacheLookup")
+	@Label("Result Cache Lookup")
+	@Category("SimQueue")
+	@Description("A lookup of a scenario in the result cache")
+	@StackTrace(false)
+	static final class CacheLookupEvent extends Event {
+		@Label("Key")
+		String key;
+		@Label("Result")
+		String result;
+	}
+	
+	static Object beginRun(long clients, double meanInterArrivalTime, String serviceDistribution, 
+			double meanServiceTime, String historyMode, Long seed) {
+		RunEvent event = new RunEvent();
+		if(!event.isEnabled()) {
+			return null;
+		}
+		event.clients = clients;
+		event.meanInterArrivalTime = meanInterArrivalTime;
+		event.serviceDistribution = serviceDistribution;
+		event.meanServiceTime = meanServiceTime;
+		event.historyMode = historyMode;
+		event.seeded = seed != null;
+		event.seed = seed != null ? seed : 0L;
+		event.begin();
+		return event;
+	}
+	
+	static void endRun(Object e, double meanWaitingTime) {
+		RunEvent event = (RunEvent) e;
+		event.meanWaitingTime = meanWaitingTime;
+		event.commit();
+	}
+	
+	static Object beginPhase(String phase) {
+		PhaseEvent event = new PhaseEvent();
+		if(!event.isEnabled()) {
+			return null;
+		}
+		event.phase = phase;
+		event.begin();
+		return event;
+	}
+	
+	static void endPhase(Object e) {
+		((PhaseEvent) e).commit();
+	}
+	
+	static Object beginChunk() {
+		ChunkEvent event = new ChunkEvent();
+		if(!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+	
+	static void endChunk(Object e, String mode, int chunk, long replications, String worker) {
+		ChunkEvent event = (ChunkEvent) e;
+		event.mode = mode;
+		event.chunk = chunk;
+		event.replications = replications;
+		event.worker = worker;
+		event.commit();
+	}
+	
+	static void outputFlush(String target, long bytes, long writtenBytes) {
+		OutputFlushEvent event = new OutputFlushEvent();
+		if(event.shouldCommit()) {
+			event.target = target;
+			event.bytes = bytes;
+			event.writtenBytes = writtenBytes;
+			event.commit();
+		}
+	}
+	
+	static void cacheLookup(String key, String result) {
+		CacheLookupEvent event = new CacheLookupEvent();
+		if(event.shouldCommit()) {
+			event.key = key;
+			event.result = result;
+			event.commit();
+		}
+	}
+
+}
@@ -0,0 +1,189 @@
+package org.simqueue.utils;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Properties;
+
+
+/**
+ * A minimal JSON utility. It reads flat JSON objects (string, number, boolean,
+ * and null values) into Properties, and quotes strings for writing JSON.
+ * Nested objects and arrays are not supported.
+ */
+public class Json {
+
+	/**
+	 * Parse a flat JSON object.
+	 * 
+	 * @param json the JSON text, e.g. {"clients_num": 50, "clients_per_hour": 25}
+	 * @return the properties, with the values in their textual form
+	 * @throws IllegalArgumentException if the text is not a flat JSON object
+	 */
+	public static Properties parse(String json) {
+		Properties prop = new Properties();
+		Parser p = new Parser(json);
+		p.expect('{');
+		if(p.peek() != '}') {
+			do {
+				String key = p.string();
+				p.expect(':');
+				String value = p.value();
+				if(value != null) {
+					prop.setProperty(key, value);
+				}
+			} while(p.accept(','));
+		}
+		p.expect('}');
+		if(p.peek() != 0) {
+			throw new IllegalArgumentException("Unexpected text after the JSON object at position " + p.pos);
+		}
+		return prop;
+	}
+	
+	/**
+	 * Return a string as a quoted JSON string.
+	 * 
+	 * @param s the string
+	 * @return the quoted string
+	 */
+	public static String quote(String s) {
+		StringBuilder b = new StringBuilder(s.length() + 2).append('"');
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch(c) {
+			case '"': b.append("\\\""); break;
+			case '\\': b.append("\\\\"); break;
+			case '\n': b.append("\\n"); break;
+			case '\r': b.append("\\r"); break;
+			case '\t': b.append("\\t"); break;
+			default:
+				if(c < 0x20) {
+					b.append(String.format("\\u%04x", (int) c));
+				} else {
+					b.append(c);
+				}
+			}
+		}
+		return b.append('"').toString();
+	}
+	
+	/**
+	 * Return a number as a JSON value. NaN and infinite values are written as null.
+	 * 
+	 * @param d the number
+	 * @return the JSON value
+	 */
+	public static String number(double d) {
+		if(Double.isNaN(d) || Double.isInfinite(d)) {
+			return "null";
+		}
+		return Double.toString(d);
+	}
+	
+	
+	/** A recursive descent parser for flat JSON objects. */
+	private static class Parser {
+		private final String s;
+		private int pos = 0;
+		
+		Parser(String s) {
+			this.s = s;
+		}
+		
+		/** Return the next non-blank character without consuming it, 0 at the end. */
+		char peek() {
+			while(pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+				pos++;
+			}
+			return pos < s.length() ? s.charAt(pos) : 0;
+		}
+		
+		boolean accept(char c) {
+			if(peek() == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+		
+		void expect(char c) {
+			if(!accept(c)) {
+				throw new IllegalArgumentException("Expected '" + c + "' at position " + pos);
+			}
+		}
+		
+		String string() {
+			expect('"');
+			StringBuilder b = new StringBuilder();
+			while(pos < s.length()) {
+				char c = s.charAt(pos++);
+				if(c == '"') {
+					return b.toString();
+				}
+				if(c == '\\' && pos < s.length()) {
+					c = s.charAt(pos++);
+					switch(c) {
+					case 'n': b.append('\n'); break;
+					case 'r': b.append('\r'); break;
+					case 't': b.append('\t'); break;
+					case 'b': b.append('\b'); break;
+					case 'f': b.append('\f'); break;
+					case 'u':
+						if(pos + 4 > s.length()) {
+							throw new IllegalArgumentException("Truncated escape at position " + pos);
+						}
+						b.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+						pos += 4;
+						break;
+					default: b.append(c);
+					}
+				} else {
+					b.append(c);
+				}
+			}
+			throw new IllegalArgumentException("Unterminated string");
+		}
+		
+		/** Return the value in its textual form, or null for the JSON null. */
+		String value() {
+			char c = peek();
+			if(c == '"') {
+				return string();
+			}
+			if(c == '{' || c == '[') {
+				throw new IllegalArgumentException("Nested values are not supported at position " + pos);
+			}
+			int start = pos;
+			while(pos < s.length() && ",}".indexOf(s.charAt(pos)) < 0 && !Character.isWhitespace(s.charAt(pos))) {
+				pos++;
+			}
+			String token = s.substring(start, pos);
+			if(token.isEmpty()) {
+				throw new IllegalArgumentException("Expected a value at position " + start);
+			}
+			return "null".equals(token) ? null : token;
+		}
+	}
+
+}
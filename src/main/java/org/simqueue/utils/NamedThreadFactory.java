@@ -0,0 +1,55 @@
+package org.simqueue.utils;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A factory of named daemon threads, so that worker pools never keep 
+ * the JVM alive.
+ */
+public class NamedThreadFactory implements ThreadFactory {
+	
+	private final String prefix;
+	private final AtomicInteger count = new AtomicInteger();
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param prefix the prefix of the thread names
+	 */
+	public NamedThreadFactory(String prefix) {
+		this.prefix = prefix;
+	}
+	
+	/** {@inheritDoc} */
+	public Thread newThread(Runnable r) {
+		Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	}
+
+}
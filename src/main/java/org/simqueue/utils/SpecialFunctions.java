@@ -0,0 +1,212 @@
+package org.simqueue.utils;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+/**
+ * Special functions needed by the cumulative distribution functions 
+ * of the random variables and by the statistical tests.
+ */
+public class SpecialFunctions {
+
+	/** The Lanczos coefficients used by lnGamma(). */
+	private static final double[] LANCZOS = { 57.1562356658629235, -59.5979603554754912, 14.1360979747417471, 
+			-0.491913816097620199, .339946499848118887e-4, .465236289270485756e-4, -.983744753048795646e-4, 
+			.158088703224912494e-3, -.210264441724104883e-3, .217439618115212643e-3, -.164318106536763890e-3, 
+			.844182239838527433e-4, -.261908384015814087e-4, .368991826595316234e-5 };
+
+	/** The Chebyshev coefficients used by erfc(). */
+	private static final double[] ERFC = { -1.3026537197817094, 6.4196979235649026e-1, 1.9476473204185836e-2, 
+			-9.561514786808631e-3, -9.46595344482036e-4, 3.66839497852761e-4, 4.2523324806907e-5, 
+			-2.0278578112534e-5, -1.624290004647e-6, 1.303655835580e-6, 1.5626441722e-8, -8.5238095915e-8, 
+			6.529054439e-9, 5.059343495e-9, -9.91364156e-10, -2.27365122e-10, 9.6467911e-11, 2.394038e-12, 
+			-6.886027e-12, 8.94487e-13, 3.13092e-13, -1.12708e-13, 3.81e-16, 7.106e-15, -1.523e-15, 
+			-9.4e-17, 1.21e-16, -2.8e-17 };
+
+	/** Not instantiable. */
+	private SpecialFunctions() {
+
+	}
+
+	/**
+	 * Return the logarithm of the gamma function (Lanczos approximation).
+	 * 
+	 * @param x the argument, > 0
+	 * @return ln(Gamma(x))
+	 */
+	public static double lnGamma(double x) {
+		double y = x, tmp = x + 5.24218750000000000;
+		tmp = (x + 0.5) * Math.log(tmp) - tmp;
+		double ser = 0.999999999999997092;
+		for(int j = 0; j < LANCZOS.length; j++) {
+			ser += LANCZOS[j] / ++y;
+		}
+		return tmp + Math.log(2.5066282746310005 * ser / x);
+	}
+
+	/**
+	 * Return the lower regularized incomplete gamma function P(a,x).
+	 * 
+	 * @param a the shape, > 0
+	 * @param x the argument
+	 * @return P(a,x), in [0,1]
+	 */
+	public static double regularizedGammaP(double a, double x) {
+		if(Double.isNaN(x)) {
+			return Double.NaN;
+		}
+		if(x <= 0) {
+			return 0d;
+		}
+		if(Double.isInfinite(x)) {
+			return 1d;
+		}
+		if(x < a + 1) {
+			return gammaSeries(a, x);
+		}
+		return Math.max(0d, 1d - gammaContinuedFraction(a, x));
+	}
+
+	/**
+	 * Return the upper regularized incomplete gamma function Q(a,x) = 1 - P(a,x).
+	 * 
+	 * @param a the shape, > 0
+	 * @param x the argument
+	 * @return Q(a,x), in [0,1]
+	 */
+	public static double regularizedGammaQ(double a, double x) {
+		if(Double.isNaN(x)) {
+			return Double.NaN;
+		}
+		if(x <= 0) {
+			return 1d;
+		}
+		if(Double.isInfinite(x)) {
+			return 0d;
+		}
+		if(x < a + 1) {
+			return Math.max(0d, 1d - gammaSeries(a, x));
+		}
+		return gammaContinuedFraction(a, x);
+	}
+
+	/**
+	 * Return the complementary error function, with a relative error 
+	 * lower than 1.2e-16 (Chebyshev approximation).
+	 * 
+	 * @param x the argument
+	 * @return erfc(x)
+	 */
+	public static double erfc(double x) {
+		if(x < 0) {
+			return 2d - erfc(-x);
+		}
+		double t = 2d / (2d + x);
+		double ty = 4 * t - 2;
+		double d = 0d, dd = 0d;
+		for(int j = ERFC.length - 1; j > 0; j--) {
+			double tmp = d;
+			d = ty * d - dd + ERFC[j];
+			dd = tmp;
+		}
+		return t * Math.exp(-x * x + 0.5 * (ERFC[0] + ty * d) - dd);
+	}
+
+	/**
+	 * Return the cumulative distribution function of the standard normal distribution.
+	 * 
+	 * @param x the argument
+	 * @return the probability that a standard normal value is lower than or equal to x
+	 */
+	public static double normalCdf(double x) {
+		return 0.5 * erfc(-x / Math.sqrt(2));
+	}
+
+	/**
+	 * Return the inverse of the cumulative distribution function of the standard 
+	 * normal distribution (Acklam's rational approximation refined by one Halley step).
+	 * 
+	 * @param p the probability, in (0,1)
+	 * @return the x such that normalCdf(x) = p
+	 */
+	public static double normalQuantile(double p) {
+		if(!(p > 0)) {
+			return p == 0 ? Double.NEGATIVE_INFINITY : Double.NaN;
+		}
+		if(!(p < 1)) {
+			return p == 1 ? Double.POSITIVE_INFINITY : Double.NaN;
+		}
+		double x;
+		if(p < 0.02425 || p > 0.97575) {
+			double q = Math.sqrt(-2 * Math.log(p < 0.5 ? p : 1 - p));
+			x = (((((-7.784894002430293e-03 * q - 3.223964580411365e-01) * q - 2.400758277161838e+00) * q 
+					- 2.549732539343734e+00) * q + 4.374664141464968e+00) * q + 2.938163982698783e+00) 
+					/ ((((7.784695709041462e-03 * q + 3.224671290700398e-01) * q + 2.445134137142996e+00) * q 
+					+ 3.754408661907416e+00) * q + 1);
+			x = p < 0.5 ? x : -x;
+		} else {
+			double q = p - 0.5, r = q * q;
+			x = (((((-3.969683028665376e+01 * r + 2.209460984245205e+02) * r - 2.759285104469687e+02) * r 
+					+ 1.383577518672690e+02) * r - 3.066479806614716e+01) * r + 2.506628277459239e+00) * q 
+					/ (((((-5.447609879822406e+01 * r + 1.615858368580409e+02) * r - 1.556989798598866e+02) * r 
+					+ 6.680131188771972e+01) * r - 1.328068155288572e+01) * r + 1);
+		}
+		// one step of Halley's method brings the relative error close to the machine precision
+		double e = normalCdf(x) - p;
+		double u = e * Math.sqrt(2 * Math.PI) * Math.exp(x * x / 2);
+		return x - u / (1 + x * u / 2);
+	}
+
+	/** Return the series of P(a,x), which converges quickly for x < a + 1. */
+	private static double gammaSeries(double a, double x) {
+		double term = 1d / a, sum = term;
+		for(int k = 1; k < 10000 && Math.abs(term) > Math.abs(sum) * 1e-16; k++) {
+			term *= x / (a + k);
+			sum += term;
+		}
+		return Math.min(1d, sum * Math.exp(-x + a * Math.log(x) - lnGamma(a)));
+	}
+
+	/** Return the continued fraction of Q(a,x) (modified Lentz), which converges quickly for x >= a + 1. */
+	private static double gammaContinuedFraction(double a, double x) {
+		double tiny = 1e-300;
+		double b = x + 1 - a, c = 1d / tiny, d = 1d / b, h = d;
+		for(int k = 1; k < 10000; k++) {
+			double an = -k * (k - a);
+			b += 2;
+			d = an * d + b;
+			d = Math.abs(d) < tiny ? tiny : d;
+			c = b + an / c;
+			c = Math.abs(c) < tiny ? tiny : c;
+			d = 1d / d;
+			double delta = d * c;
+			h *= delta;
+			if(Math.abs(delta - 1) < 1e-16) {
+				break;
+			}
+		}
+		return Math.exp(-x + a * Math.log(x) - lnGamma(a)) * h;
+	}
+
+}
@@ -0,0 +1,154 @@
+package org.simqueue.utils;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * A bounded single-producer single-consumer ring of preallocated double 
+ * buffers. The producer claims a free buffer, fills it and publishes it; 
+ * the consumer takes the buffers in the same order and releases them. The 
+ * two sides synchronize only through a volatile sequence each, once per 
+ * buffer, without locks: a side finding the ring full (or empty) spins, 
+ * then yields, then parks for a few microseconds.
+ */
+public class SpscRing {
+
+	/** The buffers. */
+	private final double[][] buffers;
+	/** The number of values of each published buffer. */
+	private final int[] lengths;
+	private final int mask;
+	
+	/** The buffers published by the producer. */
+	private volatile long published = 0L;
+	/** The buffers released by the consumer. */
+	private volatile long released = 0L;
+	private volatile boolean aborted = false;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param slots the number of buffers, a power of 2
+	 * @param capacity the capacity of each buffer
+	 */
+	public SpscRing(int slots, int capacity) {
+		if(slots < 1 || Integer.bitCount(slots) != 1) {
+			throw new IllegalArgumentException("The slots must be a power of 2.");
+		}
+		buffers = new double[slots][capacity];
+		lengths = new int[slots];
+		mask = slots - 1;
+	}
+	
+	/**
+	 * Return the capacity of each buffer.
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return buffers[0].length;
+	}
+	
+	/**
+	 * Wait for a free buffer (producer side).
+	 * 
+	 * @return the buffer to fill
+	 * @throws CancellationException if the ring was aborted
+	 */
+	public double[] claim() {
+		long seq = published;
+		for(int spins = 0; seq - released > mask; spins++) {
+			idle(spins);
+		}
+		return buffers[(int) (seq & mask)];
+	}
+	
+	/**
+	 * Publish the buffer returned by claim() (producer side).
+	 * 
+	 * @param length the number of values filled
+	 */
+	public void publish(int length) {
+		long seq = published;
+		lengths[(int) (seq & mask)] = length;
+		published = seq + 1;
+	}
+	
+	/**
+	 * Wait for the next published buffer (consumer side).
+	 * 
+	 * @return the buffer, whose length is returned by length()
+	 * @throws CancellationException if the ring was aborted
+	 */
+	public double[] take() {
+		long seq = released;
+		for(int spins = 0; published <= seq; spins++) {
+			idle(spins);
+		}
+		return buffers[(int) (seq & mask)];
+	}
+	
+	/**
+	 * Return the number of values of the buffer returned by take() (consumer side).
+	 * @return the length
+	 */
+	public int length() {
+		return lengths[(int) (released & mask)];
+	}
+	
+	/** Release the buffer returned by take() (consumer side). */
+	public void release() {
+		released = released + 1;
+	}
+	
+	/** Make the waiting sides fail, e.g. when the other side failed. */
+	public void abort() {
+		aborted = true;
+	}
+	
+	/** Empty the ring, when neither side is using it. */
+	public void reset() {
+		published = 0L;
+		released = 0L;
+		aborted = false;
+	}
+	
+	/** Wait a little, more and more as the spins grow. */
+	private void idle(int spins) {
+		if(aborted) {
+			throw new CancellationException("The ring was aborted.");
+		}
+		if(spins < 100) {
+			return;
+		}
+		if(spins < 200) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(20000L);
+		}
+	}
+
+}
@@ -0,0 +1,299 @@
+package org.simqueue.utils;
+/*
+ * MIT License
+ * 
+ * Copyright (c) 2005 Piero Dalle Pezze
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Arrays;
+
+
+/**
+ * A hierarchical timing wheel of timers with double deadlines. Time is cut 
+ * in ticks of a fixed resolution; each of the LEVELS wheels has SLOTS slots, 
+ * the slots of level l being SLOTS^l ticks wide, and the timers too far for 
+ * the last level wait in an overflow list. A timer is inserted in the slot 
+ * of its tick at the lowest level that can hold it, and moved down (cascaded) 
+ * when the current tick enters its slot, so that inserting and cancelling cost 
+ * O(1) and each timer is moved at most LEVELS times.
+ * 
+ * The timers are nodes of doubly linked lists stored in primitive arrays, 
+ * identified by the int returned by schedule(), which is recycled after the 
+ * timer expires or is cancelled.
+ */
+public class TimingWheel {
+
+	/** The callback of the expired timers. */
+	public interface Expiry {
+		/**
+		 * Called when a timer expires.
+		 * 
+		 * @param timer the timer
+		 * @param payload the payload given to schedule()
+		 * @param deadline the deadline of the timer
+		 */
+		void expire(int timer, long payload, double deadline);
+	}
+	
+	/** The bits of the slot index at each level. */
+	private static final int BITS = 8;
+	/** The slots of each level. */
+	public static final int SLOTS = 1 << BITS;
+	/** The number of levels. */
+	public static final int LEVELS = 4;
+	private static final int MASK = SLOTS - 1;
+	/** The list of the timers beyond the last level. */
+	private static final int OVERFLOW = LEVELS * SLOTS;
+	private static final int NONE = -1;
+	
+	private final double resolution;
+	
+	/** The first timer of each slot list, and of the overflow list. */
+	private final int[] first = new int[OVERFLOW + 1];
+	/** The timers in each level, and in the overflow list. */
+	private final int[] levelSize = new int[LEVELS + 1];
+	
+	// the timer nodes
+	private double[] deadline;
+	private long[] tick;
+	private long[] payload;
+	private int[] next;
+	private int[] prev;
+	/** The list of each timer, or NONE if the node is free. */
+	private int[] list;
+	private int freeList = NONE;
+	private int nodes = 0;
+	private int size = 0;
+	
+	/** The tick reached, whose slot may still hold timers not expired. */
+	private long current = 0L;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param resolution the duration of a tick
+	 */
+	public TimingWheel(double resolution) {
+		if(!(resolution > 0)) {
+			throw new IllegalArgumentException("The resolution must be positive.");
+		}
+		this.resolution = resolution;
+		Arrays.fill(first, NONE);
+		deadline = new double[SLOTS];
+		tick = new long[SLOTS];
+		payload = new long[SLOTS];
+		next = new int[SLOTS];
+		prev = new int[SLOTS];
+		list = new int[SLOTS];
+	}
+	
+	/**
+	 * Schedule a timer. A deadline already passed expires at the next advance().
+	 * 
+	 * @param time the deadline
+	 * @param value a payload returned to the callback
+	 * @return the timer
+	 */
+	public int schedule(double time, long value) {
+		int t = allocate();
+		deadline[t] = time;
+		payload[t] = value;
+		tick[t] = Math.max(current, (long) Math.floor(time / resolution));
+		insert(t);
+		size++;
+		return t;
+	}
+	
+	/**
+	 * Cancel a timer which has not expired yet.
+	 * 
+	 * @param timer the timer
+	 */
+	public void cancel(int timer) {
+		if(list[timer] == NONE) {
+			throw new IllegalArgumentException("Timer " + timer + " is not scheduled.");
+		}
+		unlink(timer);
+		release(timer);
+		size--;
+	}
+	
+	/**
+	 * Expire, in order of tick, all the timers with a deadline before a time.
+	 * The timers of the tick of the time itself expire only if their deadline 
+	 * is strictly before it.
+	 * 
+	 * @param time the time reached, not before the previous one
+	 * @param callback the callback of the expired timers
+	 */
+	public void advance(double time, Expiry callback) {
+		long target = (long) Math.floor(time / resolution);
+		while(current < target) {
+			if(size == 0) {
+				current = target;
+				break;
+			}
+			if(levelSize[0] > 0) {
+				// expire the tick reached, then step to the next one
+				expireSlot((int) (current & MASK), Double.POSITIVE_INFINITY, callback);
+				moveTo(current + 1);
+				continue;
+			}
+			// nothing in level 0: jump to the next boundary of the lowest non empty level
+			int l = 1;
+			while(l < LEVELS && levelSize[l] == 0) {
+				l++;
+			}
+			long boundary = ((current >>> (l * BITS)) + 1) << (l * BITS);
+			if(boundary <= current || boundary > target) {
+				current = target;
+				break;
+			}
+			moveTo(boundary);
+		}
+		if(levelSize[0] > 0) {
+			expireSlot((int) (current & MASK), time, callback);
+		}
+	}
+	
+	/**
+	 * Return the number of timers scheduled.
+	 * @return the timers
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/** Remove all the timers. */
+	public void clear() {
+		Arrays.fill(first, NONE);
+		Arrays.fill(levelSize, 0);
+		Arrays.fill(list, 0, nodes, NONE);
+		freeList = NONE;
+		for(int t = nodes - 1; t >= 0; t--) {
+			next[t] = freeList;
+			freeList = t;
+		}
+		size = 0;
+		current = 0L;
+	}
+	
+	/** Set the current tick to a later one, cascading the slots it enters. */
+	private void moveTo(long to) {
+		current = to;
+		if((to & ((1L << (LEVELS * BITS)) - 1)) == 0) {
+			cascade(OVERFLOW, LEVELS);
+		}
+		for(int l = LEVELS - 1; l >= 1; l--) {
+			if((to & ((1L << (l * BITS)) - 1)) == 0) {
+				cascade(l * SLOTS + (int) ((to >>> (l * BITS)) & MASK), l);
+			}
+		}
+	}
+	
+	/** Insert again the timers of a slot of a level, relative to the current tick. */
+	private void cascade(int slot, int level) {
+		if(levelSize[level] == 0) {
+			return;
+		}
+		int t = first[slot];
+		while(t != NONE) {
+			int n = next[t];
+			unlink(t);
+			insert(t);
+			t = n;
+		}
+	}
+	
+	/** Expire the timers of a slot of level 0 with a deadline before a time. */
+	private void expireSlot(int slot, double time, Expiry callback) {
+		int t = first[slot];
+		while(t != NONE) {
+			int n = next[t];
+			if(deadline[t] < time) {
+				unlink(t);
+				release(t);
+				size--;
+				callback.expire(t, payload[t], deadline[t]);
+			}
+			t = n;
+		}
+	}
+	
+	/** Link a timer in the slot of its tick. */
+	private void insert(int t) {
+		long diff = tick[t] ^ current;
+		int level = diff == 0 ? 0 : (63 - Long.numberOfLeadingZeros(diff)) / BITS;
+		int slot = level >= LEVELS ? OVERFLOW : level * SLOTS + (int) ((tick[t] >>> (level * BITS)) & MASK);
+		level = Math.min(level, LEVELS);
+		int f = first[slot];
+		next[t] = f;
+		prev[t] = NONE;
+		if(f != NONE) {
+			prev[f] = t;
+		}
+		first[slot] = t;
+		list[t] = slot;
+		levelSize[level]++;
+	}
+	
+	/** Unlink a timer from its slot. */
+	private void unlink(int t) {
+		int slot = list[t];
+		if(prev[t] != NONE) {
+			next[prev[t]] = next[t];
+		} else {
+			first[slot] = next[t];
+		}
+		if(next[t] != NONE) {
+			prev[next[t]] = prev[t];
+		}
+		list[t] = NONE;
+		levelSize[slot == OVERFLOW ? LEVELS : slot / SLOTS]--;
+	}
+	
+	/** Return a free timer node, growing the nodes if needed. */
+	private int allocate() {
+		if(freeList != NONE) {
+			int t = freeList;
+			freeList = next[t];
+			return t;
+		}
+		if(nodes == deadline.length) {
+			int capacity = nodes << 1;
+			deadline = Arrays.copyOf(deadline, capacity);
+			tick = Arrays.copyOf(tick, capacity);
+			payload = Arrays.copyOf(payload, capacity);
+			next = Arrays.copyOf(next, capacity);
+			prev = Arrays.copyOf(prev, capacity);
+			list = Arrays.copyOf(list, capacity);
+		}
+		return nodes++;
+	}
+	
+	/** Put a timer node back in the free list. */
+	private void release(int t) {
+		list[t] = NONE;
+		next[t] = freeList;
+		freeList = t;
+	}
+
+}